@@ -0,0 +1,66 @@
+package org.agilemicroservices.benchmark;
+
+import org.agilemicroservices.autoconfigure.orm.DynamicRepositoryBeanDefinitionRegistrarSupport;
+import org.agilemicroservices.config.ScriptConfig;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures startup and shutdown of an {@link org.agilemicroservices.autoconfigure.orm.EnableDynamicJpaRepositories}
+ * context over synthetic units.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BootstrapBenchmark {
+    @Param({"1", "10"})
+    public int units;
+    @Param("10")
+    public int entities;
+    @Param("10")
+    public int repositories;
+    @Param("false")
+    public boolean parallel;
+    /**
+     * Reuses the entity scan cached by the warmup iterations, compare against <code>false</code> for cold starts.
+     */
+    @Param("false")
+    public boolean metadataCache;
+
+    private SyntheticUnits syntheticUnits;
+
+
+    @Setup
+    public void setUp() throws IOException {
+        syntheticUnits = SyntheticUnits.generate(units, entities, repositories);
+        Thread.currentThread().setContextClassLoader(syntheticUnits.getClassLoader());
+    }
+
+    @Benchmark
+    public void startup() {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.setClassLoader(syntheticUnits.getClassLoader());
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark",
+                Collections.<String, Object>singletonMap(DynamicRepositoryBeanDefinitionRegistrarSupport.SCAN_LOCATIONS,
+                        syntheticUnits.getScanLocation())));
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("bootstrap",
+                Collections.<String, Object>singletonMap(DynamicRepositoryBeanDefinitionRegistrarSupport.BOOTSTRAP_PARALLEL,
+                        String.valueOf(parallel))));
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("metadataCache",
+                Collections.<String, Object>singletonMap(
+                        DynamicRepositoryBeanDefinitionRegistrarSupport.METADATA_CACHE_ENABLED_DEFAULT,
+                        String.valueOf(metadataCache))));
+        context.register(ScriptConfig.class);
+        context.refresh();
+        context.close();
+    }
+}
@@ -0,0 +1,116 @@
+package org.agilemicroservices.benchmark;
+
+import org.agilemicroservices.config.BulkWriter;
+import org.agilemicroservices.config.RepositoryFactory;
+import org.agilemicroservices.config.SpringUtil;
+import org.agilemicroservices.config.TransactionUtil;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.repository.CrudRepository;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Compares the insert throughput of repository saves, {@link BulkWriter} and a raw JDBC batch, each writing
+ * {@link #ROWS} rows per transaction into a unit batching 50 statements.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BulkWriteBenchmark {
+    private static final int ROWS = 1000;
+
+    private CrudRepository<Object, Long> repository;
+    private Class<?> entityClass;
+    private Method setName;
+    private String tableName;
+    private DataSource dataSource;
+    private long nextJdbcId = -1;
+
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp(ScriptContextState state) throws ReflectiveOperationException {
+        repository = (CrudRepository<Object, Long>) RepositoryFactory.get(state.syntheticUnits.repositoryClass(0, 0));
+        entityClass = state.syntheticUnits.entityClass(0, 0);
+        setName = entityClass.getMethod("setName", String.class);
+        tableName = state.syntheticUnits.tableName(0, 0);
+        dataSource = SpringUtil.getContext().getBean("u0DataSource", DataSource.class);
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteRows() throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.executeUpdate("delete from " + tableName);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void repositorySave() throws ReflectiveOperationException {
+        TransactionUtil.begin(repository);
+        for (int i = 0; i < ROWS; i++) {
+            repository.save(newEntity(i));
+        }
+        TransactionUtil.commit(repository);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void bulkWriter() throws ReflectiveOperationException {
+        write(false);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void bulkWriterStateless() throws ReflectiveOperationException {
+        write(true);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void jdbcBatch() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "insert into " + tableName + " (id, name) values (?, ?)")) {
+            connection.setAutoCommit(false);
+            for (int i = 0; i < ROWS; i++) {
+                // negative ids stay clear of the sequence used by the other benchmarks
+                statement.setLong(1, nextJdbcId--);
+                statement.setString(2, "name" + i);
+                statement.addBatch();
+                if ((i + 1) % 50 == 0) {
+                    statement.executeBatch();
+                }
+            }
+            statement.executeBatch();
+            connection.commit();
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private void write(boolean stateless) throws ReflectiveOperationException {
+        TransactionUtil.begin(repository);
+        try (BulkWriter writer = BulkWriter.open(repository, 50, stateless)) {
+            for (int i = 0; i < ROWS; i++) {
+                writer.insert(newEntity(i));
+            }
+        }
+        TransactionUtil.commit(repository);
+    }
+
+    private Object newEntity(int i) throws ReflectiveOperationException {
+        Object entity = entityClass.newInstance();
+        setName.invoke(entity, "name" + i);
+        return entity;
+    }
+}
@@ -0,0 +1,61 @@
+package org.agilemicroservices.benchmark;
+
+import org.agilemicroservices.autoconfigure.orm.DynamicRepositoryBeanDefinitionRegistrarSupport;
+import org.agilemicroservices.config.ScriptConfig;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.type.AnnotationMetadata;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures the bean definition registration of synthetic units alone, without building any EntityManagerFactory, to
+ * show the cost of the store detection and repository scans as units are added. Each run starts from a fresh resource
+ * loader, so class files are read as in a cold start.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(3)
+public class RegistrationBenchmark {
+    @Param({"1", "10", "50"})
+    public int units;
+    @Param("10")
+    public int entities;
+    @Param("10")
+    public int repositories;
+
+    private SyntheticUnits syntheticUnits;
+    private AnnotationMetadata importingClassMetadata;
+
+
+    @Setup
+    public void setUp() throws IOException {
+        syntheticUnits = SyntheticUnits.generate(units, entities, repositories);
+        Thread.currentThread().setContextClassLoader(syntheticUnits.getClassLoader());
+        importingClassMetadata = AnnotationMetadata.introspect(ScriptConfig.class);
+    }
+
+    @Benchmark
+    public DefaultListableBeanFactory register() {
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new MapPropertySource("benchmark",
+                Collections.<String, Object>singletonMap(DynamicRepositoryBeanDefinitionRegistrarSupport.SCAN_LOCATIONS,
+                        syntheticUnits.getScanLocation())));
+
+        DynamicRepositoryBeanDefinitionRegistrarSupport registrar = new DynamicRepositoryBeanDefinitionRegistrarSupport();
+        registrar.setEnvironment(environment);
+        registrar.setResourceLoader(new DefaultResourceLoader(syntheticUnits.getClassLoader()));
+        DefaultListableBeanFactory registry = new DefaultListableBeanFactory();
+        registrar.registerBeanDefinitions(importingClassMetadata, registry);
+        return registry;
+    }
+}
@@ -0,0 +1,38 @@
+package org.agilemicroservices.benchmark;
+
+import org.agilemicroservices.config.RepositoryFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures {@link RepositoryFactory} lookup latency by type and by name.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepositoryLookupBenchmark {
+    private Class<?> repositoryClass;
+    private String repositoryName;
+
+
+    @Setup
+    public void setUp(ScriptContextState state) throws ClassNotFoundException {
+        repositoryClass = state.syntheticUnits.repositoryClass(0, 0);
+        repositoryName = repositoryClass.getSimpleName();
+    }
+
+    @Benchmark
+    public Object getByClass() {
+        return RepositoryFactory.get(repositoryClass);
+    }
+
+    @Benchmark
+    public Object getByName() {
+        return RepositoryFactory.get(repositoryName);
+    }
+}
@@ -0,0 +1,37 @@
+package org.agilemicroservices.benchmark;
+
+import org.agilemicroservices.autoconfigure.orm.DynamicRepositoryBeanDefinitionRegistrarSupport;
+import org.agilemicroservices.config.SpringUtil;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+
+/**
+ * Starts the script context of {@link SpringUtil} over synthetic units. The context is a JVM singleton, so every
+ * benchmark using this state must run in its own fork.
+ */
+@State(Scope.Benchmark)
+public class ScriptContextState {
+    @Param("2")
+    public int units;
+    @Param("10")
+    public int entities;
+    @Param("10")
+    public int repositories;
+
+    public SyntheticUnits syntheticUnits;
+
+
+    @Setup
+    public void setUp() throws IOException {
+        syntheticUnits = SyntheticUnits.generate(units, entities, repositories);
+        System.setProperty(DynamicRepositoryBeanDefinitionRegistrarSupport.SCAN_LOCATIONS,
+                syntheticUnits.getScanLocation());
+        Thread.currentThread().setContextClassLoader(syntheticUnits.getClassLoader());
+        SpringUtil.getContext();
+    }
+}
@@ -0,0 +1,167 @@
+package org.agilemicroservices.benchmark;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Generates persistence units backed by in-memory H2 databases, each with its own entities and repositories compiled
+ * into a temporary directory. Requires a JDK to compile the generated sources.
+ */
+public class SyntheticUnits {
+    public static final String PACKAGE_PREFIX = "bench.u";
+
+    private final Path directory;
+    private final int units;
+    private final int entities;
+    private final int repositories;
+    private final URLClassLoader classLoader;
+
+
+    private SyntheticUnits(Path directory, int units, int entities, int repositories) throws IOException {
+        this.directory = directory;
+        this.units = units;
+        this.entities = entities;
+        this.repositories = repositories;
+        this.classLoader = new URLClassLoader(new URL[]{directory.toUri().toURL()},
+                SyntheticUnits.class.getClassLoader());
+    }
+
+    /**
+     * @param units        number of persistence units
+     * @param entities     entities per unit
+     * @param repositories repositories per unit, one per entity, at most <code>entities</code>
+     * @return
+     * @throws IOException
+     */
+    public static SyntheticUnits generate(int units, int entities, int repositories) throws IOException {
+        if (repositories > entities) {
+            throw new IllegalArgumentException("repositories " + repositories + " exceeds entities " + entities);
+        }
+
+        Path directory = Files.createTempDirectory("orm-bench");
+        List<File> sources = new ArrayList<>();
+        for (int u = 0; u < units; u++) {
+            String packageName = PACKAGE_PREFIX + u;
+            Path packageDir = Files.createDirectories(directory.resolve(packageName.replace('.', File.separatorChar)));
+            for (int e = 0; e < entities; e++) {
+                String entityName = entityName(u, e);
+                sources.add(write(packageDir.resolve(entityName + ".java"), entitySource(packageName, entityName)));
+                if (e < repositories) {
+                    sources.add(write(packageDir.resolve(entityName + "Repository.java"),
+                            repositorySource(packageName, entityName)));
+                }
+            }
+            write(directory.resolve("u" + u + ".orm.properties"), unitProperties(u, packageName));
+        }
+
+        compile(directory, sources);
+        return new SyntheticUnits(directory, units, entities, repositories);
+    }
+
+    public String getScanLocation() {
+        return directory.toUri() + "*.orm.properties";
+    }
+
+    public ClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    public Class<?> repositoryClass(int unit, int repository) throws ClassNotFoundException {
+        return classLoader.loadClass(PACKAGE_PREFIX + unit + "." + entityName(unit, repository) + "Repository");
+    }
+
+    public Class<?> entityClass(int unit, int entity) throws ClassNotFoundException {
+        return classLoader.loadClass(PACKAGE_PREFIX + unit + "." + entityName(unit, entity));
+    }
+
+    public String tableName(int unit, int entity) {
+        return entityName(unit, entity);
+    }
+
+    public int getUnits() {
+        return units;
+    }
+
+    public int getEntities() {
+        return entities;
+    }
+
+    public int getRepositories() {
+        return repositories;
+    }
+
+
+    // names are unique across units as repository bean names derive from the simple interface name
+    private static String entityName(int unit, int index) {
+        return "Unit" + unit + "Entity" + index;
+    }
+
+    private static String entitySource(String packageName, String entityName) {
+        return "package " + packageName + ";\n"
+                + "@javax.persistence.Entity\n"
+                + "public class " + entityName + " {\n"
+                + "    @javax.persistence.Id @javax.persistence.GeneratedValue private Long id;\n"
+                + "    private String name;\n"
+                + "    public Long getId() { return id; }\n"
+                + "    public void setId(Long id) { this.id = id; }\n"
+                + "    public String getName() { return name; }\n"
+                + "    public void setName(String name) { this.name = name; }\n"
+                + "}\n";
+    }
+
+    private static String repositorySource(String packageName, String entityName) {
+        return "package " + packageName + ";\n"
+                + "public interface " + entityName + "Repository\n"
+                + "        extends org.springframework.data.jpa.repository.JpaRepository<" + entityName + ", Long> {\n"
+                + "    java.util.List<" + entityName + "> findByName(String name);\n"
+                + "}\n";
+    }
+
+    private static String unitProperties(int unit, String packageName) {
+        return "datasource.driver_class=org.h2.Driver\n"
+                + "datasource.url=jdbc:h2:mem:bench" + unit + "\n"
+                + "datasource.username=sa\n"
+                + "datasource.password=\n"
+                + "repository.base_packages=" + packageName + "\n"
+                + "hibernate.dialect=org.hibernate.dialect.H2Dialect\n"
+                + "hibernate.hbm2ddl.auto=create\n"
+                + "bulk.batch_size=50\n";
+    }
+
+    private static File write(Path path, String content) throws IOException {
+        try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            out.write(content);
+        }
+        return path.toFile();
+    }
+
+    private static void compile(Path directory, List<File> sources) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("Generating units requires a JDK.");
+        }
+
+        List<String> args = new ArrayList<>();
+        args.add("-d");
+        args.add(directory.toString());
+        args.add("-classpath");
+        args.add(System.getProperty("java.class.path"));
+        for (File o : sources) {
+            args.add(o.getPath());
+        }
+        if (compiler.run(null, null, null, args.toArray(new String[0])) != 0) {
+            throw new IOException("Failed compiling generated units in " + directory + ".");
+        }
+    }
+}
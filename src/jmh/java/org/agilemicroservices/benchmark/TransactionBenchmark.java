@@ -0,0 +1,57 @@
+package org.agilemicroservices.benchmark;
+
+import org.agilemicroservices.config.RepositoryFactory;
+import org.agilemicroservices.config.TransactionUtil;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.repository.Repository;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Measures {@link TransactionUtil} begin/commit throughput, each thread working in its own transaction.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransactionBenchmark {
+    private Repository<?, ?> repository;
+
+
+    @Setup
+    public void setUp(ScriptContextState state) throws ClassNotFoundException {
+        repository = (Repository<?, ?>) RepositoryFactory.get(state.syntheticUnits.repositoryClass(0, 0));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void beginCommit1Thread() {
+        beginCommit();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void beginCommit4Threads() {
+        beginCommit();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void beginCommit16Threads() {
+        beginCommit();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void beginCommit64Threads() {
+        beginCommit();
+    }
+
+    private void beginCommit() {
+        TransactionUtil.begin(repository);
+        TransactionUtil.commit(repository);
+    }
+}
@@ -0,0 +1,156 @@
+package org.agilemicroservices.config
+
+import groovy.transform.CompileStatic
+import org.agilemicroservices.autoconfigure.orm.OrmRegistration
+import org.agilemicroservices.autoconfigure.orm.PropertiesRepositoryConfigurationSource
+import org.hibernate.Session
+import org.hibernate.SessionFactory
+import org.hibernate.StatelessSession
+import org.hibernate.engine.spi.SessionImplementor
+import org.hibernate.jdbc.ReturningWork
+import org.springframework.data.repository.Repository
+import org.springframework.orm.jpa.EntityManagerFactoryUtils
+
+import javax.persistence.EntityManager
+import java.sql.Connection
+import java.sql.SQLException
+
+
+/**
+ * Writes large numbers of entities within the calling thread's transaction on a unit, as begun through
+ * TransactionUtil. The persistence context is flushed and cleared every <code>flushInterval</code> entities, so memory
+ * stays bounded however many are written; entities the script loaded earlier in the transaction are detached too.
+ * Statements are sent in JDBC batches when the unit sets <code>bulk.batch_size</code>. Entities with IDENTITY ids
+ * cannot be batched by Hibernate.
+ * <p>
+ * A stateless writer bypasses the persistence context, cascades and the second-level cache altogether, writing on
+ * the transaction's connection.
+ */
+@CompileStatic
+class BulkWriter implements Closeable {
+    private static final int DEFAULT_FLUSH_INTERVAL = 1000
+
+    private final EntityManager entityManager
+    private final StatelessSession statelessSession
+    private final int flushInterval
+    private long count
+    private int pending
+
+
+    private BulkWriter(EntityManager entityManager, StatelessSession statelessSession, int flushInterval) {
+        this.entityManager = entityManager
+        this.statelessSession = statelessSession
+        this.flushInterval = flushInterval
+    }
+
+    /**
+     * Opens a writer flushing every <code>bulk.batch_size</code> entities of the repository's unit, or every 1000 if
+     * the unit does not batch.
+     */
+    static BulkWriter open(Repository<?, ?> repo) {
+        OrmRegistration registration = OrmRegistrations.forRepository(repo)
+        return open(registration, defaultFlushInterval(registration), false)
+    }
+
+    static BulkWriter open(Repository<?, ?> repo, int flushInterval, boolean stateless) {
+        return open(OrmRegistrations.forRepository(repo), flushInterval, stateless)
+    }
+
+    static BulkWriter open(OrmRegistration registration, int flushInterval, boolean stateless) {
+        if (flushInterval < 1) {
+            throw new IllegalArgumentException('flushInterval must be positive')
+        }
+
+        EntityManager entityManager = EntityManagerFactoryUtils.getTransactionalEntityManager(
+                registration.entityManagerFactory)
+        if (entityManager == null) {
+            throw new IllegalStateException("No transaction in progress on this thread.")
+        }
+        if (!stateless) {
+            return new BulkWriter(entityManager, null, flushInterval)
+        }
+
+        // the stateless session shares the transaction's connection and so its transaction
+        entityManager.flush()
+        Connection connection = entityManager.unwrap(Session).doReturningWork(new ReturningWork<Connection>() {
+            @Override
+            Connection execute(Connection connection) throws SQLException {
+                return connection
+            }
+        })
+        StatelessSession session = registration.entityManagerFactory.unwrap(SessionFactory)
+                .openStatelessSession(connection)
+        return new BulkWriter(entityManager, session, flushInterval)
+    }
+
+    private static int defaultFlushInterval(OrmRegistration registration) {
+        String batchSize = registration.source.properties.get(PropertiesRepositoryConfigurationSource.BULK_BATCH_SIZE)
+        return batchSize != null ? Integer.parseInt(batchSize.trim()) : DEFAULT_FLUSH_INTERVAL
+    }
+
+
+    /**
+     * Inserts a new entity.
+     */
+    void insert(Object entity) {
+        if (statelessSession != null) {
+            statelessSession.insert(entity)
+        } else {
+            entityManager.persist(entity)
+        }
+        written()
+    }
+
+    /**
+     * Updates an entity, which need not be attached.
+     */
+    void update(Object entity) {
+        if (statelessSession != null) {
+            statelessSession.update(entity)
+        } else {
+            entityManager.merge(entity)
+        }
+        written()
+    }
+
+    /**
+     * Sends pending statements to the database and, unless stateless, detaches all entities.
+     */
+    void flush() {
+        if (pending > 0) {
+            if (statelessSession != null) {
+                // nothing else flushes a stateless session working on a borrowed connection
+                ((SessionImplementor) statelessSession).jdbcCoordinator.executeBatch()
+            } else {
+                entityManager.flush()
+                entityManager.clear()
+            }
+        }
+        pending = 0
+    }
+
+    /**
+     * @return number of entities written
+     */
+    long getCount() {
+        return count
+    }
+
+    /**
+     * Flushes pending statements, leaving the transaction to be committed through TransactionUtil.
+     */
+    @Override
+    void close() {
+        flush()
+        if (statelessSession != null) {
+            statelessSession.close()
+        }
+    }
+
+    private void written() {
+        count++
+        if (++pending >= flushInterval) {
+            flush()
+        }
+    }
+}
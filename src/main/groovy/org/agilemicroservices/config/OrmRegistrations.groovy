@@ -0,0 +1,104 @@
+package org.agilemicroservices.config
+
+import groovy.transform.CompileStatic
+import org.agilemicroservices.autoconfigure.orm.OrmRegistration
+import org.springframework.data.repository.Repository
+
+
+/**
+ * Resolves the OrmRegistration managing a repository. Registrations are read from the context once and the unit of
+ * each repository class is computed on first use, later lookups being a ClassValue read. Both are dropped by {@link
+ * #reset} when the context closes.
+ */
+@CompileStatic
+class OrmRegistrations {
+    private static volatile ClassValue<OrmRegistration> registrationByClass = newRegistrationByClass()
+    private static volatile Collection<OrmRegistration> registrations
+
+
+    static Collection<OrmRegistration> all() {
+        Collection<OrmRegistration> result = registrations
+        if (result == null) {
+            synchronized (OrmRegistrations) {
+                result = registrations
+                if (result == null) {
+                    result = Collections.unmodifiableList(new ArrayList<OrmRegistration>(
+                            SpringUtil.context.getBeansOfType(OrmRegistration).values()))
+                    registrations = result
+                }
+            }
+        }
+        return result
+    }
+
+    static OrmRegistration forRepository(Repository<?, ?> repo) {
+        if (repo == null) {
+            throw new IllegalArgumentException('repo is null')
+        }
+        return registrationByClass.get(repo.getClass())
+    }
+
+    /**
+     * Drops the registrations read from the context and the units resolved per repository class, which a ClassValue
+     * would otherwise keep for as long as the class is loaded.
+     */
+    static void reset() {
+        synchronized (OrmRegistrations) {
+            registrations = null
+            registrationByClass = newRegistrationByClass()
+        }
+    }
+
+    private static ClassValue<OrmRegistration> newRegistrationByClass() {
+        return new ClassValue<OrmRegistration>() {
+            @Override
+            protected OrmRegistration computeValue(Class<?> type) {
+                return resolve(type)
+            }
+        }
+    }
+
+    private static OrmRegistration resolve(Class<?> repositoryClass) {
+        Class<?> repositoryInterface = repositoryInterfaceOf(repositoryClass)
+        if (repositoryInterface == null) {
+            throw new IllegalArgumentException("No repository interface found.")
+        }
+
+        // retrieve package name, using "" for null package, indicating java's default package
+        String repoPackageName = ""
+        Package repoPackage = repositoryInterface.package
+        if (repoPackage != null) {
+            repoPackageName = repoPackage.name
+        }
+
+        // the most specific base package wins when units nest
+        OrmRegistration registration = null
+        int matchLength = -1
+        for (OrmRegistration o : all()) {
+            for (String j : o.source.basePackages) {
+                if (j.length() > matchLength && isWithin(repoPackageName, j)) {
+                    registration = o
+                    matchLength = j.length()
+                }
+            }
+        }
+
+        if (registration == null) {
+            throw new IllegalArgumentException("Not a managed repository.")
+        }
+        return registration
+    }
+
+    private static boolean isWithin(String packageName, String basePackage) {
+        return packageName == basePackage || packageName.startsWith(basePackage + '.')
+    }
+
+    private static Class<?> repositoryInterfaceOf(Class<?> repositoryClass) {
+        for (Class<?> o : repositoryClass.interfaces) {
+            if (o.simpleName.endsWith("Repository")) {
+                return o
+            }
+        }
+        return null
+    }
+}
@@ -1,9 +1,22 @@
 package org.agilemicroservices.config
 
+import groovy.transform.CompileStatic
 import org.springframework.context.ApplicationContext
 
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
+
+
+/**
+ * Looks up repository proxies. Each repository is resolved from the context once, by type so that bean names need not
+ * follow the lower-camel convention, and cached against its interface until {@link #reset} when the context closes.
+ */
+@CompileStatic
 class RepositoryFactory
 {
+    private static volatile ClassValue<Object> repositoryByClass = newRepositoryByClass()
+    private static final ConcurrentMap<String, Object> repositoryByName = new ConcurrentHashMap<>()
+
 
     public ApplicationContext getContext()
     {
@@ -15,16 +28,59 @@ class RepositoryFactory
         if (repo == null) {
             throw new IllegalArgumentException('repo name is null')
         }
+
+        return repo.cast(repositoryByClass.get(repo))
+    }
+
+    public static <T> T get(String name)
+    {
+        Object repository = repositoryByName.get(name)
+        if (repository == null) {
+            repository = SpringUtil.getContext().getBean(beanNameOf(name))
+            repositoryByName.putIfAbsent(name, repository)
+        }
+        return (T) repository
+    }
+
+    /**
+     * Drops the cached repositories, replacing the ClassValue which would otherwise keep them for as long as their
+     * interfaces are loaded.
+     */
+    static void reset()
+    {
+        synchronized (RepositoryFactory) {
+            repositoryByClass = newRepositoryByClass()
+            repositoryByName.clear()
+        }
+    }
+
+    private static ClassValue<Object> newRepositoryByClass()
+    {
+        return new ClassValue<Object>() {
+            @Override
+            protected Object computeValue(Class<?> type) {
+                return resolve(type)
+            }
+        }
+    }
+
+    private static Object resolve(Class<?> repo)
+    {
         if (!repo.simpleName.endsWith('Repository')) {
             throw new IllegalArgumentException('repository name should end with Repository')
         }
 
-        get(repo.simpleName)
+        ApplicationContext context = SpringUtil.getContext()
+        String[] beanNames = context.getBeanNamesForType(repo)
+        if (beanNames.length == 1) {
+            return context.getBean(beanNames[0])
+        }
+        return context.getBean(beanNameOf(repo.simpleName), repo)
     }
 
-    public static <T> T get(String name)
+    private static String beanNameOf(String name)
     {
-        SpringUtil.getContext().getBean(name.substring(0, 1).toLowerCase() + name.substring(1))
+        return name.substring(0, 1).toLowerCase() + name.substring(1)
     }
 
     public static void init()
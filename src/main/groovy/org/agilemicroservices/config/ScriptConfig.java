@@ -1,8 +1,10 @@
 package org.agilemicroservices.config;
 
 import org.agilemicroservices.autoconfigure.orm.EnableDynamicJpaRepositories;
+import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.ContextClosedEvent;
 import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
 
 
@@ -14,4 +16,18 @@ public class ScriptConfig {
     public static PropertySourcesPlaceholderConfigurer propertySourcesPlaceholderConfigurer() {
         return new PropertySourcesPlaceholderConfigurer();
     }
+
+    /**
+     * Drops the registrations and repositories cached statically for lookups, so that none outlives the context.
+     */
+    @Bean
+    public ApplicationListener<ContextClosedEvent> ormLookupCacheReset() {
+        return new ApplicationListener<ContextClosedEvent>() {
+            @Override
+            public void onApplicationEvent(ContextClosedEvent event) {
+                OrmRegistrations.reset();
+                RepositoryFactory.reset();
+            }
+        };
+    }
 }
@@ -1,107 +1,489 @@
 package org.agilemicroservices.config
 
 
+import groovy.transform.CompileStatic
 import org.agilemicroservices.autoconfigure.orm.OrmRegistration
-import org.springframework.context.ApplicationContext
+import org.agilemicroservices.autoconfigure.orm.TenantContext
+import org.agilemicroservices.autoconfigure.orm.ThreadTransactionContext
+import org.agilemicroservices.autoconfigure.orm.TransactionCompletion
+import org.agilemicroservices.autoconfigure.orm.UnitCompletion
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
 import org.springframework.data.repository.Repository
+import org.springframework.orm.jpa.EntityManagerFactoryUtils
+import org.springframework.orm.jpa.JpaTransactionManager
 import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.TransactionDefinition
 import org.springframework.transaction.TransactionStatus
+import org.springframework.transaction.TransactionSystemException
+import org.springframework.transaction.support.DefaultTransactionDefinition
+import org.springframework.transaction.support.DefaultTransactionStatus
+import org.springframework.transaction.support.TransactionSynchronization
+import org.springframework.transaction.support.TransactionSynchronizationManager
+import org.springframework.transaction.support.TransactionSynchronizationUtils
 
+import javax.persistence.EntityManager
+import java.util.concurrent.*
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Supplier
 
+
+/**
+ * Demarcates transactions per persistence unit. Transactions are confined to the thread that began them, each thread
+ * holding at most one transaction per unit. Transactions of multi-tenant units serve the tenant set by {@link
+ * #withTenant} when they begin.
+ */
+@CompileStatic
 class TransactionUtil {
-    private static Map<OrmRegistration, ThreadLocal<TransactionStatus>> transactionStatusMap = new HashMap<>()
+    private static final ThreadLocal<Map<OrmRegistration, TransactionStatus>> transactionStatusMap =
+            new ThreadLocal<Map<OrmRegistration, TransactionStatus>>() {
+                @Override
+                protected Map<OrmRegistration, TransactionStatus> initialValue() {
+                    return new LinkedHashMap<OrmRegistration, TransactionStatus>()
+                }
+            }
+    private static final TransactionDefinition READ_ONLY = readOnlyDefinition()
+    private static final Logger logger = LoggerFactory.getLogger(TransactionUtil)
+    private static final ExecutorService completionExecutor = newCompletionExecutor()
+
+
+    public static void begin(Repository<?, ?> repo) {
+        beginInternal(OrmRegistrations.forRepository(repo), null)
+    }
+
+    /**
+     * Begins a read-only transaction, served by a read replica when the unit configures any.
+     */
+    public static void beginReadOnly(Repository<?, ?> repo) {
+        beginInternal(OrmRegistrations.forRepository(repo), READ_ONLY)
+    }
 
-    private static OrmRegistration registrationFor(Repository<?, ?> repo) {
-        Class<?> repositoryInterface = repositoryInterfaceOf(repo)
-        if (repositoryInterface == null) {
-            throw new IllegalArgumentException("No repository interface found.")
+    /**
+     * Runs a closure as a tenant of the multi-tenant units, transactions begun and repositories called within it
+     * reading and writing the tenant's schema. The tenant cannot change while the calling thread has transactions in
+     * progress.
+     *
+     * @return the closure's result
+     */
+    public static <T> T withTenant(String tenantId, Closure<T> closure) {
+        String previous = TenantContext.tenantId
+        if (previous != tenantId && !transactionStatusMap.get().isEmpty()) {
+            throw new IllegalStateException("Cannot switch tenant with transactions in progress.")
         }
 
-        // retrieve package name, using "" for null package, indicating java's default package
-        String repoPackageName = ""
-        Package repoPackage = repositoryInterface.package
-        if (repoPackage != null) {
-            repoPackageName = repoPackage.name
+        TenantContext.tenantId = tenantId
+        try {
+            return closure.call()
+        } finally {
+            TenantContext.tenantId = previous
+        }
+    }
+
+    public static void beginAll() {
+        for (OrmRegistration o : OrmRegistrations.all()) {
+            beginInternal(o, null)
         }
+    }
+
+    /**
+     * Runs a closure in a transaction of the repository's unit on the unit's {@link
+     * org.agilemicroservices.autoconfigure.orm.TransactionExecutor}, which runs no more transactions at once than the
+     * unit's pool has connections. The transaction commits when the closure returns and rolls back should it throw,
+     * completing the future exceptionally, unless the closure already committed or rolled it back itself. Transactions
+     * the closure begins on other units and leaves open are rolled back.
+     *
+     * @return future completed with the closure's result
+     */
+    public static <T> CompletableFuture<T> async(Repository<?, ?> repo, Closure<T> closure) {
+        return asyncInternal(OrmRegistrations.forRepository(repo), null, closure)
+    }
+
+    /**
+     * Runs a closure in a read-only transaction as {@link #async}, served by a read replica when the unit configures
+     * any.
+     */
+    public static <T> CompletableFuture<T> asyncReadOnly(Repository<?, ?> repo, Closure<T> closure) {
+        return asyncInternal(OrmRegistrations.forRepository(repo), READ_ONLY, closure)
+    }
 
-        ApplicationContext context = SpringUtil.context
-        Map<String, OrmRegistration> registrations = context.getBeansOfType(OrmRegistration.class)
-        OrmRegistration registration;
-        outter: for (OrmRegistration o : registrations.values()) {
-            for (String j : o.source.basePackages) {
-                if (repoPackageName.startsWith(j)) {
-                    registration = o
-                    break outter
+    private static <T> CompletableFuture<T> asyncInternal(OrmRegistration registration,
+                                                          TransactionDefinition definition, Closure<T> closure) {
+        // the task runs as the tenant submitting it
+        String tenantId = TenantContext.tenantId
+        return CompletableFuture.supplyAsync(new Supplier<T>() {
+            @Override
+            T get() {
+                TenantContext.tenantId = tenantId
+                try {
+                    return callInTransaction(registration, definition, closure)
+                } finally {
+                    TenantContext.clear()
                 }
             }
+        }, registration.transactionExecutor)
+    }
+
+    private static <T> T callInTransaction(OrmRegistration registration, TransactionDefinition definition,
+                                           Closure<T> closure) {
+        beginInternal(registration, definition)
+        T result
+        try {
+            result = closure.call()
+        } catch (Throwable e) {
+            rollbackAll()
+            throw e
         }
 
-        if (registration == null) {
-            throw new IllegalArgumentException("Not a managed repository.")
+        // absent once the closure committed or rolled back the unit itself
+        TransactionStatus status = pollStatus(registration)
+        try {
+            // executor threads are reused, so nothing may outlive the task; transactions begun within this one must
+            // also complete before it does
+            rollbackAll()
+        } catch (RuntimeException e) {
+            if (status != null) {
+                registration.platformTransactionManager.rollback(status)
+            }
+            throw e
         }
+        if (status != null) {
+            registration.platformTransactionManager.commit(status)
+        }
+        return result
+    }
 
-        return registration;
+    private static void beginInternal(OrmRegistration registration, TransactionDefinition definition) {
+        Map<OrmRegistration, TransactionStatus> statuses = transactionStatusMap.get()
+        if (!statuses.containsKey(registration)) {
+            PlatformTransactionManager transactionManager = registration.platformTransactionManager
+            statuses.put(registration, transactionManager.getTransaction(definition))
+        }
+    }
+
+
+    public static void rollback(Repository<?, ?> repo) {
+        OrmRegistration registration = OrmRegistrations.forRepository(repo)
+        registration.platformTransactionManager.rollback(removeStatus(registration))
     }
 
-    private static Class<?> repositoryInterfaceOf(Repository<?, ?> repo) {
-        for (Class<?> o : repo.getClass().getInterfaces()) {
-            if (o.simpleName.endsWith("Repository")) {
-                return o;
+    /**
+     * Rolls back every transaction of the calling thread, most recently begun first.
+     */
+    public static void rollbackAll() {
+        RuntimeException failure = null
+        for (Map.Entry<OrmRegistration, TransactionStatus> o : drainStatuses()) {
+            try {
+                o.key.platformTransactionManager.rollback(o.value)
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e
+                }
             }
         }
-        return null;
+        if (failure != null) {
+            throw failure
+        }
     }
 
 
-    public static void begin(Repository<?, ?> repo) {
-        OrmRegistration registration = registrationFor(repo)
-        beginInternal(registration)
+    public static void commit(Repository<?, ?> repo) {
+        OrmRegistration registration = OrmRegistrations.forRepository(repo)
+        registration.platformTransactionManager.commit(removeStatus(registration))
     }
 
-    public static void beginAll() {
-        ApplicationContext context = SpringUtil.context
-        Map<String, OrmRegistration> registrations = context.getBeansOfType(OrmRegistration.class)
-        registrations.values().each {
-            beginInternal(it)
+    /**
+     * Commits every transaction of the calling thread as {@link #commitAll(long)} without a timeout, rethrowing the
+     * first failure.
+     */
+    public static void commitAll() {
+        Throwable failure = commitAll(0L).failure
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure
+        }
+        if (failure != null) {
+            throw new TransactionSystemException("Failed committing transactions.", failure)
         }
     }
 
-    private static void beginInternal(OrmRegistration registration) {
-        ThreadLocal<TransactionStatus> threadLocal = transactionStatusMap.get(registration)
-        if (threadLocal == null) {
-            PlatformTransactionManager transactionManager = registration.platformTransactionManager
-            TransactionStatus status = transactionManager.getTransaction(null)
-            threadLocal = new ThreadLocal<>()
-            threadLocal.set(status)
-            transactionStatusMap.put(registration, threadLocal)
+    /**
+     * Commits every transaction of the calling thread, most recently begun first. The units are flushed concurrently,
+     * each worker running with the calling thread's transaction state, and, once all have flushed, committed in turn
+     * on the calling thread, to which Spring binds their transactions. Should a flush fail or not complete within the
+     * timeout, every transaction is rolled back instead. A flush cannot be interrupted and its EntityManager cannot be
+     * used meanwhile, so a unit still flushing at the deadline is released from the calling thread and rolled back by
+     * its worker once the flush returns, the call returning at the deadline. Should a commit fail the remaining
+     * transactions are rolled back.
+     *
+     * @param timeoutMillis time allowed for flushing, 0 for no limit
+     * @return outcome and latency of each unit
+     */
+    public static TransactionCompletion commitAll(long timeoutMillis) {
+        long start = System.nanoTime()
+        List<Map.Entry<OrmRegistration, TransactionStatus>> entries = drainStatuses()
+        int size = entries.size()
+        List<Future<Long>> flushes = new ArrayList<Future<Long>>(size)
+        List<ThreadTransactionContext> contexts = new ArrayList<ThreadTransactionContext>(size)
+        List<FlushHandoff> handoffs = new ArrayList<FlushHandoff>(size)
+        // a single unit without a timeout has nothing to overlap with or bound, so it flushes on the calling thread
+        boolean inline = size == 1 && timeoutMillis <= 0
+        for (Map.Entry<OrmRegistration, TransactionStatus> o : entries) {
+            // the EntityManager is bound to the calling thread, so it is looked up before the task is handed off
+            EntityManager entityManager = needsFlush(o.value)
+                    ? EntityManagerFactoryUtils.getTransactionalEntityManager(o.key.entityManagerFactory) : null
+            ThreadTransactionContext context = inline ? null : ThreadTransactionContext.capture()
+            FlushHandoff handoff = new FlushHandoff()
+            FutureTask<Long> flush = new FutureTask<Long>(flushTask(entityManager, context, handoff))
+            flushes.add(flush)
+            contexts.add(context)
+            handoffs.add(handoff)
+            if (inline) {
+                flush.run()
+            } else {
+                completionExecutor.execute(flush)
+            }
         }
+
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis)
+        UnitCompletion.Outcome[] outcomes = new UnitCompletion.Outcome[size]
+        Throwable[] failures = new Throwable[size]
+        long[] nanos = new long[size]
+        boolean flushed = true
+        for (int i = 0; i < size; i++) {
+            try {
+                nanos[i] = timeoutMillis > 0
+                        ? flushes.get(i).get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)
+                        : flushes.get(i).get()
+            } catch (TimeoutException ignored) {
+                outcomes[i] = UnitCompletion.Outcome.TIMED_OUT
+                nanos[i] = System.nanoTime() - start
+                flushed = false
+            } catch (ExecutionException e) {
+                outcomes[i] = UnitCompletion.Outcome.FAILED
+                failures[i] = e.cause
+                flushed = false
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt()
+                outcomes[i] = UnitCompletion.Outcome.FAILED
+                failures[i] = e
+                flushed = false
+            }
+        }
+
+        boolean[] abandoned = new boolean[size]
+        boolean synchronizationAbandoned = false
+        for (int i = 0; i < size; i++) {
+            Map.Entry<OrmRegistration, TransactionStatus> o = entries.get(i)
+            if (!flushes.get(i).done && isNewTransaction(o.value)
+                    && handoffs.get(i).abandon(rollbackTask(o.key, o.value))) {
+                abandoned[i] = true
+                synchronizationAbandoned |= ((DefaultTransactionStatus) o.value).newSynchronization
+                release(o.key)
+            } else {
+                // the flush has returned or, within an enclosing transaction, must be waited for
+                awaitUninterruptibly(flushes.get(i))
+                contexts.get(i)?.restore()
+            }
+        }
+
+        List<UnitCompletion> units = new ArrayList<UnitCompletion>(size)
+        for (int i = 0; i < size; i++) {
+            Map.Entry<OrmRegistration, TransactionStatus> o = entries.get(i)
+            long completionStart = System.nanoTime()
+            if (flushed) {
+                try {
+                    o.key.platformTransactionManager.commit(o.value)
+                    outcomes[i] = UnitCompletion.Outcome.COMMITTED
+                } catch (RuntimeException e) {
+                    outcomes[i] = UnitCompletion.Outcome.FAILED
+                    failures[i] = e
+                    flushed = false
+                }
+            } else if (!abandoned[i]) {
+                try {
+                    o.key.platformTransactionManager.rollback(o.value)
+                } catch (RuntimeException ignored) {
+                    // the failure causing the rollback takes precedence
+                }
+                if (outcomes[i] == null) {
+                    outcomes[i] = UnitCompletion.Outcome.ROLLED_BACK
+                }
+            }
+            units.add(new UnitCompletion(o.key.unitName, outcomes[i],
+                    (nanos[i] + System.nanoTime() - completionStart) / 1e6d, failures[i]))
+        }
+        if (synchronizationAbandoned && TransactionSynchronizationManager.synchronizationActive) {
+            // the released transaction owned the calling thread's synchronization, which ends with it
+            TransactionSynchronizationUtils.invokeAfterCompletion(TransactionSynchronizationManager.synchronizations,
+                    TransactionSynchronization.STATUS_ROLLED_BACK)
+            TransactionSynchronizationManager.clear()
+        }
+        return new TransactionCompletion(units, (System.nanoTime() - start) / 1e6d)
     }
 
+    /**
+     * @param entityManager EntityManager to flush, <code>null</code> if the transaction needs no flush
+     * @param context       transaction state of the calling thread, <code>null</code> to flush on the calling thread
+     * @param handoff       receives the rollback should the flush outlive the timeout
+     * @return task flushing the EntityManager, returning the nanoseconds taken
+     */
+    private static Callable<Long> flushTask(EntityManager entityManager, ThreadTransactionContext context,
+                                            FlushHandoff handoff) {
+        Callable<Long> flush = new Callable<Long>() {
+            @Override
+            Long call() {
+                long start = System.nanoTime()
+                try {
+                    entityManager?.flush()
+                    return System.nanoTime() - start
+                } catch (RuntimeException e) {
+                    RuntimeException translated = EntityManagerFactoryUtils.convertJpaAccessExceptionIfPossible(e)
+                    throw translated != null ? translated : e
+                } finally {
+                    // still within the calling thread's transaction state, which the rollback needs
+                    handoff.flushReturned()
+                }
+            }
+        }
+        return context != null ? new Callable<Long>() {
+            @Override
+            Long call() {
+                return context.call(flush)
+            }
+        } : flush
+    }
 
-    public static void rollback(Repository<?, ?> repo) {
-        OrmRegistration registration = registrationFor(repo)
-        ThreadLocal<TransactionStatus> threadLocal = transactionStatusMap.remove(registration)
-        registration.platformTransactionManager.rollback(threadLocal.get())
+    private static Runnable rollbackTask(OrmRegistration registration, TransactionStatus status) {
+        return new Runnable() {
+            @Override
+            void run() {
+                try {
+                    registration.platformTransactionManager.rollback(status)
+                } catch (RuntimeException e) {
+                    logger.warn("Failed rolling back the timed out transaction of persistence unit '"
+                            + registration.unitName + "'.", e)
+                }
+            }
+        }
     }
 
-    public static void rollbackAll() {
-        for (Map.Entry<OrmRegistration, ThreadLocal<TransactionStatus>> o : transactionStatusMap.values()) {
-            PlatformTransactionManager transactionManager = o.key.platformTransactionManager
-            transactionManager.rollback(o.value.get())
+    private static boolean needsFlush(TransactionStatus status) {
+        return !status.rollbackOnly && !status.completed &&
+                !(status instanceof DefaultTransactionStatus && ((DefaultTransactionStatus) status).readOnly)
+    }
+
+    private static boolean isNewTransaction(TransactionStatus status) {
+        return status instanceof DefaultTransactionStatus && status.newTransaction
+    }
+
+    /**
+     * Unbinds the resources of a unit's transaction from the calling thread, which leaves its completion to another.
+     */
+    private static void release(OrmRegistration registration) {
+        TransactionSynchronizationManager.unbindResourceIfPossible(registration.entityManagerFactory)
+        PlatformTransactionManager transactionManager = registration.platformTransactionManager
+        if (transactionManager instanceof JpaTransactionManager
+                && ((JpaTransactionManager) transactionManager).dataSource != null) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(
+                    ((JpaTransactionManager) transactionManager).dataSource)
+        }
+    }
+
+    private static void awaitUninterruptibly(Future<Long> future) {
+        boolean interrupted = false
+        while (true) {
+            try {
+                future.get()
+                break
+            } catch (ExecutionException ignored) {
+                break
+            } catch (InterruptedException ignored) {
+                interrupted = true
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt()
         }
     }
 
+    private static ExecutorService newCompletionExecutor() {
+        AtomicInteger threadCount = new AtomicInteger()
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 10L, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "orm-completion-" + threadCount.incrementAndGet())
+                thread.daemon = true
+                return thread
+            }
+        })
+        return executor
+    }
+
 
-    public static void commit(Repository<?, ?> repo) {
-        OrmRegistration registration = registrationFor(repo)
-        ThreadLocal<TransactionStatus> threadLocal = transactionStatusMap.remove(registration)
-        registration.platformTransactionManager.commit(threadLocal.get())
+
+    /**
+     * Passes the rollback of a unit whose flush outlived the timeout to the flushing thread, which runs it once the
+     * flush returns, unless the flush returned first.
+     */
+    private static class FlushHandoff {
+        private boolean returned
+        private Runnable rollback
+
+        synchronized boolean abandon(Runnable rollback) {
+            if (returned) {
+                return false
+            }
+            this.rollback = rollback
+            return true
+        }
+
+        void flushReturned() {
+            Runnable task
+            synchronized (this) {
+                returned = true
+                task = rollback
+            }
+            task?.run()
+        }
     }
 
-    public static void commitAll() {
-        for (Map.Entry<OrmRegistration, ThreadLocal<TransactionStatus>> o : transactionStatusMap.values()) {
-            PlatformTransactionManager transactionManager = o.key.platformTransactionManager
-            transactionManager.commit(o.value.get())
+
+    private static TransactionStatus removeStatus(OrmRegistration registration) {
+        TransactionStatus status = transactionStatusMap.get().remove(registration)
+        if (status == null) {
+            throw new IllegalStateException("No transaction in progress on this thread.")
+        }
+        return status
+    }
+
+    /**
+     * @return the unit's transaction on this thread, <code>null</code> if there is none or it already completed
+     */
+    private static TransactionStatus pollStatus(OrmRegistration registration) {
+        TransactionStatus status = transactionStatusMap.get().remove(registration)
+        return status != null && !status.completed ? status : null
+    }
+
+    private static TransactionDefinition readOnlyDefinition() {
+        DefaultTransactionDefinition definition = new DefaultTransactionDefinition()
+        definition.readOnly = true
+        return definition
+    }
+
+    private static List<Map.Entry<OrmRegistration, TransactionStatus>> drainStatuses() {
+        Map<OrmRegistration, TransactionStatus> statuses = transactionStatusMap.get()
+        List<Map.Entry<OrmRegistration, TransactionStatus>> entries =
+                new ArrayList<Map.Entry<OrmRegistration, TransactionStatus>>()
+        for (Map.Entry<OrmRegistration, TransactionStatus> o : statuses.entrySet()) {
+            if (o.value.completed) {
+                continue
+            }
+            entries.add(0, new AbstractMap.SimpleImmutableEntry<OrmRegistration, TransactionStatus>(o.key, o.value))
         }
+        statuses.clear()
+        return entries
     }
 }
@@ -0,0 +1,261 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Resizes a connection pool between a lower and an upper limit as load changes. Checkouts through this DataSource
+ * are timed, and at every interval the pool grows when the mean checkout wait exceeds the target or threads are
+ * queued for a connection. It shrinks once fewer than half of its connections have been in use for
+ * {@value #SHRINK_INTERVALS} consecutive intervals, never below the peak use seen meanwhile.
+ * <p>
+ * Connections beyond the lower limit are taken from the {@link ConnectionBudget} of the pool's JDBC URL, so a pool
+ * grows only as far as the units sharing the database leave room for. Only HikariCP pools are supported, which apply
+ * a new maximum as connections are requested and retired; c3p0 could only apply it by soft-resetting its pool, closing
+ * every connection.
+ */
+public class AdaptivePoolDataSource extends DelegatingDataSource implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(AdaptivePoolDataSource.class);
+    static final int SHRINK_INTERVALS = 30;
+
+    private final String unitName;
+    private final String poolName;
+    private final String url;
+    private final int minSize;
+    private final int maxSize;
+    private final LongAdder checkoutCount = new LongAdder();
+    private final LongAdder checkoutNanos = new LongAdder();
+    private ConnectionBudget connectionBudget;
+    private long targetWaitMillis = 10;
+    private long intervalMillis = 1000;
+    private ScheduledExecutorService scheduler;
+    private int configuredMinIdle;
+    private volatile int currentSize;
+    private volatile double meanCheckoutWaitMillis;
+    private int quietIntervals;
+    private int peakActive;
+
+
+    /**
+     * @param unitName
+     * @param poolName
+     * @param pool     HikariCP pool
+     * @param url      JDBC URL the pool connects to, identifying its budget
+     * @param minSize  lower limit of the pool's maximum size
+     * @param maxSize  upper limit of the pool's maximum size
+     */
+    public AdaptivePoolDataSource(String unitName, String poolName, DataSource pool, String url, int minSize,
+                                  int maxSize) {
+        super(pool);
+        if (!(pool instanceof HikariDataSource)) {
+            throw new IllegalArgumentException("Unsupported adaptive pool " + pool.getClass().getName()
+                    + " in persistence unit '" + unitName + "', HikariCP is required.");
+        }
+        if (minSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid adaptive pool size " + minSize + ".." + maxSize
+                    + " in persistence unit '" + unitName + "'.");
+        }
+        this.unitName = unitName;
+        this.poolName = poolName;
+        this.url = url;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param connectionBudget budget shared with the other pools, <code>null</code> for none
+     */
+    public void setConnectionBudget(ConnectionBudget connectionBudget) {
+        this.connectionBudget = connectionBudget;
+    }
+
+    /**
+     * @param targetWaitMillis mean checkout wait above which the pool grows
+     */
+    public void setTargetWaitMillis(long targetWaitMillis) {
+        this.targetWaitMillis = targetWaitMillis;
+    }
+
+    /**
+     * @param intervalMillis time between resize decisions
+     */
+    public void setIntervalMillis(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Starts the pool at its lower limit and schedules the resize decisions.
+     */
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        if (targetWaitMillis < 0 || intervalMillis < 1) {
+            throw new IllegalArgumentException("Invalid adaptive pool target wait " + targetWaitMillis
+                    + " ms or interval " + intervalMillis + " ms in persistence unit '" + unitName + "'.");
+        }
+
+        configuredMinIdle = pool().getMinimumIdle();
+        if (connectionBudget != null && !connectionBudget.reserve(url, minSize)) {
+            logger.warn("Lower limit {} of pool '{}' in persistence unit '{}' exceeds the connection budget of {} "
+                    + "for its database.", minSize, poolName, unitName, connectionBudget.getMaxConnectionsPerUrl());
+        }
+        resize(minSize);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "orm-pool-sizer-" + poolName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::adjustQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return super.getConnection();
+        } finally {
+            recordCheckout(start);
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return super.getConnection(username, password);
+        } finally {
+            recordCheckout(start);
+        }
+    }
+
+    private void recordCheckout(long start) {
+        checkoutNanos.add(System.nanoTime() - start);
+        checkoutCount.increment();
+    }
+
+
+    public String getUnitName() {
+        return unitName;
+    }
+
+    /**
+     * @return current maximum size of the pool
+     */
+    public int getCurrentSize() {
+        return currentSize;
+    }
+
+    /**
+     * @return mean checkout wait over the last interval
+     */
+    public double getMeanCheckoutWaitMillis() {
+        return meanCheckoutWaitMillis;
+    }
+
+    private void adjustQuietly() {
+        try {
+            adjust();
+        } catch (RuntimeException e) {
+            logger.warn("Failed resizing pool '" + poolName + "' of persistence unit '" + unitName + "'.", e);
+        }
+    }
+
+    /**
+     * Makes one resize decision from the checkouts since the previous one.
+     */
+    synchronized void adjust() {
+        long count = checkoutCount.sumThenReset();
+        long nanos = checkoutNanos.sumThenReset();
+        double meanWaitMillis = count > 0 ? nanos / 1e6 / count : 0;
+        meanCheckoutWaitMillis = meanWaitMillis;
+
+        int size = currentSize;
+        int active = activeConnections();
+        peakActive = Math.max(peakActive, active);
+
+        if ((meanWaitMillis > targetWaitMillis || waitingThreads() > 0) && size < maxSize) {
+            quietIntervals = 0;
+            peakActive = 0;
+            int extra = Math.min(maxSize - size, Math.max(1, size / 2));
+            int granted = connectionBudget != null ? connectionBudget.acquire(url, extra) : extra;
+            if (granted > 0) {
+                logger.info("Growing pool '{}' of persistence unit '{}' from {} to {}, mean checkout wait {} ms.",
+                        poolName, unitName, size, size + granted, String.format("%.1f", meanWaitMillis));
+                resize(size + granted);
+            } else {
+                logger.debug("Pool '{}' of persistence unit '{}' is waiting on the connection budget of its "
+                        + "database.", poolName, unitName);
+            }
+            return;
+        }
+
+        quietIntervals = active * 2 < size ? quietIntervals + 1 : 0;
+        if (quietIntervals >= SHRINK_INTERVALS && size > minSize) {
+            int target = Math.max(Math.max(minSize, peakActive + 1), size - Math.max(1, size / 4));
+            if (target < size) {
+                logger.info("Shrinking pool '{}' of persistence unit '{}' from {} to {}, peak use {}.", poolName,
+                        unitName, size, target, peakActive);
+                resize(target);
+                if (connectionBudget != null) {
+                    connectionBudget.release(url, size - target);
+                }
+            }
+            quietIntervals = 0;
+            peakActive = 0;
+        }
+    }
+
+    private void resize(int size) {
+        int minIdle = Math.min(configuredMinIdle, size);
+        HikariConfigMXBean config = pool().getHikariConfigMXBean();
+        // lowered first so that the minimum never exceeds the maximum
+        config.setMinimumIdle(Math.min(minIdle, config.getMaximumPoolSize()));
+        config.setMaximumPoolSize(size);
+        config.setMinimumIdle(minIdle);
+        currentSize = size;
+    }
+
+    private int activeConnections() {
+        HikariPoolMXBean mxBean = pool().getHikariPoolMXBean();
+        return mxBean != null ? mxBean.getActiveConnections() : 0;
+    }
+
+    private int waitingThreads() {
+        HikariPoolMXBean mxBean = pool().getHikariPoolMXBean();
+        return mxBean != null ? mxBean.getThreadsAwaitingConnection() : 0;
+    }
+
+    private HikariDataSource pool() {
+        return (HikariDataSource) getTargetDataSource();
+    }
+
+    /**
+     * Stops resizing and returns the pool's connections to the budget, the pool itself being closed by the container.
+     */
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (connectionBudget != null) {
+            synchronized (this) {
+                connectionBudget.release(url, currentSize);
+            }
+        }
+    }
+}
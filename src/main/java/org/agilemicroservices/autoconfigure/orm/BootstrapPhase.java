@@ -0,0 +1,57 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import java.beans.ConstructorProperties;
+
+
+/**
+ * Wall-clock time and heap allocation of one phase of the ORM bootstrap, for a single unit or for all units at once.
+ */
+public class BootstrapPhase {
+    private final String unitName;
+    private final String phase;
+    private final String threadName;
+    private final double wallMillis;
+    private final long allocatedBytes;
+
+
+    @ConstructorProperties({"unitName", "phase", "threadName", "wallMillis", "allocatedBytes"})
+    public BootstrapPhase(String unitName, String phase, String threadName, double wallMillis, long allocatedBytes) {
+        this.unitName = unitName;
+        this.phase = phase;
+        this.threadName = threadName;
+        this.wallMillis = wallMillis;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * @return the unit, <code>null</code> for phases covering all units
+     */
+    public String getUnitName() {
+        return unitName;
+    }
+
+    public String getPhase() {
+        return phase;
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+
+    public double getWallMillis() {
+        return wallMillis;
+    }
+
+    /**
+     * @return bytes allocated by the thread running the phase, -1 when the JVM does not report them
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s/%s: %.3fms, %d bytes", unitName == null ? "*" : unitName, phase, wallMillis,
+                allocatedBytes);
+    }
+}
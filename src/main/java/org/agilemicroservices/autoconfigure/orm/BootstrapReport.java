@@ -0,0 +1,202 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+
+/**
+ * Timings of the phases of the ORM bootstrap, from the unit scan of the registrar through to the
+ * <code>EntityManagerFactory</code> builds, recorded per unit where a phase is specific to one. Allocation is
+ * measured on the thread running each phase, so phases nesting others include their allocation too.
+ * <p>
+ * Once the context is refreshed the report is logged at debug level and, when a file is configured, written to it as
+ * JSON.
+ */
+public class BootstrapReport implements ApplicationListener<ContextRefreshedEvent> {
+    private static final Logger logger = LoggerFactory.getLogger(BootstrapReport.class);
+    /**
+     * Resolution of the unit files, from the {@link OrmIndex} or by scanning.
+     */
+    public static final String UNIT_SCAN = "unitScan";
+    public static final String PROPERTIES = "properties";
+    /**
+     * Definition of a unit's DataSource, EntityManagerFactory, transaction manager and supporting beans.
+     */
+    public static final String DEFINITIONS = "definitions";
+    /**
+     * Spring Data's scan for store modules, shared by all units.
+     */
+    public static final String STORE_DETECTION = "storeDetection";
+    public static final String REPOSITORY_REGISTRATION = "repositoryRegistration";
+    public static final String DATA_SOURCE = "dataSource";
+    public static final String ENTITY_MANAGER_FACTORY = "entityManagerFactory";
+    /**
+     * Build of an <code>EntityManagerFactory</code> on the bootstrap executor, when bootstrapping in parallel.
+     */
+    public static final String ENTITY_MANAGER_FACTORY_BUILD = "entityManagerFactoryBuild";
+
+    private final List<BootstrapPhase> phases = Collections.synchronizedList(new ArrayList<>());
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private final boolean allocationSupported = isAllocationSupported(threadMXBean);
+    private String reportFile;
+
+
+    private static boolean isAllocationSupported(ThreadMXBean threadMXBean) {
+        try {
+            return threadMXBean instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemorySupported()
+                    && ((com.sun.management.ThreadMXBean) threadMXBean).isThreadAllocatedMemoryEnabled();
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param reportFile file the report is written to as JSON, <code>null</code> for none
+     */
+    public void setReportFile(String reportFile) {
+        this.reportFile = reportFile;
+    }
+
+    /**
+     * Starts timing a phase on the calling thread.
+     *
+     * @param unitName the unit, <code>null</code> for phases covering all units
+     * @param phase
+     * @return the running phase, to be stopped on the same thread
+     */
+    public Timer start(String unitName, String phase) {
+        return new Timer(unitName, phase);
+    }
+
+    /**
+     * @return recorded phases in order of completion
+     */
+    public List<BootstrapPhase> getPhases() {
+        synchronized (phases) {
+            return new ArrayList<>(phases);
+        }
+    }
+
+    public List<BootstrapPhase> getPhases(String unitName) {
+        List<BootstrapPhase> result = new ArrayList<>();
+        for (BootstrapPhase o : getPhases()) {
+            if (unitName.equals(o.getUnitName())) {
+                result.add(o);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        if (logger.isDebugEnabled()) {
+            for (BootstrapPhase o : getPhases()) {
+                logger.debug("Bootstrap phase {}.", o);
+            }
+        }
+
+        if (reportFile != null) {
+            Path path = Paths.get(reportFile);
+            try {
+                if (path.getParent() != null) {
+                    Files.createDirectories(path.getParent());
+                }
+                try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+                    writeJson(out);
+                }
+                logger.info("Wrote ORM bootstrap report to '{}'.", path);
+            } catch (IOException e) {
+                logger.error("Failed writing ORM bootstrap report to '" + path + "'.", e);
+            }
+        }
+    }
+
+    /**
+     * Writes the recorded phases as a JSON object holding a <code>phases</code> array.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeJson(Writer out) throws IOException {
+        out.write("{\"phases\":[");
+        List<BootstrapPhase> snapshot = getPhases();
+        for (int i = 0; i < snapshot.size(); i++) {
+            BootstrapPhase o = snapshot.get(i);
+            out.write(i == 0 ? "\n" : ",\n");
+            out.write(String.format(Locale.ROOT,
+                    "  {\"unit\":%s,\"phase\":%s,\"thread\":%s,\"wallMillis\":%.3f,\"allocatedBytes\":%d}",
+                    quote(o.getUnitName()), quote(o.getPhase()), quote(o.getThreadName()), o.getWallMillis(),
+                    o.getAllocatedBytes()));
+        }
+        out.write("\n]}\n");
+    }
+
+    private static String quote(String str) {
+        if (str == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : str.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private long allocatedBytes() {
+        return allocationSupported
+                ? ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(
+                Thread.currentThread().getId())
+                : -1;
+    }
+
+
+    /**
+     * A phase being timed.
+     */
+    public class Timer {
+        private final String unitName;
+        private final String phase;
+        private final long startNanos = System.nanoTime();
+        private final long startBytes = allocatedBytes();
+
+        private Timer(String unitName, String phase) {
+            this.unitName = unitName;
+            this.phase = phase;
+        }
+
+        /**
+         * Records the phase, to be called on the thread that started it.
+         *
+         * @return the recorded phase
+         */
+        public BootstrapPhase stop() {
+            long bytes = allocationSupported ? allocatedBytes() - startBytes : -1;
+            BootstrapPhase result = new BootstrapPhase(unitName, phase, Thread.currentThread().getName(),
+                    (System.nanoTime() - startNanos) / 1e6, bytes);
+            phases.add(result);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.InstantiationAwareBeanPostProcessor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Records the creation of selected beans, such as the DataSource and EntityManagerFactory of each unit, as phases of
+ * the {@link BootstrapReport}. A bean's phase runs from its instantiation until it is initialized, so it includes the
+ * creation of dependencies it triggers.
+ */
+public class BootstrapTimingPostProcessor implements InstantiationAwareBeanPostProcessor {
+    private final BootstrapReport report;
+    private final Map<String, String> unitByBeanName;
+    private final Map<String, String> phaseByBeanName;
+    private final ConcurrentMap<String, BootstrapReport.Timer> timers = new ConcurrentHashMap<>();
+
+
+    /**
+     * @param report
+     * @param unitByBeanName  unit of each timed bean
+     * @param phaseByBeanName phase recorded for each timed bean
+     */
+    public BootstrapTimingPostProcessor(BootstrapReport report, Map<String, String> unitByBeanName,
+                                        Map<String, String> phaseByBeanName) {
+        this.report = report;
+        this.unitByBeanName = unitByBeanName;
+        this.phaseByBeanName = phaseByBeanName;
+    }
+
+    @Override
+    public Object postProcessBeforeInstantiation(Class<?> beanClass, String beanName) throws BeansException {
+        String phase = phaseByBeanName.get(beanName);
+        if (phase != null) {
+            timers.putIfAbsent(beanName, report.start(unitByBeanName.get(beanName), phase));
+        }
+        return null;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        BootstrapReport.Timer timer = timers.remove(beanName);
+        if (timer != null) {
+            timer.stop();
+        }
+        return bean;
+    }
+}
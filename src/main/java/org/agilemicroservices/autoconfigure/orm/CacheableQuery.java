@@ -0,0 +1,19 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.hibernate.annotations.QueryHints;
+
+import javax.persistence.QueryHint;
+import java.lang.annotation.*;
+
+
+/**
+ * Caches the results of a repository query method in the query cache of its unit, which must set
+ * <code>cache.query.enabled</code>. CRUD methods such as <code>findAll</code> can be cached by redeclaring them on the
+ * repository interface. Results are invalidated whenever any of the queried tables is written through the unit.
+ */
+@Target({ElementType.METHOD, ElementType.ANNOTATION_TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@org.springframework.data.jpa.repository.QueryHints(@QueryHint(name = QueryHints.CACHEABLE, value = "true"))
+public @interface CacheableQuery {
+}
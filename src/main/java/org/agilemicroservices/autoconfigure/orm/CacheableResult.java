@@ -0,0 +1,30 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import java.lang.annotation.*;
+
+
+/**
+ * Caches the results of a repository method by its arguments, in memory and ahead of the transaction and the query.
+ * Entries are dropped when entities of the repository's domain type are written through the unit, and the limits
+ * default to the unit's <code>repository.cache.max_entries</code> and <code>repository.cache.ttl_seconds</code>.
+ * <p>
+ * Cached results are shared between callers and must not be modified. Methods returning entities are refused at
+ * startup, as the shared instances would carry one caller's uncommitted changes and lazy state to the others; return
+ * counts, projections or DTOs instead. Only writes of the repository's own domain type drop entries, so results
+ * joining or projecting other entities stay stale after those change, until they expire.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CacheableResult {
+
+    /**
+     * @return entries held, the least recently used being evicted beyond them, -1 for the unit's default
+     */
+    int maxEntries() default -1;
+
+    /**
+     * @return seconds an entry is used for, 0 for no limit, -1 for the unit's default
+     */
+    int ttlSeconds() default -1;
+}
@@ -0,0 +1,76 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Connections available to the adaptive pools of all units, counted per JDBC URL so that units sharing a database
+ * server share its connection limit. A pool holds as many connections of the budget as its current maximum size.
+ */
+public class ConnectionBudget {
+    private final int maxConnectionsPerUrl;
+    private final Map<String, Integer> reserved = new HashMap<>();
+
+
+    /**
+     * @param maxConnectionsPerUrl connections allowed across all pools of one JDBC URL, 0 for no limit
+     */
+    public ConnectionBudget(int maxConnectionsPerUrl) {
+        if (maxConnectionsPerUrl < 0) {
+            throw new IllegalArgumentException("Invalid connection budget " + maxConnectionsPerUrl + ".");
+        }
+        this.maxConnectionsPerUrl = maxConnectionsPerUrl;
+    }
+
+    /**
+     * @return connections allowed per JDBC URL, 0 for no limit
+     */
+    public int getMaxConnectionsPerUrl() {
+        return maxConnectionsPerUrl;
+    }
+
+    /**
+     * Takes connections from the budget whether or not they are available, as for the lower limit of a pool.
+     *
+     * @param url
+     * @param count
+     * @return <code>false</code> if the budget of the URL is now exceeded
+     */
+    public synchronized boolean reserve(String url, int count) {
+        int total = reserved.getOrDefault(url, 0) + count;
+        reserved.put(url, total);
+        return maxConnectionsPerUrl == 0 || total <= maxConnectionsPerUrl;
+    }
+
+    /**
+     * Takes up to <code>count</code> connections from the budget.
+     *
+     * @param url
+     * @param count
+     * @return connections taken, 0 when the budget of the URL is exhausted
+     */
+    public synchronized int acquire(String url, int count) {
+        int current = reserved.getOrDefault(url, 0);
+        int granted = maxConnectionsPerUrl == 0 ? count
+                : Math.max(0, Math.min(count, maxConnectionsPerUrl - current));
+        reserved.put(url, current + granted);
+        return granted;
+    }
+
+    public synchronized void release(String url, int count) {
+        int remaining = reserved.getOrDefault(url, 0) - count;
+        if (remaining > 0) {
+            reserved.put(url, remaining);
+        } else {
+            reserved.remove(url);
+        }
+    }
+
+    /**
+     * @return connections currently held by the pools of a JDBC URL
+     */
+    public synchronized int getReserved(String url) {
+        return reserved.getOrDefault(url, 0);
+    }
+}
@@ -0,0 +1,152 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import com.mchange.v2.c3p0.C3P0ProxyConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.util.ReflectionUtils;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Opens and validates connections of the pools of a persistence unit in parallel once its singletons are created, so
+ * the context is only refreshed with connections established and the first requests do not pay for connecting. The
+ * connections of a pool are held together until all are validated, which makes the pool open as many distinct ones,
+ * and are then returned to it, its minimum size keeping them open. A connection failing validation fails startup.
+ */
+public class ConnectionPoolWarmer implements SmartInitializingSingleton, BeanFactoryAware {
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionPoolWarmer.class);
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+    private static final Method IS_VALID = ReflectionUtils.findMethod(Connection.class, "isValid", int.class);
+
+    private final String unitName;
+    private final List<String> poolBeanNames;
+    private final int connections;
+    private final String validationQuery;
+    private BeanFactory beanFactory;
+
+
+    /**
+     * @param unitName
+     * @param poolBeanNames
+     * @param connections     connections opened per pool
+     * @param validationQuery statement run on each connection, <code>null</code> to use
+     *                        <code>Connection.isValid</code>
+     */
+    public ConnectionPoolWarmer(String unitName, List<String> poolBeanNames, int connections, String validationQuery) {
+        this.unitName = unitName;
+        this.poolBeanNames = poolBeanNames;
+        this.connections = connections;
+        this.validationQuery = validationQuery;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(connections, r -> {
+            Thread thread = new Thread(r, "orm-" + unitName + "-pool-warmup-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (String o : poolBeanNames) {
+                warmUp(o, beanFactory.getBean(o, DataSource.class), executor);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void warmUp(String poolName, DataSource pool, ExecutorService executor) {
+        long start = System.currentTimeMillis();
+        List<Future<Connection>> futures = new ArrayList<>(connections);
+        for (int i = 0; i < connections; i++) {
+            futures.add(executor.submit(() -> openValidated(pool)));
+        }
+
+        List<Connection> opened = new ArrayList<>(connections);
+        Throwable failure = null;
+        try {
+            for (Future<Connection> o : futures) {
+                try {
+                    opened.add(o.get());
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = e;
+        } finally {
+            for (Connection o : opened) {
+                closeQuietly(o);
+            }
+        }
+
+        if (failure != null) {
+            throw new IllegalStateException("Failed warming up pool '" + poolName + "' of persistence unit '"
+                    + unitName + "'.", failure);
+        }
+        logger.info("Warmed up {} connections of pool '{}' in persistence unit '{}' in {} ms.", connections,
+                poolName, unitName, System.currentTimeMillis() - start);
+    }
+
+    private Connection openValidated(DataSource pool) throws SQLException {
+        Connection connection = pool.getConnection();
+        try {
+            if (validationQuery != null) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.setQueryTimeout(VALIDATION_TIMEOUT_SECONDS);
+                    statement.execute(validationQuery);
+                }
+            } else if (!isValid(connection)) {
+                throw new SQLException("Connection failed validation.");
+            }
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            closeQuietly(connection);
+            throw e;
+        }
+    }
+
+    private static boolean isValid(Connection connection) throws SQLException {
+        if (connection instanceof C3P0ProxyConnection) {
+            // c3p0 0.9.2 proxies predate Connection.isValid, which is called on the physical connection instead
+            try {
+                return (Boolean) ((C3P0ProxyConnection) connection).rawConnectionOperation(IS_VALID,
+                        C3P0ProxyConnection.RAW_CONNECTION, new Object[]{VALIDATION_TIMEOUT_SECONDS});
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new SQLException("Failed validating connection.", e);
+            }
+        }
+        return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+    }
+
+    private void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.warn("Failed returning a connection to its pool in persistence unit '" + unitName + "'.", e);
+        }
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        this.beanFactory = beanFactory;
+    }
+}
@@ -1,9 +1,16 @@
 package org.agilemicroservices.autoconfigure.orm;
 
+import org.hibernate.MultiTenancyStrategy;
+import org.hibernate.cfg.AvailableSettings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.beans.factory.parsing.BeanComponentDefinition;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.ManagedMap;
 import org.springframework.context.EnvironmentAware;
 import org.springframework.context.ResourceLoaderAware;
 import org.springframework.context.annotation.ImportBeanDefinitionRegistrar;
@@ -15,12 +22,17 @@ import org.springframework.core.type.AnnotationMetadata;
 import org.springframework.data.jpa.repository.config.JpaRepositoryConfigExtension;
 import org.springframework.data.repository.config.RepositoryConfigurationExtension;
 import org.springframework.data.repository.config.RepositoryConfigurationUtils;
-import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jmx.export.MBeanExporter;
+import org.springframework.jmx.support.RegistrationPolicy;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
 import java.util.*;
 
 import static org.agilemicroservices.autoconfigure.orm.PropertiesRepositoryConfigurationSource.*;
@@ -30,14 +42,114 @@ public class DynamicRepositoryBeanDefinitionRegistrarSupport
         implements ImportBeanDefinitionRegistrar, ResourceLoaderAware, EnvironmentAware {
     private static final Logger logger = LoggerFactory.getLogger(DynamicRepositoryBeanDefinitionRegistrarSupport.class);
     public static final String FILENAME_SUFFIX = ".orm.properties";
+    /**
+     * Environment property enabling concurrent EntityManagerFactory builds across persistence units.
+     */
+    public static final String BOOTSTRAP_PARALLEL = "orm.bootstrap.parallel";
+    /**
+     * Environment property bounding the bootstrap executor, defaults to the lesser of unit and processor counts.
+     */
+    public static final String BOOTSTRAP_THREADS = "orm.bootstrap.threads";
+    public static final String BOOTSTRAP_EXECUTOR_BEAN_NAME = "ormBootstrapExecutor";
+    /**
+     * Environment property listing the resource patterns searched for unit files, e.g.
+     * <code>classpath*:orm/*.orm.properties</code>.
+     */
+    public static final String SCAN_LOCATIONS = "orm.scan.locations";
+    /**
+     * Environment property forcing classpath scanning even when an {@link OrmIndex} is present.
+     */
+    public static final String INDEX_IGNORE = "orm.index.ignore";
+    /**
+     * Environment property adding the scanned units missing from an {@link OrmIndex}, implied when
+     * {@link #SCAN_LOCATIONS} is set.
+     */
+    public static final String INDEX_MERGE_SCAN = "orm.index.merge_scan";
+    /**
+     * Environment property enabling JMX metrics for units that do not set <code>metrics.enabled</code> themselves.
+     */
+    public static final String METRICS_ENABLED_DEFAULT = "orm.metrics.enabled";
+    /**
+     * Default of <code>bootstrap.lazy</code> for units not setting it.
+     */
+    public static final String BOOTSTRAP_LAZY_DEFAULT = "orm.bootstrap.lazy";
+    /**
+     * Default of <code>bootstrap.warmup</code> for units not setting it.
+     */
+    public static final String BOOTSTRAP_WARMUP_DEFAULT = "orm.bootstrap.warmup";
+    /**
+     * Default of <code>cache.enabled</code> for units not setting it.
+     */
+    public static final String CACHE_ENABLED_DEFAULT = "orm.cache.enabled";
+    /**
+     * Default of <code>cache.query.enabled</code> for units not setting it.
+     */
+    public static final String CACHE_QUERY_ENABLED_DEFAULT = "orm.cache.query.enabled";
+    /**
+     * Default of <code>metadata.cache.enabled</code> for units not setting it.
+     */
+    public static final String METADATA_CACHE_ENABLED_DEFAULT = "orm.metadata.cache.enabled";
+    /**
+     * Environment property locating the metadata cache files, defaults to <code>orm-metadata</code> in the temporary
+     * directory.
+     */
+    public static final String METADATA_CACHE_DIR = "orm.metadata.cache.dir";
+    /**
+     * Default of <code>repository.warmup</code> for units not setting it.
+     */
+    public static final String REPOSITORY_WARMUP_DEFAULT = "orm.repository.warmup";
+    /**
+     * Default of <code>repository.lazy_init</code> for units not setting it.
+     */
+    public static final String REPOSITORY_LAZY_INIT_DEFAULT = "orm.repository.lazy_init";
+    /**
+     * Default of <code>repository.cache.enabled</code> for units not setting it, itself true by default.
+     */
+    public static final String REPOSITORY_CACHE_ENABLED_DEFAULT = "orm.repository.cache.enabled";
+    /**
+     * Environment property naming a file the {@link BootstrapReport} is written to as JSON once the context is
+     * refreshed.
+     */
+    public static final String BOOTSTRAP_REPORT_FILE = "orm.bootstrap.report_file";
+    public static final String BOOTSTRAP_REPORT_BEAN_NAME = "ormBootstrapReport";
+    static final String BOOTSTRAP_TIMING_POST_PROCESSOR_BEAN_NAME = "ormBootstrapTimingPostProcessor";
+    static final String LAZY_POST_PROCESSOR_BEAN_NAME = "ormLazyPersistenceUnitPostProcessor";
+    /**
+     * Default of <code>async.virtual_threads</code> for units not setting it.
+     */
+    public static final String ASYNC_VIRTUAL_THREADS_DEFAULT = "orm.async.virtual_threads";
+    /**
+     * Default of <code>sql.statistics.enabled</code> for units not setting it.
+     */
+    public static final String SQL_STATISTICS_ENABLED_DEFAULT = "orm.sql.statistics.enabled";
+    /**
+     * Default of <code>datasource.pool.adaptive</code> for units not setting it.
+     */
+    public static final String POOL_ADAPTIVE_DEFAULT = "orm.datasource.pool.adaptive";
+    /**
+     * Environment property limiting the connections of the adaptive pools connecting to one JDBC URL, across all
+     * units, unlimited by default.
+     */
+    public static final String POOL_BUDGET = "orm.datasource.pool.budget";
+    public static final String CONNECTION_BUDGET_BEAN_NAME = "ormConnectionBudget";
+    static final String DEFAULT_SCAN_LOCATION = "classpath*:**/*" + FILENAME_SUFFIX;
+    private static final int DEFAULT_SQL_REPEAT_THRESHOLD = 20;
+    private static final int DEFAULT_SQL_SLOW_THRESHOLD = 1000;
+    private static final int DEFAULT_REPOSITORY_CACHE_MAX_ENTRIES = 1000;
+    private static final int DEFAULT_REPOSITORY_CACHE_TTL_SECONDS = 60;
 
     private Environment environment;
     private ResourceLoader resourceLoader;
+    private BootstrapReport bootstrapReport;
 
 
     /**
      * Searches the classpath for <code>*.orm.properties</code> files and creates a persistence context for each
-     * driven by the contained property values.
+     * driven by the contained property values. Units and their repositories are taken from the build-time
+     * {@link OrmIndex} when one is present, merged with the units found by scanning that it lacks.
+     * <p>
+     * The infrastructure of every unit is defined ahead of any repository so that, in parallel bootstrap mode, all
+     * EntityManagerFactory builds are submitted before the first repository waits on one of them.
      *
      * @param importingClassMetadata
      * @param registry
@@ -45,20 +157,164 @@ public class DynamicRepositoryBeanDefinitionRegistrarSupport
     @Override
     public void registerBeanDefinitions(AnnotationMetadata importingClassMetadata, BeanDefinitionRegistry registry) {
         PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver(resourceLoader);
+        bootstrapReport = new BootstrapReport();
+        bootstrapReport.setReportFile(environment.getProperty(BOOTSTRAP_REPORT_FILE));
+        BootstrapReport.Timer timer = bootstrapReport.start(null, BootstrapReport.UNIT_SCAN);
 
-        try {
-            logger.debug("Scanning classpath for " + FILENAME_SUFFIX + " files.");
-            Resource[] resources = resolver.getResources("classpath*:**/*" + FILENAME_SUFFIX);
-            Set<String> unitNames = new HashSet<>();
-            for (Resource o : resources) {
-                String prefix = unitNameFromFilename(o.getFilename());
-                if (unitNames.add(prefix)) {
-                    buildDataSourceQuietly(prefix, o, registry);
+        OrmIndex index = null;
+        if (!environment.getProperty(INDEX_IGNORE, Boolean.class, false)) {
+            index = loadIndexQuietly(resolver);
+        }
+
+        Map<String, Resource> units;
+        if (index == null) {
+            units = scanUnits(resolver);
+        } else if (environment.getProperty(INDEX_MERGE_SCAN, Boolean.class, false)
+                || environment.containsProperty(SCAN_LOCATIONS)) {
+            units = mergeUnits(indexedUnits(index, resolver), scanUnits(resolver));
+        } else {
+            units = indexedUnits(index, resolver);
+        }
+        timer.stop();
+        registerBootstrapReportDefinitions(units.keySet(), registry);
+
+        String bootstrapExecutorName = null;
+        if (!units.isEmpty() && environment.getProperty(BOOTSTRAP_PARALLEL, Boolean.class, false)) {
+            bootstrapExecutorName = BOOTSTRAP_EXECUTOR_BEAN_NAME;
+            registerBootstrapExecutorDefinitions(bootstrapExecutorName, units.size(), registry);
+        }
+
+        Map<String, PropertiesRepositoryConfigurationSource> sources = new LinkedHashMap<>();
+        for (Map.Entry<String, Resource> o : units.entrySet()) {
+            PropertiesRepositoryConfigurationSource source = buildDataSourceQuietly(o.getKey(), o.getValue(),
+                    bootstrapExecutorName, registry);
+            if (source != null) {
+                if (index != null && index.getUnitNames().contains(o.getKey())) {
+                    source.setIndexedRepositoryInterfaces(index.getRepositoryInterfaces(o.getKey()));
                 }
+                sources.put(o.getKey(), source);
             }
+        }
+
+        RepositoryBootstrapContext bootstrapContext = new RepositoryBootstrapContext(resourceLoader, environment);
+        if (!sources.isEmpty()) {
+            // detected up front so that the scan is reported apart from the first unit's repositories
+            timer = bootstrapReport.start(null, BootstrapReport.STORE_DETECTION);
+            bootstrapContext.isInMultiStoreMode();
+            timer.stop();
+        }
+        Set<String> lazyEntityManagerFactoryNames = new HashSet<>();
+        for (Map.Entry<String, PropertiesRepositoryConfigurationSource> o : sources.entrySet()) {
+            String unitName = o.getKey();
+            Map<String, String> properties = o.getValue().getProperties();
+            timer = bootstrapReport.start(unitName, BootstrapReport.REPOSITORY_REGISTRATION);
+            List<BeanComponentDefinition> repositories = registerRepositoryDefinitions(o.getValue(),
+                    bootstrapContext, registry);
+            timer.stop();
+            boolean lazy = isLazy(properties);
+            boolean lazyRepositories = lazy
+                    || booleanProperty(properties, REPOSITORY_LAZY_INIT, REPOSITORY_LAZY_INIT_DEFAULT);
+            for (BeanComponentDefinition j : repositories) {
+                BeanDefinition definition = registry.getBeanDefinition(j.getBeanName());
+                definition.getPropertyValues().add("mappingContext",
+                        new RuntimeBeanReference(unitName + "JpaMappingContext"));
+                definition.setLazyInit(lazyRepositories);
+            }
+            if (isMetricsEnabled(properties)) {
+                registerRepositoryMetricsDefinitions(unitName + "RepositoryMetricsPostProcessor",
+                        unitName + "OrmMetrics", repositories, registry);
+            }
+
+            if (shardCount(unitName, properties) > 0) {
+                registerShardingDefinitions(unitName + "ShardingRepositoryPostProcessor", unitName, repositories,
+                        registry);
+            }
+
+            if (!repositories.isEmpty()
+                    && booleanProperty(properties, REPOSITORY_CACHE_ENABLED, REPOSITORY_CACHE_ENABLED_DEFAULT, true)) {
+                registerResultCacheDefinitions(unitName + "RepositoryResultCache", unitName, properties,
+                        repositories, registry);
+            }
+
+            if (booleanProperty(properties, REPOSITORY_WARMUP, REPOSITORY_WARMUP_DEFAULT)) {
+                registerQueryWarmerDefinitions(unitName + "RepositoryQueryWarmer", unitName, properties,
+                        repositories, registry);
+            }
+
+            if (lazy) {
+                lazyEntityManagerFactoryNames.add(unitName + "EntityManagerFactory");
+                if (booleanProperty(properties, BOOTSTRAP_WARMUP, BOOTSTRAP_WARMUP_DEFAULT)) {
+                    registerWarmerDefinitions(unitName + "PersistenceUnitWarmer", unitName, repositories, registry);
+                }
+            }
+        }
+
+        if (!lazyEntityManagerFactoryNames.isEmpty()) {
+            // registered last so that it runs after Spring Data's post-processor defining EntityManager beans
+            registry.registerBeanDefinition(LAZY_POST_PROCESSOR_BEAN_NAME, BeanDefinitionBuilder
+                    .rootBeanDefinition(LazyPersistenceUnitPostProcessor.class)
+                    .setRole(BeanDefinition.ROLE_INFRASTRUCTURE)
+                    .addConstructorArgValue(lazyEntityManagerFactoryNames)
+                    .getBeanDefinition());
+        }
+    }
+
+    private OrmIndex loadIndexQuietly(PathMatchingResourcePatternResolver resolver) {
+        try {
+            OrmIndex index = OrmIndex.load(resolver);
+            if (index != null) {
+                logger.debug("Using persistence units {} from {}.", index.getUnitNames(), OrmIndex.LOCATION);
+            }
+            return index;
         } catch (IOException e) {
-            logger.error("Failed scanning classpath for " + FILENAME_SUFFIX + " files.", e);
+            logger.error("Failed reading " + OrmIndex.LOCATION + ", falling back to classpath scanning.", e);
+            return null;
+        }
+    }
+
+    private Map<String, Resource> indexedUnits(OrmIndex index, PathMatchingResourcePatternResolver resolver) {
+        Map<String, Resource> units = new LinkedHashMap<>();
+        for (String o : index.getUnitNames()) {
+            units.put(o, resolver.getResource(ResourceLoader.CLASSPATH_URL_PREFIX + index.getLocation(o)));
+        }
+        return units;
+    }
+
+    /**
+     * Adds the scanned units missing from the index, such as those of jars built without it, whose repositories are
+     * then found by scanning as well. Only done when {@link #INDEX_MERGE_SCAN} or {@link #SCAN_LOCATIONS} is set.
+     */
+    private Map<String, Resource> mergeUnits(Map<String, Resource> indexedUnits, Map<String, Resource> scannedUnits) {
+        Map<String, Resource> units = new LinkedHashMap<>(indexedUnits);
+        for (Map.Entry<String, Resource> o : scannedUnits.entrySet()) {
+            if (!units.containsKey(o.getKey())) {
+                logger.warn("Persistence unit '{}' from {} is missing from {}, scanning its repositories.", o.getKey(),
+                        o.getValue().getDescription(), OrmIndex.LOCATION);
+                units.put(o.getKey(), o.getValue());
+            }
         }
+        return units;
+    }
+
+    /**
+     * Resolves unit files from the locations in {@link #SCAN_LOCATIONS}, or from the whole classpath when none are
+     * configured.
+     */
+    private Map<String, Resource> scanUnits(PathMatchingResourcePatternResolver resolver) {
+        Map<String, Resource> units = new LinkedHashMap<>();
+        String[] locations = environment.getProperty(SCAN_LOCATIONS, String[].class,
+                new String[]{DEFAULT_SCAN_LOCATION});
+        for (String location : locations) {
+            try {
+                logger.debug("Scanning '{}' for " + FILENAME_SUFFIX + " files.", location);
+                for (Resource o : resolver.getResources(location.trim())) {
+                    units.putIfAbsent(unitNameFromFilename(o.getFilename()), o);
+                }
+            } catch (IOException e) {
+                logger.error("Failed scanning '" + location + "' for " + FILENAME_SUFFIX + " files.", e);
+            }
+        }
+        return units;
     }
 
     /**
@@ -66,51 +322,133 @@ public class DynamicRepositoryBeanDefinitionRegistrarSupport
      * EntityManagerFactory and TransactionManager.
      *
      * @param resource
+     * @param bootstrapExecutorName name of the shared bootstrap executor, <code>null</code> to bootstrap serially
      * @param registry
+     * @return the repository configuration of the unit, <code>null</code> if the unit could not be defined
      */
-    private void buildDataSourceQuietly(String unitName, Resource resource, BeanDefinitionRegistry registry) {
+    private PropertiesRepositoryConfigurationSource buildDataSourceQuietly(String unitName, Resource resource,
+                                                                          String bootstrapExecutorName,
+                                                                          BeanDefinitionRegistry registry) {
         logger.debug("Registering bean definitions for classpath resource '{}'.", resource.getFilename());
 
         try {
+            BootstrapReport.Timer timer = bootstrapReport.start(unitName, BootstrapReport.PROPERTIES);
             Map<String, String> properties = loadProperties(resource);
+            timer.stop();
 
             logger.info("Configuring persistence unit '{}' with properties: {}.",
                     unitName, maskedProperties(properties));
 
-            String dataSourceName = unitName + "DataSource";
-            registerDataSourceDefinitions(dataSourceName, properties, registry);
+            timer = bootstrapReport.start(unitName, BootstrapReport.DEFINITIONS);
+
+            // every bean defined for a lazy unit is lazy, bar the exporters publishing its MBeans
+            boolean lazy = isLazy(properties);
+            Set<String> existingBeanNames = null;
+            if (lazy) {
+                existingBeanNames = new HashSet<>(Arrays.asList(registry.getBeanDefinitionNames()));
+            }
+
+            String poolDataSourceName = unitName + "DataSource";
+            String primaryPoolName = registerDataSourceDefinitions(poolDataSourceName, unitName, properties,
+                    registry);
+
+            // instrumented connections are used by everything built on the unit's DataSource
+            String dataSourceName = poolDataSourceName;
+            String sqlStatisticsName = null;
+            if (booleanProperty(properties, SQL_STATISTICS_ENABLED, SQL_STATISTICS_ENABLED_DEFAULT)) {
+                sqlStatisticsName = unitName + "SqlStatistics";
+                dataSourceName = unitName + "SqlStatisticsDataSource";
+                registerSqlStatisticsDefinitions(sqlStatisticsName, dataSourceName, poolDataSourceName, unitName,
+                        properties, registry);
+            }
 
             PropertiesRepositoryConfigurationSource source =
                     new PropertiesRepositoryConfigurationSource(properties, environment, resourceLoader, registry);
 
+            String unitBootstrapExecutorName = null;
+            if (bootstrapExecutorName != null) {
+                unitBootstrapExecutorName = unitName + "BootstrapExecutor";
+                registerUnitBootstrapExecutorDefinitions(unitBootstrapExecutorName, unitName, bootstrapExecutorName,
+                        registry);
+            }
+
+            if (properties.containsKey(BULK_BATCH_SIZE)) {
+                applyBatchProperties(unitName, properties);
+            }
+
+            boolean cacheEnabled = booleanProperty(properties, CACHE_ENABLED, CACHE_ENABLED_DEFAULT);
+            if (cacheEnabled) {
+                applyCacheProperties(unitName, properties);
+            }
+
+            Map<String, String> jpaPropertyBeanNames = null;
+            if (properties.containsKey(TENANCY_MODE)) {
+                jpaPropertyBeanNames = registerTenancyDefinitions(unitName, dataSourceName, properties, registry);
+            }
+
+            String metadataCacheName = null;
+            if (booleanProperty(properties, METADATA_CACHE_ENABLED, METADATA_CACHE_ENABLED_DEFAULT)) {
+                metadataCacheName = unitName + "MetadataCache";
+                registerMetadataCacheDefinitions(metadataCacheName, unitName, source, registry);
+            }
+
             String entityManagerFactoryName = unitName + "EntityManagerFactory";
-            registerEntityManagerFactoryDefinitions(entityManagerFactoryName, dataSourceName, unitName, source, registry);
+            registerEntityManagerFactoryDefinitions(entityManagerFactoryName, dataSourceName, unitName,
+                    unitBootstrapExecutorName, metadataCacheName, jpaPropertyBeanNames, lazy, source, registry);
+            registry.registerBeanDefinition(unitName + "JpaMappingContext", BeanDefinitionBuilder
+                    .rootBeanDefinition(PersistenceUnitMappingContextFactoryBean.class)
+                    .addPropertyReference("entityManagerFactory", entityManagerFactoryName)
+                    .getBeanDefinition());
+
+            if (cacheEnabled) {
+                registerCacheStatisticsDefinitions(unitName + "OrmCacheStatistics", unitName,
+                        entityManagerFactoryName, registry);
+            }
+
+            String metricsName = null;
+            if (isMetricsEnabled(properties)) {
+                metricsName = unitName + "OrmMetrics";
+                registerMetricsDefinitions(metricsName, unitName, primaryPoolName, registry);
+            }
 
             String transactionManagerName = unitName + "TransactionManager";
-            registerTransactionManagerDefinitions(transactionManagerName, entityManagerFactoryName, registry);
+            registerTransactionManagerDefinitions(transactionManagerName, entityManagerFactoryName, metricsName,
+                    registry);
+
+            String transactionExecutorName = unitName + "TransactionExecutor";
+            registerTransactionExecutorDefinitions(transactionExecutorName, unitName, properties, registry);
 
-            registerOrmRegistrationDefinitions(unitName + "OrmRegistration", dataSourceName, entityManagerFactoryName,
-                    transactionManagerName, source, registry);
+            registerOrmRegistrationDefinitions(unitName + "OrmRegistration", unitName, dataSourceName,
+                    entityManagerFactoryName, transactionManagerName, metricsName, transactionExecutorName,
+                    sqlStatisticsName, source, registry);
+
+            if (existingBeanNames != null) {
+                markLazy(existingBeanNames, registry);
+            }
 
             // export entity manager factory and transaction manager in repository configuration
             properties.put("entityManagerFactoryRef", entityManagerFactoryName);
             properties.put("transactionManagerRef", transactionManagerName);
-            registerRepositoryDefinitions(source, registry);
-        } catch (IOException e) {
+            timer.stop();
+            return source;
+        } catch (IOException | IllegalArgumentException e) {
             // log the error and return without throwing exception to continue processing other data source properties
             logger.error("Failed building data source from classpath resource '" + resource.getFilename() + "'.", e);
+            return null;
         }
     }
 
-    private String unitNameFromFilename(String filename) {
+    static String unitNameFromFilename(String filename) {
         return filename.substring(0, filename.length() - FILENAME_SUFFIX.length()).toLowerCase();
     }
 
-    private Map<String, String> loadProperties(Resource resource) throws IOException {
+    static Map<String, String> loadProperties(Resource resource) throws IOException {
         Map<String, String> propertiesMap = new HashMap<>();
         Properties props = new Properties();
 
-        props.load(resource.getInputStream());
+        try (InputStream in = resource.getInputStream()) {
+            props.load(in);
+        }
         for (String o : props.stringPropertyNames()) {
             propertiesMap.put(o, props.getProperty(o));
         }
@@ -120,100 +458,859 @@ public class DynamicRepositoryBeanDefinitionRegistrarSupport
 
     private Map<String, String> maskedProperties(Map<String, String> properties) {
         Map<String, String> maskedProperties = new HashMap<>(properties);
-        if (maskedProperties.remove(USERNAME) != null) {
-            maskedProperties.put(USERNAME, "********");
-        }
-        if (maskedProperties.remove(PASSWORD) != null) {
-            maskedProperties.put(PASSWORD, "********");
+        for (Map.Entry<String, String> o : maskedProperties.entrySet()) {
+            // covers replica credentials as well as the primary's
+            if (o.getKey().endsWith(".username") || o.getKey().endsWith(".password")) {
+                o.setValue("********");
+            }
         }
         return maskedProperties;
     }
 
 
     /**
-     * Builds a Spring bean definition for a <code>DataSource</code> driven by properties.
+     * Builds a Spring bean definition for a pooled <code>DataSource</code> driven by properties, c3p0 unless
+     * <code>datasource.pool.type</code> selects HikariCP. When read replicas are configured the DataSource instead
+     * routes read-only transactions across replica pools and everything else to a primary pool.
      *
      * @param beanName
+     * @param unitName
      * @param properties
      * @param registry
+     * @return name of the primary pool
+     */
+    private String registerDataSourceDefinitions(String beanName, String unitName, Map<String, String> properties,
+                                                 BeanDefinitionRegistry registry) {
+        PooledDataSourceDefinitionBuilder builder = new PooledDataSourceDefinitionBuilder(unitName, properties);
+        boolean adaptive = booleanProperty(properties, POOL_ADAPTIVE, POOL_ADAPTIVE_DEFAULT);
+        if (adaptive && !PooledDataSourceDefinitionBuilder.HIKARI.equals(builder.getPoolType())) {
+            // c3p0 applies a new size only by soft-resetting the pool, closing its connections
+            if (properties.containsKey(POOL_ADAPTIVE)) {
+                throw new IllegalArgumentException("Invalid " + POOL_ADAPTIVE + " in persistence unit '" + unitName
+                        + "', adaptive pools require " + POOL_TYPE + "=" + PooledDataSourceDefinitionBuilder.HIKARI
+                        + ".");
+            }
+            logger.info("Not resizing the {} pools of persistence unit '{}', adaptive pools require {}.",
+                    builder.getPoolType(), unitName, PooledDataSourceDefinitionBuilder.HIKARI);
+            adaptive = false;
+        }
+        String connectionBudgetName = adaptive ? registerConnectionBudgetDefinitions(registry) : null;
+        List<String> replicaNames = replicaNames(properties);
+        int shardCount = shardCount(unitName, properties);
+        if (shardCount > 0) {
+            if (!replicaNames.isEmpty()) {
+                throw new IllegalArgumentException("Read replicas are not supported by sharded persistence unit '"
+                        + unitName + "'.");
+            }
+            return registerShardedDataSourceDefinitions(beanName, unitName, builder, shardCount, properties, adaptive,
+                    connectionBudgetName, registry);
+        }
+        if (replicaNames.isEmpty()) {
+            logger.debug("Defining {}{} DataSource '{}' with pool size {}..{}.", adaptive ? "adaptive " : "",
+                    builder.getPoolType(), beanName, builder.getMinSize(), builder.getMaxSize());
+
+            registry.registerBeanDefinition(beanName, buildPool(builder, beanName, properties.get(URL),
+                    properties.get(USERNAME), properties.get(PASSWORD), adaptive, connectionBudgetName));
+            registerPoolWarmerDefinitions(unitName, builder, Collections.singletonList(beanName), registry);
+            return beanName;
+        }
+
+        String primaryName = unitName + "PrimaryDataSource";
+        logger.debug("Defining {}{} DataSource '{}' with pool size {}..{} and read replicas {}.",
+                adaptive ? "adaptive " : "", builder.getPoolType(), beanName, builder.getMinSize(),
+                builder.getMaxSize(), replicaNames);
+
+        registry.registerBeanDefinition(primaryName, buildPool(builder, primaryName, properties.get(URL),
+                properties.get(USERNAME), properties.get(PASSWORD), adaptive, connectionBudgetName));
+
+        List<String> poolNames = new ArrayList<>();
+        poolNames.add(primaryName);
+        ManagedMap<Object, Object> targetDataSources = new ManagedMap<>();
+        targetDataSources.put(ReadWriteRoutingDataSource.PRIMARY_KEY, new RuntimeBeanReference(primaryName));
+        for (int i = 0; i < replicaNames.size(); i++) {
+            String prefix = REPLICA_PREFIX + replicaNames.get(i) + ".";
+            String replicaName = unitName + "ReplicaDataSource" + i;
+            registry.registerBeanDefinition(replicaName, buildPool(builder, replicaName,
+                    properties.get(prefix + "url"),
+                    properties.getOrDefault(prefix + "username", properties.get(USERNAME)),
+                    properties.getOrDefault(prefix + "password", properties.get(PASSWORD)), adaptive,
+                    connectionBudgetName));
+            targetDataSources.put(ReadWriteRoutingDataSource.REPLICA_KEY_PREFIX + i,
+                    new RuntimeBeanReference(replicaName));
+            poolNames.add(replicaName);
+        }
+        registerPoolWarmerDefinitions(unitName, builder, poolNames, registry);
+
+        String routingName = unitName + "RoutingDataSource";
+        registry.registerBeanDefinition(routingName, BeanDefinitionBuilder
+                .rootBeanDefinition(ReadWriteRoutingDataSource.class)
+                .addConstructorArgValue(replicaNames.size())
+                .addPropertyValue("targetDataSources", targetDataSources)
+                .addPropertyReference("defaultTargetDataSource", primaryName)
+                .getBeanDefinition());
+
+        // routing is decided when the first statement runs, by which time the transaction's read-only flag is set
+        registry.registerBeanDefinition(beanName, BeanDefinitionBuilder
+                .rootBeanDefinition(LazyConnectionDataSourceProxy.class)
+                .addPropertyReference("targetDataSource", routingName)
+                .getBeanDefinition());
+        return primaryName;
+    }
+
+    private static AbstractBeanDefinition buildPool(PooledDataSourceDefinitionBuilder builder, String poolName,
+                                                    String url, String username, String password, boolean adaptive,
+                                                    String connectionBudgetName) {
+        return adaptive ? builder.buildAdaptive(poolName, url, username, password, connectionBudgetName)
+                : builder.build(poolName, url, username, password);
+    }
+
+    /**
+     * Defines the warm-up of a unit's pools when <code>datasource.pool.warmup</code> is set. The warmer is marked lazy
+     * along with the rest of a lazy unit, so it only runs for units started with the context.
+     *
+     * @param unitName
+     * @param builder
+     * @param poolNames
+     * @param registry
+     */
+    private void registerPoolWarmerDefinitions(String unitName, PooledDataSourceDefinitionBuilder builder,
+                                               List<String> poolNames, BeanDefinitionRegistry registry) {
+        int connections = builder.getWarmupConnections();
+        if (connections == 0) {
+            return;
+        }
+        logger.debug("Defining warm-up of {} connections for pools {}.", connections, poolNames);
+
+        registry.registerBeanDefinition(unitName + "ConnectionPoolWarmer", BeanDefinitionBuilder
+                .rootBeanDefinition(ConnectionPoolWarmer.class)
+                .setRole(BeanDefinition.ROLE_INFRASTRUCTURE)
+                .addConstructorArgValue(unitName)
+                .addConstructorArgValue(poolNames)
+                .addConstructorArgValue(connections)
+                .addConstructorArgValue(builder.getValidationQuery())
+                .getBeanDefinition());
+    }
+
+    /**
+     * Defines the connection budget shared by the adaptive pools of all units, once.
+     *
+     * @param registry
+     * @return name of the budget, <code>null</code> when no budget is configured
+     */
+    private String registerConnectionBudgetDefinitions(BeanDefinitionRegistry registry) {
+        int maxConnectionsPerUrl = environment.getProperty(POOL_BUDGET, Integer.class, 0);
+        if (maxConnectionsPerUrl == 0) {
+            return null;
+        }
+        if (!registry.containsBeanDefinition(CONNECTION_BUDGET_BEAN_NAME)) {
+            logger.debug("Defining connection budget '{}' of {} connections per database.",
+                    CONNECTION_BUDGET_BEAN_NAME, maxConnectionsPerUrl);
+
+            registry.registerBeanDefinition(CONNECTION_BUDGET_BEAN_NAME, BeanDefinitionBuilder
+                    .rootBeanDefinition(ConnectionBudget.class)
+                    .addConstructorArgValue(maxConnectionsPerUrl)
+                    .getBeanDefinition());
+        }
+        return CONNECTION_BUDGET_BEAN_NAME;
+    }
+
+    /**
+     * Builds a pool per shard and a DataSource routing each connection to the shard selected by the repository call
+     * taking it, along with the {@link ShardRouter} mapping keys to shards.
+     *
+     * @return name of the pool of shard 0
+     */
+    private String registerShardedDataSourceDefinitions(String beanName, String unitName,
+                                                        PooledDataSourceDefinitionBuilder builder, int shardCount,
+                                                        Map<String, String> properties, boolean adaptive,
+                                                        String connectionBudgetName,
+                                                        BeanDefinitionRegistry registry) {
+        logger.debug("Defining {}{} DataSource '{}' with pool size {}..{} across {} shards.",
+                adaptive ? "adaptive " : "", builder.getPoolType(), beanName, builder.getMinSize(),
+                builder.getMaxSize(), shardCount);
+
+        List<String> poolNames = new ArrayList<>();
+        ManagedMap<Object, Object> targetDataSources = new ManagedMap<>();
+        for (int i = 0; i < shardCount; i++) {
+            String prefix = SHARD_PREFIX + i + ".";
+            String shardName = unitName + "ShardDataSource" + i;
+            registry.registerBeanDefinition(shardName, buildPool(builder, shardName, properties.get(prefix + "url"),
+                    properties.getOrDefault(prefix + "username", properties.get(USERNAME)),
+                    properties.getOrDefault(prefix + "password", properties.get(PASSWORD)), adaptive,
+                    connectionBudgetName));
+            targetDataSources.put(i, new RuntimeBeanReference(shardName));
+            poolNames.add(shardName);
+        }
+        registerPoolWarmerDefinitions(unitName, builder, poolNames, registry);
+
+        String routingName = unitName + "ShardRoutingDataSource";
+        registry.registerBeanDefinition(routingName, BeanDefinitionBuilder
+                .rootBeanDefinition(ShardRoutingDataSource.class)
+                .addConstructorArgValue(unitName)
+                .addConstructorArgValue(shardCount)
+                .addPropertyValue("targetDataSources", targetDataSources)
+                .addPropertyReference("defaultTargetDataSource", unitName + "ShardDataSource0")
+                .getBeanDefinition());
+
+        // the shard is selected when the first statement runs, by which time the repository call has set it
+        registry.registerBeanDefinition(beanName, BeanDefinitionBuilder
+                .rootBeanDefinition(LazyConnectionDataSourceProxy.class)
+                .addPropertyReference("targetDataSource", routingName)
+                .getBeanDefinition());
+
+        registry.registerBeanDefinition(unitName + "ShardRouter", BeanDefinitionBuilder
+                .rootBeanDefinition(ShardRouter.class)
+                .addConstructorArgValue(unitName)
+                .addConstructorArgReference(routingName)
+                .getBeanDefinition());
+        return unitName + "ShardDataSource0";
+    }
+
+    /**
+     * @return number of shards configured through <code>datasource.shard.&lt;n&gt;.url</code>, 0 if not sharded
+     */
+    private static int shardCount(String unitName, Map<String, String> properties) {
+        Set<String> names = new TreeSet<>();
+        for (String o : properties.keySet()) {
+            if (o.startsWith(SHARD_PREFIX) && o.endsWith(".url")) {
+                names.add(o.substring(SHARD_PREFIX.length(), o.length() - ".url".length()));
+            }
+        }
+        for (int i = 0; i < names.size(); i++) {
+            if (!names.contains(String.valueOf(i))) {
+                throw new IllegalArgumentException("Invalid shards " + names + " in persistence unit '" + unitName
+                        + "', expected " + SHARD_PREFIX + "0.url to " + SHARD_PREFIX + (names.size() - 1) + ".url.");
+            }
+        }
+        return names.size();
+    }
+
+    /**
+     * @return names of the replicas configured through <code>datasource.replica.&lt;name&gt;.url</code>, sorted
+     */
+    private static List<String> replicaNames(Map<String, String> properties) {
+        Set<String> names = new TreeSet<>();
+        for (String o : properties.keySet()) {
+            if (o.startsWith(REPLICA_PREFIX) && o.endsWith(".url")) {
+                String name = o.substring(REPLICA_PREFIX.length(), o.length() - ".url".length());
+                if (!name.isEmpty()) {
+                    names.add(name);
+                }
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
+
+    /**
+     * Builds the executor shared by all persistence units when bootstrapping in parallel. Threads are daemons and
+     * time out once the units are built, so an unclosed context does not keep the JVM alive.
+     *
+     * @param beanName
+     * @param unitCount
+     * @param registry
+     */
+    private void registerBootstrapExecutorDefinitions(String beanName, int unitCount, BeanDefinitionRegistry registry) {
+        int threads = environment.getProperty(BOOTSTRAP_THREADS, Integer.class,
+                Math.min(unitCount, Runtime.getRuntime().availableProcessors()));
+        threads = Math.max(1, threads);
+
+        logger.debug("Defining bootstrap executor '{}' with {} threads for {} persistence units.", beanName, threads,
+                unitCount);
+
+        registry.registerBeanDefinition(beanName, BeanDefinitionBuilder
+                .rootBeanDefinition(ThreadPoolTaskExecutor.class)
+                .addPropertyValue("corePoolSize", threads)
+                .addPropertyValue("maxPoolSize", threads)
+                .addPropertyValue("allowCoreThreadTimeOut", true)
+                .addPropertyValue("keepAliveSeconds", 10)
+                .addPropertyValue("daemon", true)
+                .addPropertyValue("threadNamePrefix", "orm-bootstrap-")
+                .getBeanDefinition());
+    }
+
+    /**
+     * Registers the report being recorded as a bean, along with the post-processor timing the creation of each unit's
+     * DataSource and EntityManagerFactory.
+     *
+     * @param unitNames
+     * @param registry
      */
-    private void registerDataSourceDefinitions(String beanName, Map<String, String> properties,
-                                               BeanDefinitionRegistry registry) {
-        logger.debug("Defining DataSource '{}'.", beanName);
+    private void registerBootstrapReportDefinitions(Collection<String> unitNames, BeanDefinitionRegistry registry) {
+        BootstrapReport report = bootstrapReport;
+        registry.registerBeanDefinition(BOOTSTRAP_REPORT_BEAN_NAME, BeanDefinitionBuilder
+                .genericBeanDefinition(BootstrapReport.class, () -> report)
+                .getBeanDefinition());
+
+        Map<String, String> unitByBeanName = new HashMap<>();
+        Map<String, String> phaseByBeanName = new HashMap<>();
+        for (String o : unitNames) {
+            unitByBeanName.put(o + "DataSource", o);
+            phaseByBeanName.put(o + "DataSource", BootstrapReport.DATA_SOURCE);
+            unitByBeanName.put(o + "EntityManagerFactory", o);
+            phaseByBeanName.put(o + "EntityManagerFactory", BootstrapReport.ENTITY_MANAGER_FACTORY);
+        }
+        registry.registerBeanDefinition(BOOTSTRAP_TIMING_POST_PROCESSOR_BEAN_NAME, BeanDefinitionBuilder
+                .rootBeanDefinition(BootstrapTimingPostProcessor.class)
+                .setRole(BeanDefinition.ROLE_INFRASTRUCTURE)
+                .addConstructorArgReference(BOOTSTRAP_REPORT_BEAN_NAME)
+                .addConstructorArgValue(unitByBeanName)
+                .addConstructorArgValue(phaseByBeanName)
+                .getBeanDefinition());
+    }
 
+    private void registerUnitBootstrapExecutorDefinitions(String beanName, String unitName,
+                                                          String bootstrapExecutorName,
+                                                          BeanDefinitionRegistry registry) {
         registry.registerBeanDefinition(beanName, BeanDefinitionBuilder
-                .rootBeanDefinition(com.mchange.v2.c3p0.ComboPooledDataSource.class.getName())
-                .addPropertyValue("driverClass", properties.get(DRIVER_CLASS_NAME))
-                .addPropertyValue("jdbcUrl", properties.get(URL))
-                .addPropertyValue("user", properties.get(USERNAME))
-                .addPropertyValue("password", properties.get(PASSWORD))
-                .addPropertyValue("minPoolSize", "0")
-                .addPropertyValue("maxPoolSize", "20")
+                .rootBeanDefinition(PersistenceUnitBootstrapExecutor.class)
+                .addConstructorArgValue(unitName)
+                .addConstructorArgReference(bootstrapExecutorName)
+                .addPropertyReference("bootstrapReport", BOOTSTRAP_REPORT_BEAN_NAME)
                 .getBeanDefinition());
     }
 
 
     private void registerEntityManagerFactoryDefinitions(String entityManagerFactoryName, String dataSourceName,
-                                                         String persistenceUnitName,
+                                                         String persistenceUnitName, String bootstrapExecutorName,
+                                                         String metadataCacheName,
+                                                         Map<String, String> jpaPropertyBeanNames, boolean lazy,
                                                          PropertiesRepositoryConfigurationSource source,
                                                          BeanDefinitionRegistry registry) {
-        logger.debug("Defining EntityManagerFactory '{}' for DataSource '{}'.", entityManagerFactoryName,
-                dataSourceName);
+        logger.debug("Defining {}EntityManagerFactory '{}' for DataSource '{}'.", lazy ? "lazy " : "",
+                entityManagerFactoryName, dataSourceName);
 
         registry.registerBeanDefinition(entityManagerFactoryName + "VendorAdapter", BeanDefinitionBuilder
                 .rootBeanDefinition(HibernateJpaVendorAdapter.class.getName())
                 .getBeanDefinition());
 
-        registry.registerBeanDefinition(entityManagerFactoryName, BeanDefinitionBuilder
+        // the metadata cache supplies the managed classes, an empty scan still building the default unit
+        String[] packagesToScan = metadataCacheName != null ? new String[0]
+                : source.getBasePackages().stream().toArray(String[]::new);
+        if (lazy) {
+            BeanDefinitionBuilder builder = BeanDefinitionBuilder
+                    .rootBeanDefinition(LazyEntityManagerFactoryBean.class)
+                    .addPropertyValue("jpaVendorAdapterBeanName", entityManagerFactoryName + "VendorAdapter")
+                    .addPropertyValue("dataSourceBeanName", dataSourceName)
+                    .addPropertyValue("persistenceUnitName", persistenceUnitName)
+                    .addPropertyValue("packagesToScan", packagesToScan)
+                    .addPropertyValue("jpaPropertyMap", source.getProperties());
+            if (bootstrapExecutorName != null) {
+                builder.addPropertyValue("bootstrapExecutorBeanName", bootstrapExecutorName);
+            }
+            if (metadataCacheName != null) {
+                builder.addPropertyValue("persistenceUnitPostProcessorBeanName", metadataCacheName);
+            }
+            if (jpaPropertyBeanNames != null) {
+                builder.addPropertyValue("jpaPropertyBeanNames", jpaPropertyBeanNames);
+            }
+            registry.registerBeanDefinition(entityManagerFactoryName, builder.getBeanDefinition());
+            return;
+        }
+
+        BeanDefinitionBuilder builder = BeanDefinitionBuilder
                 .rootBeanDefinition(LocalContainerEntityManagerFactoryBean.class.getName())
                 .addPropertyReference("jpaVendorAdapter", entityManagerFactoryName + "VendorAdapter")
                 .addPropertyReference("dataSource", dataSourceName)
                 .addPropertyValue("persistenceUnitName", persistenceUnitName)
-                .addPropertyValue("packagesToScan", source.getBasePackages())
-                .addPropertyValue("jpaProperties", source.getProperties())
+                .addPropertyValue("packagesToScan", packagesToScan)
+                .addPropertyValue("jpaProperties", source.getProperties());
+        if (bootstrapExecutorName != null) {
+            builder.addPropertyReference("bootstrapExecutor", bootstrapExecutorName);
+        }
+        if (metadataCacheName != null) {
+            builder.addPropertyReference("persistenceUnitPostProcessors", metadataCacheName);
+        }
+        if (jpaPropertyBeanNames != null) {
+            ManagedMap<Object, Object> jpaPropertyMap = new ManagedMap<>();
+            for (Map.Entry<String, String> o : jpaPropertyBeanNames.entrySet()) {
+                jpaPropertyMap.put(o.getKey(), new RuntimeBeanReference(o.getValue()));
+            }
+            builder.addPropertyValue("jpaPropertyMap", jpaPropertyMap);
+        }
+        registry.registerBeanDefinition(entityManagerFactoryName, builder.getBeanDefinition());
+    }
+
+    /**
+     * Defines the connection provider and tenant resolver of a multi-tenant unit and enables Hibernate's
+     * multi-tenancy.
+     *
+     * @param unitName
+     * @param dataSourceName
+     * @param properties
+     * @param registry
+     * @return names of the beans to give the EntityManagerFactory, keyed by Hibernate setting
+     */
+    private Map<String, String> registerTenancyDefinitions(String unitName, String dataSourceName,
+                                                           Map<String, String> properties,
+                                                           BeanDefinitionRegistry registry) {
+        String mode = properties.get(TENANCY_MODE).trim();
+        if (!"schema".equalsIgnoreCase(mode)) {
+            throw new IllegalArgumentException("Invalid " + TENANCY_MODE + " '" + mode + "' in persistence unit '"
+                    + unitName + "'.");
+        }
+
+        Set<String> tenantIds = new LinkedHashSet<>();
+        for (String o : properties.getOrDefault(TENANCY_TENANTS, "").split(",")) {
+            if (!o.trim().isEmpty()) {
+                tenantIds.add(o.trim());
+            }
+        }
+        String defaultTenantId = trimToNull(properties.get(TENANCY_DEFAULT_TENANT));
+
+        logger.debug("Enabling schema-per-tenant multi-tenancy for persistence unit '{}' with tenants {}.", unitName,
+                tenantIds.isEmpty() ? "unrestricted" : tenantIds);
+
+        properties.put(AvailableSettings.MULTI_TENANT, MultiTenancyStrategy.SCHEMA.name());
+
+        String connectionProviderName = unitName + "TenantConnectionProvider";
+        registry.registerBeanDefinition(connectionProviderName, BeanDefinitionBuilder
+                .rootBeanDefinition(SchemaMultiTenantConnectionProvider.class)
+                .addConstructorArgValue(unitName)
+                .addConstructorArgReference(dataSourceName)
+                .addConstructorArgValue(trimToNull(properties.get(TENANCY_DEFAULT_SCHEMA)))
+                .addConstructorArgValue(trimToNull(properties.get(TENANCY_SCHEMA_STATEMENT)))
+                .addConstructorArgValue(tenantIds)
+                .getBeanDefinition());
+
+        String tenantResolverName = unitName + "TenantIdentifierResolver";
+        registry.registerBeanDefinition(tenantResolverName, BeanDefinitionBuilder
+                .rootBeanDefinition(TenantIdentifierResolver.class)
+                .addConstructorArgValue(unitName)
+                .addConstructorArgValue(defaultTenantId)
+                .getBeanDefinition());
+
+        Map<String, String> beanNames = new LinkedHashMap<>();
+        beanNames.put(AvailableSettings.MULTI_TENANT_CONNECTION_PROVIDER, connectionProviderName);
+        beanNames.put(AvailableSettings.MULTI_TENANT_IDENTIFIER_RESOLVER, tenantResolverName);
+        return beanNames;
+    }
+
+    private static String trimToNull(String str) {
+        return str == null || str.trim().isEmpty() ? null : str.trim();
+    }
+
+    private void registerMetadataCacheDefinitions(String beanName, String unitName,
+                                                  PropertiesRepositoryConfigurationSource source,
+                                                  BeanDefinitionRegistry registry) {
+        String directory = environment.getProperty(METADATA_CACHE_DIR,
+                Paths.get(System.getProperty("java.io.tmpdir"), "orm-metadata").toString());
+
+        logger.debug("Defining metadata cache '{}' of persistence unit '{}' in '{}'.", beanName, unitName, directory);
+
+        registry.registerBeanDefinition(beanName, BeanDefinitionBuilder
+                .rootBeanDefinition(PersistenceUnitMetadataCache.class)
+                .addConstructorArgValue(unitName)
+                .addConstructorArgValue(source.getBasePackages().stream().toArray(String[]::new))
+                .addConstructorArgValue(source.getProperties())
+                .addConstructorArgValue(directory)
+                .getBeanDefinition());
+    }
+
+
+    /**
+     * Builds the statement statistics of a unit, exported to the platform MBeanServer as
+     * <code>org.agilemicroservices.orm:type=SqlStatistics,unit=&lt;unit&gt;</code>, and the DataSource recording them.
+     *
+     * @param beanName
+     * @param dataSourceName       name of the instrumented DataSource
+     * @param targetDataSourceName
+     * @param unitName
+     * @param properties
+     * @param registry
+     */
+    private void registerSqlStatisticsDefinitions(String beanName, String dataSourceName, String targetDataSourceName,
+                                                  String unitName, Map<String, String> properties,
+                                                  BeanDefinitionRegistry registry) {
+        int repeatThreshold = intProperty(unitName, properties, SQL_STATISTICS_REPEAT_THRESHOLD,
+                DEFAULT_SQL_REPEAT_THRESHOLD);
+        int slowThreshold = intProperty(unitName, properties, SQL_STATISTICS_SLOW_THRESHOLD,
+                DEFAULT_SQL_SLOW_THRESHOLD);
+
+        logger.debug("Defining SqlStatistics '{}' for DataSource '{}' with repeat threshold {} and slow threshold {} "
+                + "ms.", beanName, targetDataSourceName, repeatThreshold, slowThreshold);
+
+        registry.registerBeanDefinition(beanName, BeanDefinitionBuilder
+                .rootBeanDefinition(SqlStatistics.class)
+                .addConstructorArgValue(unitName)
+                .addConstructorArgValue(repeatThreshold)
+                .addConstructorArgValue(slowThreshold)
+                .getBeanDefinition());
+        registry.registerBeanDefinition(dataSourceName, BeanDefinitionBuilder
+                .rootBeanDefinition(SqlStatisticsDataSource.class)
+                .addConstructorArgReference(targetDataSourceName)
+                .addConstructorArgReference(beanName)
+                .getBeanDefinition());
+
+        registerExporterDefinitions(beanName, SqlStatistics.OBJECT_NAME_PREFIX + unitName, registry);
+    }
+
+    private static int intProperty(String unitName, Map<String, String> properties, String name, int defaultValue) {
+        String value = properties.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + " '" + value + "' in persistence unit '"
+                    + unitName + "'.", e);
+        }
+    }
+
+    private boolean isMetricsEnabled(Map<String, String> properties) {
+        return booleanProperty(properties, METRICS_ENABLED, METRICS_ENABLED_DEFAULT);
+    }
+
+    private boolean isLazy(Map<String, String> properties) {
+        return booleanProperty(properties, BOOTSTRAP_LAZY, BOOTSTRAP_LAZY_DEFAULT);
+    }
+
+    /**
+     * @return the unit's setting, or the environment's default when the unit does not set it
+     */
+    private boolean booleanProperty(Map<String, String> properties, String name, String defaultName) {
+        return booleanProperty(properties, name, defaultName, false);
+    }
+
+    private boolean booleanProperty(Map<String, String> properties, String name, String defaultName,
+                                    boolean defaultValue) {
+        String value = properties.get(name);
+        return value != null ? Boolean.parseBoolean(value.trim())
+                : environment.getProperty(defaultName, Boolean.class, defaultValue);
+    }
+
+    /**
+     * Builds the metrics of a unit and exports them to the platform MBeanServer as
+     * <code>org.agilemicroservices.orm:type=OrmMetrics,unit=&lt;unit&gt;</code>.
+     *
+     * @param metricsName
+     * @param unitName
+     * @param dataSourceName
+     * @param registry
+     */
+    private void registerMetricsDefinitions(String metricsName, String unitName, String dataSourceName,
+                                            BeanDefinitionRegistry registry) {
+        logger.debug("Defining OrmMetrics '{}' for DataSource '{}'.", metricsName, dataSourceName);
+
+        registry.registerBeanDefinition(metricsName, BeanDefinitionBuilder
+                .rootBeanDefinition(OrmMetrics.class)
+                .addConstructorArgValue(unitName)
+                .addConstructorArgReference(dataSourceName)
+                .getBeanDefinition());
+
+        registerExporterDefinitions(metricsName, OrmMetrics.OBJECT_NAME_PREFIX + unitName, registry);
+    }
+
+    /**
+     * Exports a bean to the platform MBeanServer. The bean is referenced by name so that the exporter resolves it
+     * only once the context is refreshed.
+     *
+     * @param beanName
+     * @param objectName
+     * @param registry
+     */
+    private void registerExporterDefinitions(String beanName, String objectName, BeanDefinitionRegistry registry) {
+        registry.registerBeanDefinition(beanName + "Exporter", BeanDefinitionBuilder
+                .rootBeanDefinition(MBeanExporter.class)
+                .addPropertyValue("beans", Collections.singletonMap(objectName, beanName))
+                .addPropertyValue("registrationPolicy", RegistrationPolicy.REPLACE_EXISTING)
                 .getBeanDefinition());
     }
 
 
+    /**
+     * Enables JDBC batching for a unit, ordering inserts and updates by entity so that consecutive statements share
+     * a batch. Hibernate settings given explicitly in the unit take precedence.
+     *
+     * @param unitName
+     * @param properties
+     */
+    private void applyBatchProperties(String unitName, Map<String, String> properties) {
+        String batchSize = properties.get(BULK_BATCH_SIZE).trim();
+        if (!batchSize.matches("[1-9][0-9]*")) {
+            throw new IllegalArgumentException("Invalid " + BULK_BATCH_SIZE + " '" + batchSize
+                    + "' in persistence unit '" + unitName + "'.");
+        }
+        logger.debug("Enabling JDBC batches of {} for persistence unit '{}'.", batchSize, unitName);
+
+        properties.putIfAbsent("hibernate.jdbc.batch_size", batchSize);
+        properties.putIfAbsent("hibernate.jdbc.batch_versioned_data", "true");
+        properties.putIfAbsent("hibernate.order_inserts", "true");
+        properties.putIfAbsent("hibernate.order_updates", "true");
+    }
+
+    /**
+     * Translates the <code>cache.*</code> properties of a unit into Hibernate settings. Hibernate settings given
+     * explicitly in the unit take precedence.
+     *
+     * @param unitName
+     * @param properties
+     */
+    private void applyCacheProperties(String unitName, Map<String, String> properties) {
+        boolean queryCacheEnabled = booleanProperty(properties, CACHE_QUERY_ENABLED, CACHE_QUERY_ENABLED_DEFAULT);
+        logger.debug("Enabling second-level cache{} for persistence unit '{}'.",
+                queryCacheEnabled ? " and query cache" : "", unitName);
+
+        properties.putIfAbsent("hibernate.cache.use_second_level_cache", "true");
+        properties.putIfAbsent("hibernate.cache.use_query_cache", String.valueOf(queryCacheEnabled));
+        properties.putIfAbsent("hibernate.cache.region.factory_class", OrmCacheRegionFactory.class.getName());
+        properties.putIfAbsent("hibernate.generate_statistics", "true");
+        properties.putIfAbsent("javax.persistence.sharedCache.mode",
+                properties.getOrDefault(CACHE_MODE, "ENABLE_SELECTIVE").trim());
+        properties.put(OrmCacheRegionFactory.CACHE_MANAGER_NAME, unitName);
+    }
+
+    private void registerCacheStatisticsDefinitions(String beanName, String unitName, String entityManagerFactoryName,
+                                                    BeanDefinitionRegistry registry) {
+        logger.debug("Defining OrmCacheStatistics '{}' for EntityManagerFactory '{}'.", beanName,
+                entityManagerFactoryName);
+
+        registry.registerBeanDefinition(beanName, BeanDefinitionBuilder
+                .rootBeanDefinition(OrmCacheStatistics.class)
+                .addConstructorArgValue(unitName)
+                .addConstructorArgReference(entityManagerFactoryName)
+                .getBeanDefinition());
+        registerExporterDefinitions(beanName, OrmCacheStatistics.OBJECT_NAME_PREFIX + unitName, registry);
+    }
+
+    private void registerRepositoryMetricsDefinitions(String beanName, String metricsName,
+                                                      List<BeanComponentDefinition> repositories,
+                                                      BeanDefinitionRegistry registry) {
+        Set<String> repositoryNames = new HashSet<>();
+        for (BeanComponentDefinition o : repositories) {
+            repositoryNames.add(o.getBeanName());
+        }
+
+        registry.registerBeanDefinition(beanName, BeanDefinitionBuilder
+                .rootBeanDefinition(RepositoryMetricsPostProcessor.class)
+                .setRole(BeanDefinition.ROLE_INFRASTRUCTURE)
+                .addConstructorArgValue(metricsName)
+                .addConstructorArgValue(repositoryNames)
+                .getBeanDefinition());
+    }
+
+
+    private void registerShardingDefinitions(String beanName, String unitName,
+                                             List<BeanComponentDefinition> repositories,
+                                             BeanDefinitionRegistry registry) {
+        Set<String> repositoryNames = new HashSet<>();
+        for (BeanComponentDefinition o : repositories) {
+            repositoryNames.add(o.getBeanName());
+        }
+
+        logger.debug("Defining shard routing '{}' of {} repositories in persistence unit '{}'.", beanName,
+                repositoryNames.size(), unitName);
+
+        registry.registerBeanDefinition(beanName, BeanDefinitionBuilder
+                .rootBeanDefinition(ShardingRepositoryPostProcessor.class)
+                .setRole(BeanDefinition.ROLE_INFRASTRUCTURE)
+                .addConstructorArgValue(unitName)
+                .addConstructorArgValue(unitName + "ShardRouter")
+                .addConstructorArgValue(unitName + "EntityManagerFactory")
+                .addConstructorArgValue(repositoryNames)
+                .getBeanDefinition());
+    }
+
+
+    /**
+     * Defines the result cache of a unit, exported as
+     * <code>org.agilemicroservices.orm:type=RepositoryResultCache,unit=&lt;unit&gt;</code>, and the post-processor
+     * advising the unit's repositories with cached methods. The post-processor is registered after the sharding and
+     * metrics post-processors, so its advice is outermost.
+     *
+     * @param beanName
+     * @param unitName
+     * @param properties
+     * @param repositories
+     * @param registry
+     */
+    private void registerResultCacheDefinitions(String beanName, String unitName, Map<String, String> properties,
+                                                List<BeanComponentDefinition> repositories,
+                                                BeanDefinitionRegistry registry) {
+        Set<String> repositoryNames = new HashSet<>();
+        for (BeanComponentDefinition o : repositories) {
+            repositoryNames.add(o.getBeanName());
+        }
+        Set<String> methods = new HashSet<>();
+        for (String o : properties.getOrDefault(REPOSITORY_CACHE_METHODS, "").split(",")) {
+            if (!o.trim().isEmpty()) {
+                methods.add(o.trim());
+            }
+        }
+        int maxEntries = intProperty(unitName, properties, REPOSITORY_CACHE_MAX_ENTRIES,
+                DEFAULT_REPOSITORY_CACHE_MAX_ENTRIES);
+        int ttlSeconds = intProperty(unitName, properties, REPOSITORY_CACHE_TTL_SECONDS,
+                DEFAULT_REPOSITORY_CACHE_TTL_SECONDS);
+        if (maxEntries < 0 || ttlSeconds < 0) {
+            throw new IllegalArgumentException("Invalid repository cache limits in persistence unit '" + unitName
+                    + "'.");
+        }
+
+        registry.registerBeanDefinition(beanName, BeanDefinitionBuilder
+                .rootBeanDefinition(RepositoryResultCache.class)
+                .addConstructorArgValue(unitName)
+                .addConstructorArgValue(maxEntries)
+                .addConstructorArgValue(ttlSeconds)
+                .addConstructorArgValue(methods)
+                .getBeanDefinition());
+        registry.registerBeanDefinition(beanName + "PostProcessor", BeanDefinitionBuilder
+                .rootBeanDefinition(RepositoryResultCachePostProcessor.class)
+                .setRole(BeanDefinition.ROLE_INFRASTRUCTURE)
+                .addConstructorArgValue(beanName)
+                .addConstructorArgValue(unitName + "EntityManagerFactory")
+                .addConstructorArgValue(repositoryNames)
+                .getBeanDefinition());
+
+        registerExporterDefinitions(beanName, RepositoryResultCache.OBJECT_NAME_PREFIX + unitName, registry);
+    }
+
+
     private void registerTransactionManagerDefinitions(String transactionManagerName, String entityManagerFactoryName,
-                                                       BeanDefinitionRegistry registry) {
+                                                       String metricsName, BeanDefinitionRegistry registry) {
         logger.debug("Defining PlatformTransactionManager '{}' for EntityManagerFactory '{}'.",
                 transactionManagerName, entityManagerFactoryName);
 
-        registry.registerBeanDefinition(transactionManagerName, BeanDefinitionBuilder
-                .rootBeanDefinition(JpaTransactionManager.class.getName())
+        BeanDefinitionBuilder builder;
+        if (metricsName != null) {
+            builder = BeanDefinitionBuilder
+                    .rootBeanDefinition(MeteredJpaTransactionManager.class)
+                    .addPropertyReference("metrics", metricsName);
+        } else {
+            builder = BeanDefinitionBuilder.rootBeanDefinition(JpaTransactionManager.class.getName());
+        }
+        registry.registerBeanDefinition(transactionManagerName, builder
                 .addPropertyReference("entityManagerFactory", entityManagerFactoryName)
                 .getBeanDefinition());
     }
 
 
-    private void registerOrmRegistrationDefinitions(String ormRegistrationName, String dataSourceName,
+    /**
+     * Builds the executor of the unit's asynchronous transactions, limited to as many concurrent transactions as the
+     * unit's pool has connections.
+     *
+     * @param beanName
+     * @param unitName
+     * @param properties
+     * @param registry
+     */
+    private void registerTransactionExecutorDefinitions(String beanName, String unitName,
+                                                        Map<String, String> properties,
+                                                        BeanDefinitionRegistry registry) {
+        int concurrency = new PooledDataSourceDefinitionBuilder(unitName, properties).getMaxSize();
+        boolean useVirtualThreads = booleanProperty(properties, ASYNC_VIRTUAL_THREADS, ASYNC_VIRTUAL_THREADS_DEFAULT);
+
+        logger.debug("Defining TransactionExecutor '{}' with concurrency {}{}.", beanName, concurrency,
+                useVirtualThreads ? " on virtual threads" : "");
+
+        registry.registerBeanDefinition(beanName, BeanDefinitionBuilder
+                .rootBeanDefinition(TransactionExecutor.class)
+                .addConstructorArgValue(unitName)
+                .addConstructorArgValue(concurrency)
+                .addConstructorArgValue(useVirtualThreads)
+                .getBeanDefinition());
+    }
+
+    private void registerOrmRegistrationDefinitions(String ormRegistrationName, String unitName, String dataSourceName,
                                                     String entityManagerFactoryName, String transactionManagerName,
+                                                    String metricsName, String transactionExecutorName,
+                                                    String sqlStatisticsName,
                                                     PropertiesRepositoryConfigurationSource source,
                                                     BeanDefinitionRegistry registry) {
         logger.debug("Defining OrmRegistration '{}' with DataSource '{}', EntityManagerFactory '{}', PlatformTransactionManager '{}' and PropertiesRepositoryConfigurationSource {}.",
                 ormRegistrationName, dataSourceName, entityManagerFactoryName, transactionManagerName, source);
 
-        registry.registerBeanDefinition(ormRegistrationName, BeanDefinitionBuilder
+        // collaborators are referenced by name so that the registration does not start a lazy unit
+        BeanDefinitionBuilder builder = BeanDefinitionBuilder
                 .rootBeanDefinition(OrmRegistration.class)
-                .addPropertyReference("dataSource", dataSourceName)
-                .addPropertyReference("entityManagerFactory", entityManagerFactoryName)
-                .addPropertyReference("platformTransactionManager", transactionManagerName)
-                .addPropertyValue("source", source)
+                .addPropertyValue("unitName", unitName)
+                .addPropertyValue("dataSourceBeanName", dataSourceName)
+                .addPropertyValue("entityManagerFactoryBeanName", entityManagerFactoryName)
+                .addPropertyValue("platformTransactionManagerBeanName", transactionManagerName)
+                .addPropertyValue("transactionExecutorBeanName", transactionExecutorName)
+                .addPropertyValue("source", source);
+        if (metricsName != null) {
+            builder.addPropertyValue("metricsBeanName", metricsName);
+        }
+        if (sqlStatisticsName != null) {
+            builder.addPropertyValue("sqlStatisticsBeanName", sqlStatisticsName);
+        }
+        registry.registerBeanDefinition(ormRegistrationName, builder.getBeanDefinition());
+    }
+
+
+    /**
+     * Marks the bean definitions registered since <code>existingBeanNames</code> were taken as lazy. MBean exporters
+     * are left eager, they export lazy beans through proxies that create the bean on first access.
+     *
+     * @param existingBeanNames
+     * @param registry
+     */
+    private static void markLazy(Set<String> existingBeanNames, BeanDefinitionRegistry registry) {
+        for (String o : registry.getBeanDefinitionNames()) {
+            BeanDefinition definition = registry.getBeanDefinition(o);
+            if (!existingBeanNames.contains(o)
+                    && !MBeanExporter.class.getName().equals(definition.getBeanClassName())) {
+                definition.setLazyInit(true);
+            }
+        }
+    }
+
+    private void registerWarmerDefinitions(String beanName, String unitName,
+                                           List<BeanComponentDefinition> repositories,
+                                           BeanDefinitionRegistry registry) {
+        List<String> beanNames = new ArrayList<>();
+        beanNames.add(unitName + "TransactionManager");
+        for (BeanComponentDefinition o : repositories) {
+            beanNames.add(o.getBeanName());
+        }
+
+        logger.debug("Defining warmup '{}' of lazy persistence unit '{}'.", beanName, unitName);
+
+        registry.registerBeanDefinition(beanName, BeanDefinitionBuilder
+                .rootBeanDefinition(PersistenceUnitWarmer.class)
+                .addConstructorArgValue(unitName)
+                .addConstructorArgValue(beanNames)
                 .getBeanDefinition());
     }
 
+    private void registerQueryWarmerDefinitions(String beanName, String unitName, Map<String, String> properties,
+                                                List<BeanComponentDefinition> repositories,
+                                                BeanDefinitionRegistry registry) {
+        Map<String, String> repositoryInterfaces = new LinkedHashMap<>();
+        for (BeanComponentDefinition o : repositories) {
+            Object repositoryInterface = registry.getBeanDefinition(o.getBeanName()).getConstructorArgumentValues()
+                    .getIndexedArgumentValue(0, null).getValue();
+            repositoryInterfaces.put(o.getBeanName(), String.valueOf(repositoryInterface));
+        }
+        int concurrency = Math.min(new PooledDataSourceDefinitionBuilder(unitName, properties).getMaxSize(),
+                Runtime.getRuntime().availableProcessors());
+
+        logger.debug("Defining query warmup '{}' of {} repositories in persistence unit '{}'.", beanName,
+                repositoryInterfaces.size(), unitName);
+
+        registry.registerBeanDefinition(beanName, BeanDefinitionBuilder
+                .rootBeanDefinition(RepositoryQueryWarmer.class)
+                .addConstructorArgValue(unitName)
+                .addConstructorArgValue(unitName + "EntityManagerFactory")
+                .addConstructorArgValue(unitName + "DataSource")
+                .addConstructorArgValue(repositoryInterfaces)
+                .addConstructorArgValue(concurrency)
+                .getBeanDefinition());
+    }
 
-    private void registerRepositoryDefinitions(PropertiesRepositoryConfigurationSource configurationSource,
-                                               BeanDefinitionRegistry registry) {
+    private List<BeanComponentDefinition> registerRepositoryDefinitions(
+            PropertiesRepositoryConfigurationSource configurationSource, RepositoryBootstrapContext bootstrapContext,
+            BeanDefinitionRegistry registry) {
 
         RepositoryConfigurationExtension extension = new JpaRepositoryConfigExtension();
         RepositoryConfigurationUtils.exposeRegistration(extension, registry, configurationSource);
 
+        configurationSource.setMetadataReaderFactory(bootstrapContext.getMetadataReaderFactory());
         RepositoryConfigurationDelegate delegate = new RepositoryConfigurationDelegate(configurationSource,
-                resourceLoader, environment);
+                bootstrapContext);
 
-        delegate.registerRepositoriesIn(registry, extension);
+        return delegate.registerRepositoriesIn(registry, extension);
     }
 
 
@@ -0,0 +1,141 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanClassLoaderAware;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.support.PersistenceExceptionTranslator;
+import org.springframework.orm.jpa.JpaVendorAdapter;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.persistenceunit.PersistenceUnitPostProcessor;
+import org.springframework.orm.jpa.vendor.HibernateJpaDialect;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.util.Map;
+
+
+/**
+ * Builds the <code>EntityManagerFactory</code> of a lazy persistence unit on first use. The context creates every
+ * {@link LocalContainerEntityManagerFactoryBean} at refresh to offer it a <code>LoadTimeWeaver</code>, however lazy
+ * its definition, so for lazy units one is instead created and initialized here. Collaborators are given by bean name
+ * and resolved at that time.
+ */
+public class LazyEntityManagerFactoryBean implements FactoryBean<EntityManagerFactory>, BeanFactoryAware,
+        BeanClassLoaderAware, DisposableBean, PersistenceExceptionTranslator {
+    private final PersistenceExceptionTranslator exceptionTranslator = new HibernateJpaDialect();
+    private String persistenceUnitName;
+    private String dataSourceBeanName;
+    private String jpaVendorAdapterBeanName;
+    private String bootstrapExecutorBeanName;
+    private String persistenceUnitPostProcessorBeanName;
+    private String[] packagesToScan;
+    private Map<String, ?> jpaPropertyMap;
+    private Map<String, String> jpaPropertyBeanNames;
+    private BeanFactory beanFactory;
+    private ClassLoader beanClassLoader;
+    private LocalContainerEntityManagerFactoryBean delegate;
+
+
+    public void setPersistenceUnitName(String persistenceUnitName) {
+        this.persistenceUnitName = persistenceUnitName;
+    }
+
+    public void setDataSourceBeanName(String dataSourceBeanName) {
+        this.dataSourceBeanName = dataSourceBeanName;
+    }
+
+    public void setJpaVendorAdapterBeanName(String jpaVendorAdapterBeanName) {
+        this.jpaVendorAdapterBeanName = jpaVendorAdapterBeanName;
+    }
+
+    /**
+     * @param bootstrapExecutorBeanName executor building the unit in the background, <code>null</code> to build it in
+     *                                  the calling thread
+     */
+    public void setBootstrapExecutorBeanName(String bootstrapExecutorBeanName) {
+        this.bootstrapExecutorBeanName = bootstrapExecutorBeanName;
+    }
+
+    public void setPersistenceUnitPostProcessorBeanName(String persistenceUnitPostProcessorBeanName) {
+        this.persistenceUnitPostProcessorBeanName = persistenceUnitPostProcessorBeanName;
+    }
+
+    public void setPackagesToScan(String... packagesToScan) {
+        this.packagesToScan = packagesToScan;
+    }
+
+    public void setJpaPropertyMap(Map<String, ?> jpaPropertyMap) {
+        this.jpaPropertyMap = jpaPropertyMap;
+    }
+
+    /**
+     * @param jpaPropertyBeanNames names of the beans given as JPA properties, keyed by property
+     */
+    public void setJpaPropertyBeanNames(Map<String, String> jpaPropertyBeanNames) {
+        this.jpaPropertyBeanNames = jpaPropertyBeanNames;
+    }
+
+    @Override
+    public synchronized EntityManagerFactory getObject() {
+        if (delegate == null) {
+            LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+            factory.setPersistenceUnitName(persistenceUnitName);
+            factory.setDataSource(beanFactory.getBean(dataSourceBeanName, DataSource.class));
+            factory.setJpaVendorAdapter(beanFactory.getBean(jpaVendorAdapterBeanName, JpaVendorAdapter.class));
+            if (bootstrapExecutorBeanName != null) {
+                factory.setBootstrapExecutor(beanFactory.getBean(bootstrapExecutorBeanName, AsyncTaskExecutor.class));
+            }
+            if (persistenceUnitPostProcessorBeanName != null) {
+                factory.setPersistenceUnitPostProcessors(beanFactory.getBean(persistenceUnitPostProcessorBeanName,
+                        PersistenceUnitPostProcessor.class));
+            }
+            factory.setPackagesToScan(packagesToScan);
+            factory.setJpaPropertyMap(jpaPropertyMap);
+            if (jpaPropertyBeanNames != null) {
+                for (Map.Entry<String, String> o : jpaPropertyBeanNames.entrySet()) {
+                    factory.getJpaPropertyMap().put(o.getKey(), beanFactory.getBean(o.getValue()));
+                }
+            }
+            factory.setBeanClassLoader(beanClassLoader);
+            factory.setBeanFactory(beanFactory);
+            factory.afterPropertiesSet();
+            delegate = factory;
+        }
+        return delegate.getObject();
+    }
+
+    @Override
+    public Class<?> getObjectType() {
+        return EntityManagerFactory.class;
+    }
+
+    /**
+     * Translates exceptions as the Hibernate dialect of the built factory would, without building it.
+     */
+    @Override
+    public DataAccessException translateExceptionIfPossible(RuntimeException ex) {
+        return exceptionTranslator.translateExceptionIfPossible(ex);
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public void setBeanClassLoader(ClassLoader classLoader) {
+        this.beanClassLoader = classLoader;
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (delegate != null) {
+            delegate.destroy();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.config.ConstructorArgumentValues;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+
+import java.util.Set;
+
+
+/**
+ * Keeps Spring Data's infrastructure from starting lazy persistence units. The <code>EntityManager</code> beans
+ * Spring Data defines for each <code>EntityManagerFactory</code>, and the <code>JpaContext</code> and shared
+ * <code>jpaMappingContext</code> spanning all of them, are made lazy too.
+ * <p>
+ * The <code>EntityManager</code> beans are defined by a post-processor registered with the first unit's repositories,
+ * this one is registered after all units and so runs later.
+ */
+public class LazyPersistenceUnitPostProcessor implements BeanFactoryPostProcessor {
+    private static final String JPA_MAPPING_CONTEXT_BEAN_NAME = "jpaMappingContext";
+    private static final String JPA_CONTEXT_BEAN_NAME = "jpaContext";
+
+    private final Set<String> entityManagerFactoryNames;
+
+
+    public LazyPersistenceUnitPostProcessor(Set<String> entityManagerFactoryNames) {
+        this.entityManagerFactoryNames = entityManagerFactoryNames;
+    }
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+        for (String o : beanFactory.getBeanDefinitionNames()) {
+            BeanDefinition definition = beanFactory.getBeanDefinition(o);
+            if (o.equals(JPA_MAPPING_CONTEXT_BEAN_NAME) || o.equals(JPA_CONTEXT_BEAN_NAME)
+                    || isLazyUnitEntityManager(definition)) {
+                definition.setLazyInit(true);
+            }
+        }
+    }
+
+    private boolean isLazyUnitEntityManager(BeanDefinition definition) {
+        if (!SharedEntityManagerCreator.class.getName().equals(definition.getBeanClassName())) {
+            return false;
+        }
+        ConstructorArgumentValues.ValueHolder argument = definition.getConstructorArgumentValues()
+                .getArgumentValue(0, null);
+        return argument != null && argument.getValue() instanceof RuntimeBeanReference
+                && entityManagerFactoryNames.contains(((RuntimeBeanReference) argument.getValue()).getBeanName());
+    }
+}
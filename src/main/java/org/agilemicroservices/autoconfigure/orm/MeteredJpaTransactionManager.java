@@ -0,0 +1,69 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Records the duration and outcome of every physical transaction into {@link OrmMetrics}, whether demarcated through
+ * <code>TransactionUtil</code> or <code>@Transactional</code> repository methods. Timings are kept per transaction
+ * object, which pairs each completion with its begin across <code>REQUIRES_NEW</code> suspensions and completions on
+ * another thread, as of a timed out <code>TransactionUtil.commitAll</code>.
+ */
+public class MeteredJpaTransactionManager extends JpaTransactionManager {
+    private static final long serialVersionUID = 1L;
+
+    private final Map<Object, Timing> timings = new ConcurrentHashMap<>();
+    private OrmMetrics metrics;
+
+
+    public OrmMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(OrmMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+        long start = System.nanoTime();
+        super.doBegin(transaction, definition);
+        timings.put(transaction, new Timing(start));
+    }
+
+    @Override
+    protected void doCommit(DefaultTransactionStatus status) {
+        super.doCommit(status);
+        Timing timing = timings.get(status.getTransaction());
+        if (timing != null) {
+            timing.committed = true;
+        }
+    }
+
+    @Override
+    protected void doCleanupAfterCompletion(Object transaction) {
+        try {
+            super.doCleanupAfterCompletion(transaction);
+        } finally {
+            Timing timing = timings.remove(transaction);
+            if (timing != null) {
+                metrics.recordTransaction(System.nanoTime() - timing.start, timing.committed);
+            }
+        }
+    }
+
+
+    private static class Timing {
+        private final long start;
+        private boolean committed;
+
+        Timing(long start) {
+            this.start = start;
+        }
+    }
+}
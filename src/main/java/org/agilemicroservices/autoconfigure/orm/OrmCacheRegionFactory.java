@@ -0,0 +1,98 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import org.hibernate.boot.spi.SessionFactoryOptions;
+import org.hibernate.cache.CacheException;
+import org.hibernate.cache.ehcache.EhCacheRegionFactory;
+import org.hibernate.cache.spi.UpdateTimestampsCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.agilemicroservices.autoconfigure.orm.PropertiesRepositoryConfigurationSource.*;
+
+
+/**
+ * Second-level cache of a persistence unit, held on the heap by a cache manager private to the unit. Region limits
+ * are taken from the unit's <code>cache.*</code> properties rather than an <code>ehcache.xml</code>.
+ */
+public class OrmCacheRegionFactory extends EhCacheRegionFactory {
+    private static final long serialVersionUID = 1L;
+    private static final Logger logger = LoggerFactory.getLogger(OrmCacheRegionFactory.class);
+    /**
+     * Names the cache manager, set to the unit name when the unit's bean definitions are built.
+     */
+    public static final String CACHE_MANAGER_NAME = "cache.manager_name";
+    private static final int DEFAULT_MAX_ENTRIES = 10000;
+    private static final String MAX_ENTRIES_SUFFIX = ".max_entries";
+    private static final String TTL_SECONDS_SUFFIX = ".ttl_seconds";
+
+
+    @Override
+    public void start(SessionFactoryOptions settings, Properties properties) throws CacheException {
+        this.settings = settings;
+        if (manager != null) {
+            logger.warn("Ignoring restart of already started cache '{}'.", manager.getName());
+            return;
+        }
+
+        manager = new CacheManager(buildConfiguration(properties));
+        mbeanRegistrationHelper.registerMBean(manager, properties);
+    }
+
+    static Configuration buildConfiguration(Properties properties) {
+        String name = properties.getProperty(CACHE_MANAGER_NAME, "orm");
+        int maxEntries = intProperty(properties, CACHE_MAX_ENTRIES, DEFAULT_MAX_ENTRIES);
+        int ttlSeconds = intProperty(properties, CACHE_TTL_SECONDS, 0);
+
+        Configuration configuration = new Configuration().name(name).updateCheck(false);
+        configuration.defaultCache(regionConfiguration("default", maxEntries, ttlSeconds));
+
+        Set<String> regions = new TreeSet<>();
+        for (String o : properties.stringPropertyNames()) {
+            if (o.startsWith(CACHE_REGION_PREFIX) && o.endsWith(MAX_ENTRIES_SUFFIX)) {
+                regions.add(o.substring(CACHE_REGION_PREFIX.length(), o.length() - MAX_ENTRIES_SUFFIX.length()));
+            } else if (o.startsWith(CACHE_REGION_PREFIX) && o.endsWith(TTL_SECONDS_SUFFIX)) {
+                regions.add(o.substring(CACHE_REGION_PREFIX.length(), o.length() - TTL_SECONDS_SUFFIX.length()));
+            }
+        }
+        // query results are only valid while the timestamps of their tables are held, so by default that region
+        // neither expires nor evicts
+        if (!regions.contains(UpdateTimestampsCache.REGION_NAME)) {
+            configuration.addCache(regionConfiguration(UpdateTimestampsCache.REGION_NAME, 0, 0));
+        }
+        for (String o : regions) {
+            configuration.addCache(regionConfiguration(o,
+                    intProperty(properties, CACHE_REGION_PREFIX + o + MAX_ENTRIES_SUFFIX, maxEntries),
+                    intProperty(properties, CACHE_REGION_PREFIX + o + TTL_SECONDS_SUFFIX, ttlSeconds)));
+        }
+
+        logger.debug("Configured cache '{}' with {} entries and {} s TTL per region, overridden for regions {}.",
+                name, maxEntries, ttlSeconds, regions);
+        return configuration;
+    }
+
+    private static CacheConfiguration regionConfiguration(String name, int maxEntries, int ttlSeconds) {
+        return new CacheConfiguration(name, maxEntries)
+                .eternal(ttlSeconds == 0)
+                .timeToLiveSeconds(ttlSeconds)
+                .overflowToDisk(false);
+    }
+
+    private static int intProperty(Properties properties, String name, int defaultValue) {
+        String value = properties.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new CacheException("Invalid " + name + " '" + value + "'.", e);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.SecondLevelCacheStatistics;
+import org.hibernate.stat.Statistics;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.ToLongFunction;
+
+
+/**
+ * Reads the cache statistics of a persistence unit from its Hibernate <code>SessionFactory</code>. The factory is
+ * resolved on first read, so exporting the statistics does not wait on a unit still bootstrapping.
+ */
+public class OrmCacheStatistics implements OrmCacheStatisticsMXBean {
+    public static final String OBJECT_NAME_PREFIX = "org.agilemicroservices.orm:type=OrmCacheStatistics,unit=";
+
+    private final String unitName;
+    private final EntityManagerFactory entityManagerFactory;
+    private volatile Statistics statistics;
+
+
+    public OrmCacheStatistics(String unitName, EntityManagerFactory entityManagerFactory) {
+        this.unitName = unitName;
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @Override
+    public String getUnitName() {
+        return unitName;
+    }
+
+    @Override
+    public long getSecondLevelCacheHitCount() {
+        return statistics().getSecondLevelCacheHitCount();
+    }
+
+    @Override
+    public long getSecondLevelCacheMissCount() {
+        return statistics().getSecondLevelCacheMissCount();
+    }
+
+    @Override
+    public long getSecondLevelCachePutCount() {
+        return statistics().getSecondLevelCachePutCount();
+    }
+
+    @Override
+    public long getQueryCacheHitCount() {
+        return statistics().getQueryCacheHitCount();
+    }
+
+    @Override
+    public long getQueryCacheMissCount() {
+        return statistics().getQueryCacheMissCount();
+    }
+
+    @Override
+    public long getQueryCachePutCount() {
+        return statistics().getQueryCachePutCount();
+    }
+
+    @Override
+    public Map<String, Long> getRegionHitCounts() {
+        return regionCounts(SecondLevelCacheStatistics::getHitCount);
+    }
+
+    @Override
+    public Map<String, Long> getRegionMissCounts() {
+        return regionCounts(SecondLevelCacheStatistics::getMissCount);
+    }
+
+    @Override
+    public Map<String, Long> getRegionElementCounts() {
+        return regionCounts(SecondLevelCacheStatistics::getElementCountInMemory);
+    }
+
+    @Override
+    public void clear() {
+        statistics().clear();
+    }
+
+
+    private Map<String, Long> regionCounts(ToLongFunction<SecondLevelCacheStatistics> count) {
+        Map<String, Long> result = new TreeMap<>();
+        Statistics statistics = statistics();
+        for (String o : statistics.getSecondLevelCacheRegionNames()) {
+            SecondLevelCacheStatistics regionStatistics = statistics.getSecondLevelCacheStatistics(o);
+            if (regionStatistics != null) {
+                result.put(o, count.applyAsLong(regionStatistics));
+            }
+        }
+        return result;
+    }
+
+    private Statistics statistics() {
+        Statistics result = statistics;
+        if (result == null) {
+            result = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+            statistics = result;
+        }
+        return result;
+    }
+}
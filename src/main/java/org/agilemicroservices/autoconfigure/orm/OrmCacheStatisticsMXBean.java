@@ -0,0 +1,32 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import java.util.Map;
+
+
+/**
+ * JMX view of the second-level and query cache statistics of a persistence unit.
+ */
+public interface OrmCacheStatisticsMXBean {
+
+    String getUnitName();
+
+    long getSecondLevelCacheHitCount();
+
+    long getSecondLevelCacheMissCount();
+
+    long getSecondLevelCachePutCount();
+
+    long getQueryCacheHitCount();
+
+    long getQueryCacheMissCount();
+
+    long getQueryCachePutCount();
+
+    Map<String, Long> getRegionHitCounts();
+
+    Map<String, Long> getRegionMissCounts();
+
+    Map<String, Long> getRegionElementCounts();
+
+    void clear();
+}
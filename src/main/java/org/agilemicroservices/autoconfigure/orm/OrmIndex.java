@@ -0,0 +1,108 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.ResourcePatternResolver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
+
+
+/**
+ * Build-time index of the persistence units on the classpath and the repository interfaces found in each unit's base
+ * packages, stored in <code>META-INF/orm.index</code> by {@link OrmIndexGenerator}. When present it replaces the
+ * classpath scan for the repository interfaces of its units, while units missing from it are still found by scanning
+ * for <code>*.orm.properties</code> files. Entries from every index on the classpath are merged, the first entry for a
+ * unit winning.
+ */
+public class OrmIndex {
+    public static final String LOCATION = "META-INF/orm.index";
+    private static final String UNIT_PREFIX = "unit.";
+    private static final String REPOSITORIES_PREFIX = "repositories.";
+
+    private final Map<String, String> unitLocations = new TreeMap<>();
+    private final Map<String, List<String>> repositoryInterfaces = new HashMap<>();
+
+
+    /**
+     * Loads and merges all indexes on the classpath.
+     *
+     * @param resolver
+     * @return the merged index, <code>null</code> if the classpath contains no index
+     * @throws IOException
+     */
+    public static OrmIndex load(ResourcePatternResolver resolver) throws IOException {
+        Resource[] resources = resolver.getResources(ResourcePatternResolver.CLASSPATH_ALL_URL_PREFIX + LOCATION);
+        if (resources.length == 0) {
+            return null;
+        }
+
+        OrmIndex index = new OrmIndex();
+        for (Resource o : resources) {
+            Properties props = new Properties();
+            try (InputStream in = o.getInputStream()) {
+                props.load(in);
+            }
+            for (String name : props.stringPropertyNames()) {
+                if (name.startsWith(UNIT_PREFIX)) {
+                    String unitName = name.substring(UNIT_PREFIX.length());
+                    if (!index.unitLocations.containsKey(unitName)) {
+                        index.addUnit(unitName, props.getProperty(name),
+                                split(props.getProperty(REPOSITORIES_PREFIX + unitName)));
+                    }
+                }
+            }
+        }
+        return index;
+    }
+
+    private static List<String> split(String str) {
+        List<String> values = new ArrayList<>();
+        if (str != null) {
+            for (String o : str.split(",")) {
+                String value = o.trim();
+                if (!value.isEmpty()) {
+                    values.add(value);
+                }
+            }
+        }
+        return values;
+    }
+
+
+    public void addUnit(String unitName, String location, List<String> repositoryInterfaces) {
+        unitLocations.put(unitName, location);
+        this.repositoryInterfaces.put(unitName, new ArrayList<>(repositoryInterfaces));
+    }
+
+    public boolean isEmpty() {
+        return unitLocations.isEmpty();
+    }
+
+    public Set<String> getUnitNames() {
+        return Collections.unmodifiableSet(unitLocations.keySet());
+    }
+
+    /**
+     * @param unitName
+     * @return the classpath location of the unit's properties file
+     */
+    public String getLocation(String unitName) {
+        return unitLocations.get(unitName);
+    }
+
+    public List<String> getRepositoryInterfaces(String unitName) {
+        List<String> interfaces = repositoryInterfaces.get(unitName);
+        return interfaces == null ? Collections.emptyList() : Collections.unmodifiableList(interfaces);
+    }
+
+    public void store(OutputStream out) throws IOException {
+        Properties props = new Properties();
+        for (Map.Entry<String, String> o : unitLocations.entrySet()) {
+            props.setProperty(UNIT_PREFIX + o.getKey(), o.getValue());
+            props.setProperty(REPOSITORIES_PREFIX + o.getKey(), String.join(",", repositoryInterfaces.get(o.getKey())));
+        }
+        props.store(out, "Generated by " + OrmIndexGenerator.class.getSimpleName() + ", do not edit.");
+    }
+}
@@ -0,0 +1,112 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.support.SimpleBeanDefinitionRegistry;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.*;
+
+import static org.agilemicroservices.autoconfigure.orm.DynamicRepositoryBeanDefinitionRegistrarSupport.*;
+
+
+/**
+ * Writes the {@link OrmIndex} for the current classpath, invoked by the <code>ormIndex</code> Gradle task with the
+ * index file as its only argument. Units and repositories are discovered with the same scans the registrar performs
+ * at runtime. No file is written when the classpath contains no persistence units.
+ */
+public class OrmIndexGenerator {
+    private static final Logger logger = LoggerFactory.getLogger(OrmIndexGenerator.class);
+
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Usage: OrmIndexGenerator <index file>");
+        }
+
+        File file = new File(args[0]);
+        OrmIndex index = generate(new DefaultResourceLoader());
+        if (index.isEmpty()) {
+            logger.info("No persistence units found, skipping {}.", file);
+            if (file.exists() && !file.delete()) {
+                throw new IOException("Failed deleting stale index " + file + ".");
+            }
+            return;
+        }
+
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Failed creating directory " + parent + ".");
+        }
+        try (OutputStream out = new FileOutputStream(file)) {
+            index.store(out);
+        }
+        logger.info("Indexed persistence units {} in {}.", index.getUnitNames(), file);
+    }
+
+    public static OrmIndex generate(ResourceLoader resourceLoader) throws IOException {
+        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver(resourceLoader);
+        List<File> classpathRoots = classpathRoots();
+
+        OrmIndex index = new OrmIndex();
+        for (Resource o : resolver.getResources(DEFAULT_SCAN_LOCATION)) {
+            String unitName = unitNameFromFilename(o.getFilename());
+            if (index.getUnitNames().contains(unitName)) {
+                continue;
+            }
+
+            PropertiesRepositoryConfigurationSource source = new PropertiesRepositoryConfigurationSource(
+                    loadProperties(o), new StandardEnvironment(), resourceLoader, new SimpleBeanDefinitionRegistry());
+            List<String> repositoryInterfaces = new ArrayList<>();
+            for (BeanDefinition candidate : source.getCandidates(resourceLoader)) {
+                repositoryInterfaces.add(candidate.getBeanClassName());
+            }
+            Collections.sort(repositoryInterfaces);
+
+            index.addUnit(unitName, classpathLocation(o, classpathRoots), repositoryInterfaces);
+        }
+        return index;
+    }
+
+    private static List<File> classpathRoots() {
+        List<File> roots = new ArrayList<>();
+        for (String o : System.getProperty("java.class.path", "").split(File.pathSeparator)) {
+            File root = new File(o);
+            if (root.isDirectory()) {
+                roots.add(root.getAbsoluteFile());
+            }
+        }
+        return roots;
+    }
+
+    /**
+     * Resolves the location of a resource relative to the classpath entry containing it.
+     */
+    private static String classpathLocation(Resource resource, List<File> classpathRoots) throws IOException {
+        URL url = resource.getURL();
+        String str = url.toString();
+        int separator = str.indexOf("!/");
+        if (separator >= 0) {
+            return str.substring(separator + 2);
+        }
+
+        String path = resource.getFile().getAbsolutePath();
+        for (File o : classpathRoots) {
+            String root = o.getPath() + File.separator;
+            if (path.startsWith(root)) {
+                return path.substring(root.length()).replace(File.separatorChar, '/');
+            }
+        }
+        throw new IOException("Resource " + url + " is not within a classpath entry.");
+    }
+}
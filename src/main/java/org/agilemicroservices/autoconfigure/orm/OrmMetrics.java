@@ -0,0 +1,170 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import com.mchange.v2.c3p0.ComboPooledDataSource;
+import com.mchange.v2.c3p0.PooledDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Runtime metrics of a persistence unit: connection pool occupancy, read from the pool on demand, and transaction and
+ * repository method timings, recorded by {@link MeteredJpaTransactionManager} and
+ * {@link RepositoryMetricsPostProcessor}.
+ */
+public class OrmMetrics implements OrmMetricsMXBean {
+    private static final Logger logger = LoggerFactory.getLogger(OrmMetrics.class);
+    public static final String OBJECT_NAME_PREFIX = "org.agilemicroservices.orm:type=OrmMetrics,unit=";
+
+    private final String unitName;
+    private final DataSource dataSource;
+    private final LongAdder commitCount = new LongAdder();
+    private final LongAdder rollbackCount = new LongAdder();
+    private final ConcurrentMap<String, LatencyHistogram> methodLatencies = new ConcurrentHashMap<>();
+    private volatile LatencyHistogram transactionDuration = new LatencyHistogram();
+
+
+    public OrmMetrics(String unitName, DataSource dataSource) {
+        this.unitName = unitName;
+        this.dataSource = unwrap(dataSource);
+    }
+
+    public void recordTransaction(long nanos, boolean committed) {
+        transactionDuration.record(nanos);
+        if (committed) {
+            commitCount.increment();
+        } else {
+            rollbackCount.increment();
+        }
+    }
+
+    /**
+     * @param method <code>Repository.method(ParameterType, ...)</code>
+     * @param nanos
+     */
+    public void recordRepositoryCall(String method, long nanos) {
+        LatencyHistogram histogram = methodLatencies.get(method);
+        if (histogram == null) {
+            histogram = methodLatencies.computeIfAbsent(method, o -> new LatencyHistogram());
+        }
+        histogram.record(nanos);
+    }
+
+
+    @Override
+    public String getUnitName() {
+        return unitName;
+    }
+
+    @Override
+    public int getActiveConnections() {
+        if (dataSource instanceof HikariDataSource) {
+            HikariPoolMXBean pool = ((HikariDataSource) dataSource).getHikariPoolMXBean();
+            return pool != null ? pool.getActiveConnections() : 0;
+        }
+        if (dataSource instanceof PooledDataSource) {
+            try {
+                return ((PooledDataSource) dataSource).getNumBusyConnectionsDefaultUser();
+            } catch (SQLException e) {
+                logger.debug("Failed reading busy connections of persistence unit '{}'.", unitName, e);
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int getIdleConnections() {
+        if (dataSource instanceof HikariDataSource) {
+            HikariPoolMXBean pool = ((HikariDataSource) dataSource).getHikariPoolMXBean();
+            return pool != null ? pool.getIdleConnections() : 0;
+        }
+        if (dataSource instanceof PooledDataSource) {
+            try {
+                return ((PooledDataSource) dataSource).getNumIdleConnectionsDefaultUser();
+            } catch (SQLException e) {
+                logger.debug("Failed reading idle connections of persistence unit '{}'.", unitName, e);
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int getWaitingConnections() {
+        if (dataSource instanceof HikariDataSource) {
+            HikariPoolMXBean pool = ((HikariDataSource) dataSource).getHikariPoolMXBean();
+            return pool != null ? pool.getThreadsAwaitingConnection() : 0;
+        }
+        if (dataSource instanceof PooledDataSource) {
+            try {
+                return ((PooledDataSource) dataSource).getNumThreadsAwaitingCheckoutDefaultUser();
+            } catch (SQLException e) {
+                logger.debug("Failed reading waiting threads of persistence unit '{}'.", unitName, e);
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int getMaxConnections() {
+        if (dataSource instanceof HikariDataSource) {
+            return ((HikariDataSource) dataSource).getHikariConfigMXBean().getMaximumPoolSize();
+        }
+        if (dataSource instanceof ComboPooledDataSource) {
+            return ((ComboPooledDataSource) dataSource).getMaxPoolSize();
+        }
+        return -1;
+    }
+
+    @Override
+    public long getCommitCount() {
+        return commitCount.sum();
+    }
+
+    @Override
+    public long getRollbackCount() {
+        return rollbackCount.sum();
+    }
+
+    @Override
+    public LatencySnapshot getTransactionDuration() {
+        return transactionDuration.snapshot();
+    }
+
+    @Override
+    public Map<String, LatencySnapshot> getRepositoryMethodLatency() {
+        Map<String, LatencySnapshot> result = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> o : methodLatencies.entrySet()) {
+            result.put(o.getKey(), o.getValue().snapshot());
+        }
+        return result;
+    }
+
+    /**
+     * Discards the recorded timings and counts. Calls in flight may be recorded against either side of the reset.
+     */
+    @Override
+    public void reset() {
+        transactionDuration = new LatencyHistogram();
+        commitCount.reset();
+        rollbackCount.reset();
+        methodLatencies.clear();
+    }
+
+
+    private static DataSource unwrap(DataSource dataSource) {
+        while (dataSource instanceof DelegatingDataSource) {
+            dataSource = ((DelegatingDataSource) dataSource).getTargetDataSource();
+        }
+        return dataSource;
+    }
+}
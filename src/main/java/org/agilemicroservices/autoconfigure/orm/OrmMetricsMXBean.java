@@ -0,0 +1,37 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import java.util.Map;
+
+
+/**
+ * JMX view of the runtime metrics of a persistence unit. Connection counts are -1 when the pool implementation does
+ * not report them.
+ */
+public interface OrmMetricsMXBean {
+
+    String getUnitName();
+
+    int getActiveConnections();
+
+    int getIdleConnections();
+
+    int getWaitingConnections();
+
+    /**
+     * @return current maximum size of the pool, which changes over time when the pool is adaptive
+     */
+    int getMaxConnections();
+
+    long getCommitCount();
+
+    long getRollbackCount();
+
+    LatencySnapshot getTransactionDuration();
+
+    /**
+     * @return latency keyed by <code>Repository.method(ParameterType, ...)</code>
+     */
+    Map<String, LatencySnapshot> getRepositoryMethodLatency();
+
+    void reset();
+}
@@ -1,5 +1,8 @@
 package org.agilemicroservices.autoconfigure.orm;
 
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import javax.persistence.EntityManagerFactory;
@@ -9,38 +12,87 @@ import javax.sql.DataSource;
 /**
  * Defines an instance of the ORM framework including the cooperating data source, JPA entity manager factory and
  * transaction manager.
+ * <p>
+ * Collaborators given by bean name are resolved on first access, so that looking up the registration of a lazy unit
+ * does not start the unit.
  */
-public class OrmRegistration {
-    private DataSource dataSource;
-    private EntityManagerFactory entityManagerFactory;
-    private PlatformTransactionManager platformTransactionManager;
+public class OrmRegistration implements BeanFactoryAware {
+    private BeanFactory beanFactory;
+    private String unitName;
+    private String dataSourceBeanName;
+    private String entityManagerFactoryBeanName;
+    private String platformTransactionManagerBeanName;
+    private String metricsBeanName;
+    private String transactionExecutorBeanName;
+    private String sqlStatisticsBeanName;
+    private volatile DataSource dataSource;
+    private volatile EntityManagerFactory entityManagerFactory;
+    private volatile PlatformTransactionManager platformTransactionManager;
     private PropertiesRepositoryConfigurationSource source;
+    private volatile OrmMetrics metrics;
+    private volatile TransactionExecutor transactionExecutor;
+    private volatile SqlStatistics sqlStatistics;
 
 
+    public String getUnitName() {
+        return unitName;
+    }
+
+    public void setUnitName(String unitName) {
+        this.unitName = unitName;
+    }
+
     public DataSource getDataSource() {
-        return dataSource;
+        DataSource result = dataSource;
+        if (result == null && dataSourceBeanName != null) {
+            result = beanFactory.getBean(dataSourceBeanName, DataSource.class);
+            dataSource = result;
+        }
+        return result;
     }
 
     public void setDataSource(DataSource dataSource) {
         this.dataSource = dataSource;
     }
 
+    public void setDataSourceBeanName(String dataSourceBeanName) {
+        this.dataSourceBeanName = dataSourceBeanName;
+    }
+
     public EntityManagerFactory getEntityManagerFactory() {
-        return entityManagerFactory;
+        EntityManagerFactory result = entityManagerFactory;
+        if (result == null && entityManagerFactoryBeanName != null) {
+            result = beanFactory.getBean(entityManagerFactoryBeanName, EntityManagerFactory.class);
+            entityManagerFactory = result;
+        }
+        return result;
     }
 
     public void setEntityManagerFactory(EntityManagerFactory entityManagerFactory) {
         this.entityManagerFactory = entityManagerFactory;
     }
 
+    public void setEntityManagerFactoryBeanName(String entityManagerFactoryBeanName) {
+        this.entityManagerFactoryBeanName = entityManagerFactoryBeanName;
+    }
+
     public PlatformTransactionManager getPlatformTransactionManager() {
-        return platformTransactionManager;
+        PlatformTransactionManager result = platformTransactionManager;
+        if (result == null && platformTransactionManagerBeanName != null) {
+            result = beanFactory.getBean(platformTransactionManagerBeanName, PlatformTransactionManager.class);
+            platformTransactionManager = result;
+        }
+        return result;
     }
 
     public void setPlatformTransactionManager(PlatformTransactionManager platformTransactionManager) {
         this.platformTransactionManager = platformTransactionManager;
     }
 
+    public void setPlatformTransactionManagerBeanName(String platformTransactionManagerBeanName) {
+        this.platformTransactionManagerBeanName = platformTransactionManagerBeanName;
+    }
+
     public PropertiesRepositoryConfigurationSource getSource() {
         return source;
     }
@@ -48,4 +100,67 @@ public class OrmRegistration {
     public void setSource(PropertiesRepositoryConfigurationSource source) {
         this.source = source;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return the unit's metrics, <code>null</code> unless enabled through <code>metrics.enabled</code>
+     */
+    public OrmMetrics getMetrics() {
+        OrmMetrics result = metrics;
+        if (result == null && metricsBeanName != null) {
+            result = beanFactory.getBean(metricsBeanName, OrmMetrics.class);
+            metrics = result;
+        }
+        return result;
+    }
+
+    public void setMetrics(OrmMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void setMetricsBeanName(String metricsBeanName) {
+        this.metricsBeanName = metricsBeanName;
+    }
+
+    public TransactionExecutor getTransactionExecutor() {
+        TransactionExecutor result = transactionExecutor;
+        if (result == null && transactionExecutorBeanName != null) {
+            result = beanFactory.getBean(transactionExecutorBeanName, TransactionExecutor.class);
+            transactionExecutor = result;
+        }
+        return result;
+    }
+
+    public void setTransactionExecutor(TransactionExecutor transactionExecutor) {
+        this.transactionExecutor = transactionExecutor;
+    }
+
+    public void setTransactionExecutorBeanName(String transactionExecutorBeanName) {
+        this.transactionExecutorBeanName = transactionExecutorBeanName;
+    }
+
+    /**
+     * @return the unit's statement statistics, <code>null</code> unless enabled through
+     * <code>sql.statistics.enabled</code>
+     */
+    public SqlStatistics getSqlStatistics() {
+        SqlStatistics result = sqlStatistics;
+        if (result == null && sqlStatisticsBeanName != null) {
+            result = beanFactory.getBean(sqlStatisticsBeanName, SqlStatistics.class);
+            sqlStatistics = result;
+        }
+        return result;
+    }
+
+    public void setSqlStatistics(SqlStatistics sqlStatistics) {
+        this.sqlStatistics = sqlStatistics;
+    }
+
+    public void setSqlStatisticsBeanName(String sqlStatisticsBeanName) {
+        this.sqlStatisticsBeanName = sqlStatisticsBeanName;
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        this.beanFactory = beanFactory;
+    }
+}
@@ -0,0 +1,71 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.AsyncTaskExecutor;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+
+/**
+ * Submits the <code>EntityManagerFactory</code> build of a single persistence unit to the executor shared by all
+ * units, reporting the outcome against the unit's name.
+ */
+public class PersistenceUnitBootstrapExecutor implements AsyncTaskExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(PersistenceUnitBootstrapExecutor.class);
+
+    private final String unitName;
+    private final AsyncTaskExecutor delegate;
+    private BootstrapReport bootstrapReport;
+
+
+    public PersistenceUnitBootstrapExecutor(String unitName, AsyncTaskExecutor delegate) {
+        this.unitName = unitName;
+        this.delegate = delegate;
+    }
+
+    /**
+     * @param bootstrapReport report recording the build of the unit, <code>null</code> for none
+     */
+    public void setBootstrapReport(BootstrapReport bootstrapReport) {
+        this.bootstrapReport = bootstrapReport;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        delegate.execute(task);
+    }
+
+    @Override
+    public void execute(Runnable task, long startTimeout) {
+        delegate.execute(task, startTimeout);
+    }
+
+    @Override
+    public Future<?> submit(Runnable task) {
+        return delegate.submit(task);
+    }
+
+    @Override
+    public <T> Future<T> submit(Callable<T> task) {
+        return delegate.submit(() -> {
+            long start = System.currentTimeMillis();
+            BootstrapReport.Timer timer = bootstrapReport != null
+                    ? bootstrapReport.start(unitName, BootstrapReport.ENTITY_MANAGER_FACTORY_BUILD) : null;
+            try {
+                T result = task.call();
+                if (timer != null) {
+                    timer.stop();
+                }
+                logger.debug("Bootstrapped persistence unit '{}' in {} ms.", unitName,
+                        System.currentTimeMillis() - start);
+                return result;
+            } catch (Exception | Error e) {
+                // log against the unit, the exception itself is rethrown to whichever bean first awaits the unit
+                logger.error("Failed bootstrapping persistence unit '" + unitName + "'.", e);
+                throw e;
+            }
+        });
+    }
+}
@@ -0,0 +1,35 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.springframework.beans.factory.config.AbstractFactoryBean;
+import org.springframework.data.jpa.mapping.JpaMetamodelMappingContext;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Collections;
+
+
+/**
+ * Builds the mapping context of a single persistence unit's repositories. Spring Data's shared
+ * <code>jpaMappingContext</code> collects the metamodels of every <code>EntityManagerFactory</code> in the context,
+ * which would start all units as soon as any repository is created.
+ */
+public class PersistenceUnitMappingContextFactoryBean extends AbstractFactoryBean<JpaMetamodelMappingContext> {
+    private EntityManagerFactory entityManagerFactory;
+
+
+    public void setEntityManagerFactory(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @Override
+    public Class<?> getObjectType() {
+        return JpaMetamodelMappingContext.class;
+    }
+
+    @Override
+    protected JpaMetamodelMappingContext createInstance() {
+        JpaMetamodelMappingContext context = new JpaMetamodelMappingContext(
+                Collections.singleton(entityManagerFactory.getMetamodel()));
+        context.initialize();
+        return context;
+    }
+}
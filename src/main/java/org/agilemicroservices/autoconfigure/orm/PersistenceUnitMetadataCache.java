@@ -0,0 +1,261 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ResourceLoaderAware;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.core.type.classreading.CachingMetadataReaderFactory;
+import org.springframework.core.type.classreading.MetadataReader;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.core.type.filter.TypeFilter;
+import org.springframework.orm.jpa.persistenceunit.MutablePersistenceUnitInfo;
+import org.springframework.orm.jpa.persistenceunit.PersistenceUnitPostProcessor;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ResourceUtils;
+
+import javax.persistence.Converter;
+import javax.persistence.Embeddable;
+import javax.persistence.Entity;
+import javax.persistence.MappedSuperclass;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.net.URL;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+
+/**
+ * Supplies the managed classes of a persistence unit from an on-disk cache in place of the entity scan of its base
+ * packages. The cache is keyed by a fingerprint of the unit's properties and of the classpath roots holding the base
+ * packages: the size and modification time of a jar, or the names, sizes and modification times of the files below
+ * the packages in a directory, so a single stat per jar replaces listing and parsing its class files. A cache whose
+ * fingerprint does not match is rebuilt by scanning as Spring would.
+ * <p>
+ * Only the scan is saved. Hibernate still builds the unit's metadata from the cached classes, which dominates its
+ * startup, so the gain is limited to tens of milliseconds per unit.
+ * <p>
+ * Failures reading or writing the cache are logged and fall back to scanning.
+ */
+public class PersistenceUnitMetadataCache implements PersistenceUnitPostProcessor, ResourceLoaderAware {
+    private static final Logger logger = LoggerFactory.getLogger(PersistenceUnitMetadataCache.class);
+    private static final String CLASS_PATTERN = "/**/*.class";
+    private static final String PACKAGE_INFO_SUFFIX = ".package-info";
+    private static final String FINGERPRINT = "fingerprint";
+    private static final String CLASSES = "classes";
+    private static final String PACKAGES = "packages";
+    private static final TypeFilter[] ENTITY_TYPE_FILTERS = {
+            new AnnotationTypeFilter(Entity.class, false),
+            new AnnotationTypeFilter(Embeddable.class, false),
+            new AnnotationTypeFilter(MappedSuperclass.class, false),
+            new AnnotationTypeFilter(Converter.class, false)};
+
+    private final String unitName;
+    private final String[] basePackages;
+    private final Map<String, String> properties;
+    private final Path file;
+    private ResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+
+
+    /**
+     * @param unitName
+     * @param basePackages packages scanned for entities
+     * @param properties   properties of the unit, part of the fingerprint
+     * @param directory    directory holding the cache files of all units
+     */
+    public PersistenceUnitMetadataCache(String unitName, String[] basePackages, Map<String, String> properties,
+                                        String directory) {
+        this.unitName = unitName;
+        this.basePackages = basePackages;
+        this.properties = properties;
+        this.file = Paths.get(directory, unitName + ".metadata");
+    }
+
+    @Override
+    public void postProcessPersistenceUnitInfo(MutablePersistenceUnitInfo pui) {
+        long start = System.currentTimeMillis();
+        try {
+            String fingerprint = fingerprint();
+            Properties cached = load();
+            if (cached != null && fingerprint.equals(cached.getProperty(FINGERPRINT))) {
+                apply(pui, split(cached.getProperty(CLASSES)), split(cached.getProperty(PACKAGES)));
+                logger.info("Reused cached metadata of persistence unit '{}' in {} ms.", unitName,
+                        System.currentTimeMillis() - start);
+                return;
+            }
+
+            List<String> classes = new ArrayList<>();
+            List<String> packages = new ArrayList<>();
+            scan(classFiles(), classes, packages);
+            apply(pui, classes, packages);
+            store(fingerprint, classes, packages);
+            logger.info("Scanned and cached metadata of persistence unit '{}' in {} ms.", unitName,
+                    System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed scanning entities of persistence unit '" + unitName + "'.", e);
+        }
+    }
+
+    private List<Resource> classFiles() throws IOException {
+        List<Resource> classFiles = new ArrayList<>();
+        for (String o : basePackages) {
+            classFiles.addAll(Arrays.asList(resolver.getResources(ResourcePatternResolver.CLASSPATH_ALL_URL_PREFIX
+                    + ClassUtils.convertClassNameToResourcePath(o.trim()) + CLASS_PATTERN)));
+        }
+        return classFiles;
+    }
+
+    private String fingerprint() throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        for (Map.Entry<String, String> o : new TreeMap<>(properties).entrySet()) {
+            update(digest, o.getKey() + '=' + o.getValue());
+        }
+        for (String o : basePackages) {
+            String packagePath = ClassUtils.convertClassNameToResourcePath(o.trim()) + "/";
+            for (Resource root : resolver.getResources(ResourcePatternResolver.CLASSPATH_ALL_URL_PREFIX + packagePath)) {
+                update(digest, root.getURL().toString());
+                for (String entry : rootEntries(root)) {
+                    update(digest, entry);
+                }
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (byte o : digest.digest()) {
+            sb.append(String.format("%02x", o));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the size and modification time of the archive holding a package, or of each file below it in a
+     * directory, sorted; for other roots, of each class file below it
+     */
+    private Collection<String> rootEntries(Resource root) throws IOException {
+        Collection<String> entries = new TreeSet<>();
+        URL url = root.getURL();
+        if (ResourceUtils.isJarURL(url)) {
+            URL archiveUrl = ResourceUtils.extractArchiveURL(url);
+            if (ResourceUtils.isFileURL(archiveUrl)) {
+                File archive = ResourceUtils.getFile(archiveUrl);
+                entries.add(archive.length() + ":" + archive.lastModified());
+                return entries;
+            }
+        } else if (ResourceUtils.isFileURL(url)) {
+            Path directory = root.getFile().toPath();
+            Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    entries.add(directory.relativize(file) + ":" + attrs.size() + ":"
+                            + attrs.lastModifiedTime().toMillis());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            return entries;
+        }
+
+        for (Resource o : resolver.getResources(url + CLASS_PATTERN.substring(1))) {
+            entries.add(o.getURL() + ":" + o.contentLength() + ":" + o.lastModified());
+        }
+        return entries;
+    }
+
+    private static void update(MessageDigest digest, String str) {
+        digest.update(str.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+    }
+
+    /**
+     * Selects entity classes and annotated packages as Spring's <code>DefaultPersistenceUnitManager</code> does.
+     */
+    private void scan(List<Resource> classFiles, List<String> classes, List<String> packages) throws IOException {
+        MetadataReaderFactory readerFactory = new CachingMetadataReaderFactory(resolver);
+        for (Resource o : classFiles) {
+            MetadataReader reader = readerFactory.getMetadataReader(o);
+            String className = reader.getClassMetadata().getClassName();
+            if (className.endsWith(PACKAGE_INFO_SUFFIX)) {
+                packages.add(className.substring(0, className.length() - PACKAGE_INFO_SUFFIX.length()));
+                continue;
+            }
+            for (TypeFilter filter : ENTITY_TYPE_FILTERS) {
+                if (filter.match(reader, readerFactory)) {
+                    classes.add(className);
+                    break;
+                }
+            }
+        }
+    }
+
+    private static void apply(MutablePersistenceUnitInfo pui, List<String> classes, List<String> packages) {
+        for (String o : classes) {
+            pui.addManagedClassName(o);
+        }
+        for (String o : packages) {
+            pui.addManagedPackage(o);
+        }
+    }
+
+    private Properties load() {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            props.load(in);
+            return props;
+        } catch (IOException e) {
+            logger.warn("Failed reading metadata cache '" + file + "' of persistence unit '" + unitName
+                    + "', rebuilding it.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes through a temporary file so that concurrent starts never read a partial cache.
+     */
+    private void store(String fingerprint, List<String> classes, List<String> packages) {
+        Properties props = new Properties();
+        props.setProperty(FINGERPRINT, fingerprint);
+        props.setProperty(CLASSES, String.join(",", classes));
+        props.setProperty(PACKAGES, String.join(",", packages));
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = Files.createTempFile(file.getParent(), unitName, ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                props.store(out, "Metadata cache of persistence unit " + unitName + ", do not edit.");
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Failed writing metadata cache '" + file + "' of persistence unit '" + unitName + "'.", e);
+        }
+    }
+
+    private static List<String> split(String str) {
+        List<String> values = new ArrayList<>();
+        if (str != null) {
+            for (String o : str.split(",")) {
+                if (!o.isEmpty()) {
+                    values.add(o);
+                }
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void setResourceLoader(ResourceLoader resourceLoader) {
+        this.resolver = new PathMatchingResourcePatternResolver(resourceLoader);
+    }
+}
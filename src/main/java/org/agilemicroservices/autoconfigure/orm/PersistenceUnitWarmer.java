@@ -0,0 +1,65 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+/**
+ * Starts a lazy persistence unit in the background once the context is refreshed, so that the script starts without
+ * waiting for the unit while its first use likely finds the unit ready. Failures are logged, first use then retrying
+ * and failing in the script's thread.
+ */
+public class PersistenceUnitWarmer implements ApplicationListener<ContextRefreshedEvent>, BeanFactoryAware {
+    private static final Logger logger = LoggerFactory.getLogger(PersistenceUnitWarmer.class);
+
+    private final String unitName;
+    private final List<String> beanNames;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private BeanFactory beanFactory;
+
+
+    /**
+     * @param unitName
+     * @param beanNames beans to create, in order
+     */
+    public PersistenceUnitWarmer(String unitName, List<String> beanNames) {
+        this.unitName = unitName;
+        this.beanNames = beanNames;
+    }
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+
+        Thread thread = new Thread(this::warmUp, "orm-warmup-" + unitName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void warmUp() {
+        long start = System.currentTimeMillis();
+        try {
+            for (String o : beanNames) {
+                beanFactory.getBean(o);
+            }
+            logger.debug("Warmed up persistence unit '{}' in {} ms.", unitName, System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            logger.error("Failed warming up persistence unit '" + unitName + "'.", e);
+        }
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        this.beanFactory = beanFactory;
+    }
+}
@@ -0,0 +1,235 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import com.mchange.v2.c3p0.ComboPooledDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+
+import java.util.Map;
+
+import static org.agilemicroservices.autoconfigure.orm.PropertiesRepositoryConfigurationSource.*;
+
+
+/**
+ * Builds the bean definition of a connection pool from the <code>datasource.pool.*</code> properties of a unit.
+ * Timeouts are configured in milliseconds whichever pool implementation is selected.
+ */
+class PooledDataSourceDefinitionBuilder {
+    private static final Logger logger = LoggerFactory.getLogger(PooledDataSourceDefinitionBuilder.class);
+    static final String C3P0 = "c3p0";
+    static final String HIKARI = "hikari";
+    private static final int DEFAULT_MIN_SIZE = 0;
+    private static final int DEFAULT_MAX_SIZE = 20;
+    private static final int DEFAULT_TARGET_WAIT = 10;
+    private static final int DEFAULT_INTERVAL = 1000;
+    private static final int KEEPALIVE_SECONDS = 60;
+
+    private final String unitName;
+    private final Map<String, String> properties;
+
+
+    PooledDataSourceDefinitionBuilder(String unitName, Map<String, String> properties) {
+        this.unitName = unitName;
+        this.properties = properties;
+    }
+
+    String getPoolType() {
+        String type = properties.getOrDefault(POOL_TYPE, C3P0).trim().toLowerCase();
+        if (!C3P0.equals(type) && !HIKARI.equals(type)) {
+            throw new IllegalArgumentException("Unsupported " + POOL_TYPE + " '" + type + "' in persistence unit '"
+                    + unitName + "', expected " + C3P0 + " or " + HIKARI + ".");
+        }
+        return type;
+    }
+
+    /**
+     * @return the configured minimum size, raised to the warm-up connections so that they are kept open
+     */
+    int getMinSize() {
+        return Math.max(intProperty(POOL_MIN_SIZE, DEFAULT_MIN_SIZE), getWarmupConnections());
+    }
+
+    /**
+     * @return connections opened at startup, 0 for none
+     */
+    int getWarmupConnections() {
+        int connections = intProperty(POOL_WARMUP, 0);
+        if (connections < 0) {
+            throw new IllegalArgumentException("Invalid " + POOL_WARMUP + " '" + connections
+                    + "' in persistence unit '" + unitName + "'.");
+        }
+        return connections;
+    }
+
+    String getValidationQuery() {
+        String query = properties.get(POOL_VALIDATION_QUERY);
+        return query != null && !query.trim().isEmpty() ? query.trim() : null;
+    }
+
+    int getMaxSize() {
+        return intProperty(POOL_MAX_SIZE, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Builds a pool connecting to the given database with the unit's pool settings.
+     *
+     * @param poolName
+     * @param url
+     * @param username
+     * @param password
+     * @return
+     */
+    AbstractBeanDefinition build(String poolName, String url, String username, String password) {
+        int minSize = getMinSize();
+        int maxSize = getMaxSize();
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size " + minSize + ".." + maxSize
+                    + " in persistence unit '" + unitName + "'.");
+        }
+
+        AbstractBeanDefinition definition = HIKARI.equals(getPoolType())
+                ? buildHikari(poolName, url, username, password, minSize, maxSize)
+                : buildC3p0(poolName, url, username, password, minSize, maxSize);
+        definition.setDestroyMethodName("close");
+        return definition;
+    }
+
+    /**
+     * Builds a pool as {@link #build} does, sized by an {@link AdaptivePoolDataSource} wrapping it.
+     *
+     * @param poolName
+     * @param url
+     * @param username
+     * @param password
+     * @param connectionBudgetName budget shared across units, <code>null</code> for none
+     * @return
+     */
+    AbstractBeanDefinition buildAdaptive(String poolName, String url, String username, String password,
+                                         String connectionBudgetName) {
+        AbstractBeanDefinition pool = build(poolName, url, username, password);
+        int targetWait = intProperty(POOL_ADAPTIVE_TARGET_WAIT, DEFAULT_TARGET_WAIT);
+        int interval = intProperty(POOL_ADAPTIVE_INTERVAL, DEFAULT_INTERVAL);
+        if (targetWait < 0 || interval < 1) {
+            throw new IllegalArgumentException("Invalid adaptive pool target wait " + targetWait + " ms or interval "
+                    + interval + " ms in persistence unit '" + unitName + "'.");
+        }
+
+        // the pool is an inner bean, so it is closed along with the wrapper and cannot be fetched around it
+        BeanDefinitionBuilder builder = BeanDefinitionBuilder
+                .rootBeanDefinition(AdaptivePoolDataSource.class)
+                .addConstructorArgValue(unitName)
+                .addConstructorArgValue(poolName)
+                .addConstructorArgValue(pool)
+                .addConstructorArgValue(url)
+                .addConstructorArgValue(Math.max(1, getMinSize()))
+                .addConstructorArgValue(getMaxSize())
+                .addPropertyValue("targetWaitMillis", targetWait)
+                .addPropertyValue("intervalMillis", interval);
+        if (connectionBudgetName != null) {
+            builder.addPropertyReference("connectionBudget", connectionBudgetName);
+        }
+        return builder.getBeanDefinition();
+    }
+
+    private AbstractBeanDefinition buildC3p0(String poolName, String url, String username, String password,
+                                             int minSize, int maxSize) {
+        BeanDefinitionBuilder builder = BeanDefinitionBuilder
+                .rootBeanDefinition(ComboPooledDataSource.class.getName())
+                .addPropertyValue("dataSourceName", poolName)
+                .addPropertyValue("driverClass", properties.get(DRIVER_CLASS_NAME))
+                .addPropertyValue("jdbcUrl", url)
+                .addPropertyValue("user", username)
+                .addPropertyValue("password", password)
+                .addPropertyValue("minPoolSize", minSize)
+                .addPropertyValue("initialPoolSize", minSize)
+                .addPropertyValue("maxPoolSize", maxSize);
+
+        if (getValidationQuery() != null) {
+            builder.addPropertyValue("preferredTestQuery", getValidationQuery());
+        }
+        if (getWarmupConnections() > 0) {
+            // idle connections are tested so that the warm floor is not silently dropped by the network
+            builder.addPropertyValue("idleConnectionTestPeriod", KEEPALIVE_SECONDS);
+            if (getValidationQuery() == null) {
+                builder.addPropertyValue("connectionTesterClassName", ValidConnectionTester.class.getName());
+            }
+        }
+        if (properties.containsKey(POOL_STATEMENT_CACHE_SIZE)) {
+            builder.addPropertyValue("maxStatementsPerConnection", intProperty(POOL_STATEMENT_CACHE_SIZE, 0));
+        }
+        if (properties.containsKey(POOL_CONNECTION_TIMEOUT)) {
+            builder.addPropertyValue("checkoutTimeout", intProperty(POOL_CONNECTION_TIMEOUT, 0));
+        }
+        if (properties.containsKey(POOL_IDLE_TIMEOUT)) {
+            builder.addPropertyValue("maxIdleTime", seconds(intProperty(POOL_IDLE_TIMEOUT, 0)));
+        }
+        if (properties.containsKey(POOL_LEAK_DETECTION_THRESHOLD)) {
+            logger.warn("Ignoring {} in persistence unit '{}', c3p0 can only close connections held past a threshold, "
+                    + "not report them.", POOL_LEAK_DETECTION_THRESHOLD, unitName);
+        }
+        return builder.getBeanDefinition();
+    }
+
+    private AbstractBeanDefinition buildHikari(String poolName, String url, String username, String password,
+                                               int minSize, int maxSize) {
+        BeanDefinitionBuilder builder = BeanDefinitionBuilder
+                .rootBeanDefinition(HikariDataSource.class.getName())
+                .addPropertyValue("poolName", poolName)
+                .addPropertyValue("driverClassName", properties.get(DRIVER_CLASS_NAME))
+                .addPropertyValue("jdbcUrl", url)
+                .addPropertyValue("username", username)
+                .addPropertyValue("password", password)
+                .addPropertyValue("minimumIdle", minSize)
+                .addPropertyValue("maximumPoolSize", maxSize);
+
+        if (getValidationQuery() != null) {
+            builder.addPropertyValue("connectionTestQuery", getValidationQuery());
+        }
+        if (properties.containsKey(POOL_STATEMENT_CACHE_SIZE)) {
+            logger.warn("Ignoring {} in persistence unit '{}', HikariCP leaves statement caching to the JDBC driver.",
+                    POOL_STATEMENT_CACHE_SIZE, unitName);
+        }
+        if (properties.containsKey(POOL_CONNECTION_TIMEOUT)) {
+            builder.addPropertyValue("connectionTimeout", longProperty(POOL_CONNECTION_TIMEOUT));
+        }
+        if (properties.containsKey(POOL_IDLE_TIMEOUT)) {
+            builder.addPropertyValue("idleTimeout", longProperty(POOL_IDLE_TIMEOUT));
+        }
+        if (properties.containsKey(POOL_LEAK_DETECTION_THRESHOLD)) {
+            builder.addPropertyValue("leakDetectionThreshold", longProperty(POOL_LEAK_DETECTION_THRESHOLD));
+        }
+        return builder.getBeanDefinition();
+    }
+
+    private int intProperty(String name, int defaultValue) {
+        String value = properties.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + " '" + value + "' in persistence unit '"
+                    + unitName + "'.", e);
+        }
+    }
+
+    private long longProperty(String name) {
+        String value = properties.get(name);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + " '" + value + "' in persistence unit '"
+                    + unitName + "'.", e);
+        }
+    }
+
+    private static int seconds(int millis) {
+        return (millis + 999) / 1000;
+    }
+}
@@ -1,12 +1,18 @@
 package org.agilemicroservices.autoconfigure.orm;
 
+import org.springframework.beans.factory.BeanDefinitionStoreException;
+import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.context.annotation.ScannedGenericBeanDefinition;
 import org.springframework.core.env.Environment;
 import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.type.classreading.CachingMetadataReaderFactory;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
 import org.springframework.data.repository.config.RepositoryConfigurationSourceSupport;
 import org.springframework.data.repository.query.QueryLookupStrategy;
 import org.springframework.data.util.Streamable;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -19,8 +25,191 @@ public class PropertiesRepositoryConfigurationSource extends RepositoryConfigura
     public static final String USERNAME = "datasource.username";
     public static final String PASSWORD = "datasource.password";
     public static final String BASE_PACKAGES = "repository.base_packages";
+    /**
+     * Rows fetched per round-trip by {@link StreamingRepository#streamAll()}, 100 by default.
+     */
+    public static final String FETCH_SIZE = "repository.fetch_size";
+    /**
+     * Pool implementation, <code>c3p0</code> (default) or <code>hikari</code>.
+     */
+    public static final String POOL_TYPE = "datasource.pool.type";
+    public static final String POOL_MIN_SIZE = "datasource.pool.min_size";
+    public static final String POOL_MAX_SIZE = "datasource.pool.max_size";
+    /**
+     * Prepared statements cached per connection, c3p0 only.
+     */
+    public static final String POOL_STATEMENT_CACHE_SIZE = "datasource.pool.statement_cache_size";
+    /**
+     * Milliseconds to wait for a connection before failing.
+     */
+    public static final String POOL_CONNECTION_TIMEOUT = "datasource.pool.connection_timeout";
+    /**
+     * Milliseconds a connection may sit idle before it is evicted.
+     */
+    public static final String POOL_IDLE_TIMEOUT = "datasource.pool.idle_timeout";
+    /**
+     * Milliseconds a connection may be held before it is reported as leaked. HikariCP only, c3p0 ignores it rather
+     * than closing connections in use.
+     */
+    public static final String POOL_LEAK_DETECTION_THRESHOLD = "datasource.pool.leak_detection_threshold";
+    /**
+     * Resizes the unit's pools with load between <code>datasource.pool.min_size</code>, at least 1, and
+     * <code>datasource.pool.max_size</code>.
+     */
+    public static final String POOL_ADAPTIVE = "datasource.pool.adaptive";
+    /**
+     * Mean milliseconds of checkout wait above which an adaptive pool grows.
+     */
+    public static final String POOL_ADAPTIVE_TARGET_WAIT = "datasource.pool.adaptive.target_wait";
+    /**
+     * Milliseconds between the resize decisions of an adaptive pool.
+     */
+    public static final String POOL_ADAPTIVE_INTERVAL = "datasource.pool.adaptive.interval";
+    /**
+     * Connections each of the unit's pools opens and validates in parallel before the context is refreshed, then
+     * keeps open as its minimum size when <code>datasource.pool.min_size</code> is lower. Lazy units are not warmed
+     * up at startup.
+     */
+    public static final String POOL_WARMUP = "datasource.pool.warmup";
+    /**
+     * Statement validating connections, e.g. <code>SELECT 1</code>, on warm-up and on idle connections, the driver's
+     * <code>Connection.isValid</code> by default.
+     */
+    public static final String POOL_VALIDATION_QUERY = "datasource.pool.validation_query";
+    /**
+     * Prefix of read replica settings, <code>datasource.replica.&lt;name&gt;.url</code> with optional
+     * <code>.username</code> and <code>.password</code> defaulting to the primary's. Replica pools share the
+     * <code>datasource.pool.*</code> settings of the primary.
+     */
+    public static final String REPLICA_PREFIX = "datasource.replica.";
+    /**
+     * Prefix of shard settings, <code>datasource.shard.&lt;n&gt;.url</code> for shards numbered from 0, with optional
+     * <code>.username</code> and <code>.password</code> defaulting to <code>datasource.username</code> and
+     * <code>datasource.password</code>. A unit declaring shards uses them in place of <code>datasource.url</code>.
+     */
+    public static final String SHARD_PREFIX = "datasource.shard.";
+    /**
+     * JDBC batch size of the unit, enabling batched and ordered inserts and updates. Also the default number of
+     * entities a <code>BulkWriter</code> writes between flushes.
+     */
+    public static final String BULK_BATCH_SIZE = "bulk.batch_size";
+    /**
+     * Enables the Hibernate second-level cache, held in-process per unit. Entities opt in with
+     * <code>@Cacheable</code> unless <code>cache.mode</code> selects another <code>SharedCacheMode</code>.
+     */
+    public static final String CACHE_ENABLED = "cache.enabled";
+    public static final String CACHE_MODE = "cache.mode";
+    /**
+     * Enables the query cache for repository methods annotated with {@link CacheableQuery}.
+     */
+    public static final String CACHE_QUERY_ENABLED = "cache.query.enabled";
+    /**
+     * Entries held per cache region, 10000 by default.
+     */
+    public static final String CACHE_MAX_ENTRIES = "cache.max_entries";
+    /**
+     * Seconds an entry lives in a cache region, 0 (default) for no limit.
+     */
+    public static final String CACHE_TTL_SECONDS = "cache.ttl_seconds";
+    /**
+     * Prefix of settings overriding the limits of a single region, <code>cache.region.&lt;region&gt;.max_entries</code>
+     * and <code>cache.region.&lt;region&gt;.ttl_seconds</code>. Entity regions are named after the entity class.
+     */
+    public static final String CACHE_REGION_PREFIX = "cache.region.";
+    /**
+     * Publishes pool, transaction and repository metrics of the unit over JMX, defaults to the environment's
+     * <code>orm.metrics.enabled</code>.
+     */
+    public static final String METRICS_ENABLED = "metrics.enabled";
+    /**
+     * Defers building the unit's pool, EntityManagerFactory and repositories to their first use, defaults to the
+     * environment's <code>orm.bootstrap.lazy</code>.
+     */
+    public static final String BOOTSTRAP_LAZY = "bootstrap.lazy";
+    /**
+     * Starts a lazy unit in the background once the context is refreshed, defaults to the environment's
+     * <code>orm.bootstrap.warmup</code>.
+     */
+    public static final String BOOTSTRAP_WARMUP = "bootstrap.warmup";
+    /**
+     * Reuses the unit's entity scan from an on-disk cache while its classes and properties are unchanged, defaults to
+     * the environment's <code>orm.metadata.cache.enabled</code>.
+     */
+    public static final String METADATA_CACHE_ENABLED = "metadata.cache.enabled";
+    /**
+     * Prepares the unit's repositories and their queries in the background once the context is refreshed, defaults to
+     * the environment's <code>orm.repository.warmup</code>.
+     */
+    public static final String REPOSITORY_WARMUP = "repository.warmup";
+    /**
+     * Creates each repository of the unit on its first lookup rather than at startup, defaults to the environment's
+     * <code>orm.repository.lazy_init</code>. Implied by <code>bootstrap.lazy</code>.
+     */
+    public static final String REPOSITORY_LAZY_INIT = "repository.lazy_init";
+    /**
+     * Caches the results of repository methods annotated with {@link CacheableResult} or listed in
+     * <code>repository.cache.methods</code>, defaults to the environment's <code>orm.repository.cache.enabled</code>,
+     * itself true by default.
+     */
+    public static final String REPOSITORY_CACHE_ENABLED = "repository.cache.enabled";
+    /**
+     * Comma-separated repository methods cached in addition to annotated ones, as <code>Repository.method</code>
+     * with the repository's simple name.
+     */
+    public static final String REPOSITORY_CACHE_METHODS = "repository.cache.methods";
+    /**
+     * Results held per cached method, 1000 by default.
+     */
+    public static final String REPOSITORY_CACHE_MAX_ENTRIES = "repository.cache.max_entries";
+    /**
+     * Seconds a cached result is used for, 60 by default, 0 for no limit. Bounds staleness from writes the unit does
+     * not see, such as other processes or native SQL.
+     */
+    public static final String REPOSITORY_CACHE_TTL_SECONDS = "repository.cache.ttl_seconds";
+    /**
+     * Serves several tenants from the unit's single pool and EntityManagerFactory, <code>schema</code> selecting a
+     * schema per tenant. The tenant is taken from the {@link TenantContext} of the calling thread.
+     */
+    public static final String TENANCY_MODE = "tenancy.mode";
+    /**
+     * Comma-separated tenants the unit serves, any tenant when not set.
+     */
+    public static final String TENANCY_TENANTS = "tenancy.tenants";
+    /**
+     * Tenant used when the calling thread has none, a tenant being required when not set.
+     */
+    public static final String TENANCY_DEFAULT_TENANT = "tenancy.default_tenant";
+    /**
+     * Schema connections are returned to the pool in, by default the schema connections are opened in.
+     */
+    public static final String TENANCY_DEFAULT_SCHEMA = "tenancy.default_schema";
+    /**
+     * Statement switching schemas with the schema as <code>%s</code>, e.g. <code>SET search_path TO %s</code>, for
+     * drivers not supporting <code>Connection.setSchema</code>.
+     */
+    public static final String TENANCY_SCHEMA_STATEMENT = "tenancy.schema_statement";
+    /**
+     * Runs the unit's asynchronous transactions on virtual threads where the JDK supports them, defaults to the
+     * environment's <code>orm.async.virtual_threads</code>.
+     */
+    public static final String ASYNC_VIRTUAL_THREADS = "async.virtual_threads";
+    /**
+     * Records per-statement statistics of the unit, defaults to the environment's
+     * <code>orm.sql.statistics.enabled</code>.
+     */
+    public static final String SQL_STATISTICS_ENABLED = "sql.statistics.enabled";
+    /**
+     * Executions of one statement allowed per transaction before it is reported as repeated, 0 not to check.
+     */
+    public static final String SQL_STATISTICS_REPEAT_THRESHOLD = "sql.statistics.repeat_threshold";
+    /**
+     * Milliseconds above which statements are logged as slow, 0 not to log.
+     */
+    public static final String SQL_STATISTICS_SLOW_THRESHOLD = "sql.statistics.slow_threshold";
 
     private Map<String, String> properties;
+    private List<String> indexedRepositoryInterfaces;
+    private MetadataReaderFactory metadataReaderFactory;
 
 
     public PropertiesRepositoryConfigurationSource(Map<String, String> properties, Environment environment, ResourceLoader resourceLoader, BeanDefinitionRegistry registry) {
@@ -45,11 +234,52 @@ public class PropertiesRepositoryConfigurationSource extends RepositoryConfigura
             for (String o : str.trim().split(",")) {
                 String packageName = o.trim();
                 if (!packageName.isEmpty()) {
-                    basePackages.add(o);
+                    basePackages.add(packageName);
                 }
             }
         }
-        return (Streamable<String>) basePackages;
+        return Streamable.of(basePackages);
+    }
+
+    /**
+     * Sets the repository interfaces recorded for this unit in the {@link OrmIndex}, replacing the scan of the base
+     * packages.
+     *
+     * @param indexedRepositoryInterfaces
+     */
+    public void setIndexedRepositoryInterfaces(List<String> indexedRepositoryInterfaces) {
+        this.indexedRepositoryInterfaces = indexedRepositoryInterfaces;
+    }
+
+    /**
+     * Sets the factory used to read indexed repository interfaces, shared between units to parse each class once.
+     *
+     * @param metadataReaderFactory
+     */
+    public void setMetadataReaderFactory(MetadataReaderFactory metadataReaderFactory) {
+        this.metadataReaderFactory = metadataReaderFactory;
+    }
+
+    @Override
+    public Streamable<BeanDefinition> getCandidates(ResourceLoader loader) {
+        if (indexedRepositoryInterfaces == null) {
+            // the scanner reads through the cache of the bootstrap context's DefaultResourceLoader, shared with the
+            // metadata reader factory
+            return super.getCandidates(loader);
+        }
+
+        MetadataReaderFactory metadataReaderFactory = this.metadataReaderFactory != null
+                ? this.metadataReaderFactory
+                : new CachingMetadataReaderFactory(loader);
+        List<BeanDefinition> candidates = new ArrayList<>(indexedRepositoryInterfaces.size());
+        for (String o : indexedRepositoryInterfaces) {
+            try {
+                candidates.add(new ScannedGenericBeanDefinition(metadataReaderFactory.getMetadataReader(o)));
+            } catch (IOException e) {
+                throw new BeanDefinitionStoreException("Failed reading indexed repository interface " + o + ".", e);
+            }
+        }
+        return Streamable.of(candidates);
     }
 
     @Override
@@ -70,7 +300,7 @@ public class PropertiesRepositoryConfigurationSource extends RepositoryConfigura
 
     @Override
     public Optional<String> getRepositoryBaseClassName() {
-        return Optional.empty();
+        return Optional.of(StreamingJpaRepository.class.getName());
     }
 
     @Override
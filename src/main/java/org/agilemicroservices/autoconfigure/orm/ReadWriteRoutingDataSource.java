@@ -0,0 +1,37 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Routes connections of read-only transactions to the replica pools, in turn, and all other connections to the
+ * primary pool. The read-only flag is only known once the transaction has begun, so this DataSource must sit behind a
+ * {@link LazyConnectionDataSourceProxy} that defers fetching the connection to the first statement.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+    public static final String PRIMARY_KEY = "primary";
+    public static final String REPLICA_KEY_PREFIX = "replica";
+
+    private final int replicaCount;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+
+    public ReadWriteRoutingDataSource(int replicaCount) {
+        if (replicaCount < 1) {
+            throw new IllegalArgumentException("At least one replica is required.");
+        }
+        this.replicaCount = replicaCount;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return REPLICA_KEY_PREFIX + Math.floorMod(nextReplica.getAndIncrement(), replicaCount);
+        }
+        return PRIMARY_KEY;
+    }
+}
@@ -17,24 +17,39 @@ package org.agilemicroservices.autoconfigure.orm;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.beans.factory.support.AbstractBeanDefinition;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.support.BeanDefinitionReaderUtils;
 import org.springframework.beans.factory.support.BeanDefinitionRegistry;
 import org.springframework.beans.factory.support.RootBeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
 import org.springframework.core.env.Environment;
 import org.springframework.core.io.ResourceLoader;
-import org.springframework.core.type.classreading.CachingMetadataReaderFactory;
 import org.springframework.core.type.classreading.MetadataReaderFactory;
-import org.springframework.data.repository.config.CustomRepositoryImplementationDetector;
+import org.springframework.core.type.filter.RegexPatternTypeFilter;
+import org.springframework.core.type.filter.TypeFilter;
 import org.springframework.data.repository.config.NamedQueriesBeanDefinitionBuilder;
 import org.springframework.data.repository.config.RepositoryConfiguration;
 import org.springframework.data.repository.config.RepositoryConfigurationExtension;
+import org.springframework.data.repository.config.RepositoryConfigurationSource;
 import org.springframework.data.repository.query.ExtensionAwareEvaluationContextProvider;
 import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.StringUtils;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
 /**
  * Builder to create {@link BeanDefinitionBuilder} instance to eventually create Spring Data repository instances.
+ * <p>
+ * Modified to share the named queries and evaluation context provider of a unit between its repositories, and to find
+ * the custom implementations of all of its repositories in a single scan.
  *
  * @author Oliver Gierke
  */
@@ -45,32 +60,37 @@ class RepositoryBeanDefinitionBuilder {
     private final BeanDefinitionRegistry registry;
     private final RepositoryConfigurationExtension extension;
     private final ResourceLoader resourceLoader;
-
+    private final Environment environment;
     private final MetadataReaderFactory metadataReaderFactory;
-    private CustomRepositoryImplementationDetector implementationDetector;
+    private final RepositoryConfigurationSource configurationSource;
+
+    private final Map<String, String> namedQueriesBeanNames = new HashMap<>();
+    private String evaluationContextProviderBeanName;
+    private Map<String, List<BeanDefinition>> implementationsByClassName;
 
     /**
      * Creates a new {@link RepositoryBeanDefinitionBuilder} from the given {@link BeanDefinitionRegistry},
-     * {@link RepositoryConfigurationExtension} and {@link ResourceLoader}.
+     * {@link RepositoryConfigurationExtension} and {@link RepositoryBootstrapContext}.
      *
-     * @param registry       must not be {@literal null}.
-     * @param extension      must not be {@literal null}.
-     * @param resourceLoader must not be {@literal null}.
-     * @param environment    must not be {@literal null}.
+     * @param registry         must not be {@literal null}.
+     * @param extension        must not be {@literal null}.
+     * @param bootstrapContext must not be {@literal null}.
+     * @param configurationSource must not be {@literal null}.
      */
     public RepositoryBeanDefinitionBuilder(BeanDefinitionRegistry registry, RepositoryConfigurationExtension extension,
-                                           ResourceLoader resourceLoader, Environment environment) {
+                                           RepositoryBootstrapContext bootstrapContext,
+                                           RepositoryConfigurationSource configurationSource) {
 
         Assert.notNull(extension, "RepositoryConfigurationExtension must not be null!");
-        Assert.notNull(resourceLoader, "ResourceLoader must not be null!");
-        Assert.notNull(environment, "Environment must not be null!");
+        Assert.notNull(bootstrapContext, "RepositoryBootstrapContext must not be null!");
+        Assert.notNull(configurationSource, "RepositoryConfigurationSource must not be null!");
 
         this.registry = registry;
         this.extension = extension;
-        this.resourceLoader = resourceLoader;
-        this.metadataReaderFactory = new CachingMetadataReaderFactory(resourceLoader);
-        this.implementationDetector = new CustomRepositoryImplementationDetector(metadataReaderFactory, environment,
-                resourceLoader);
+        this.resourceLoader = bootstrapContext.getResourceLoader();
+        this.environment = bootstrapContext.getEnvironment();
+        this.metadataReaderFactory = bootstrapContext.getMetadataReaderFactory();
+        this.configurationSource = configurationSource;
     }
 
     /**
@@ -92,19 +112,13 @@ class RepositoryBeanDefinitionBuilder {
         BeanDefinitionBuilder builder = BeanDefinitionBuilder.rootBeanDefinition(factoryBeanName);
 
         builder.getRawBeanDefinition().setSource(configuration.getSource());
-        builder.addPropertyValue("repositoryInterface", configuration.getRepositoryInterface());
+        builder.addConstructorArgValue(configuration.getRepositoryInterface());
         builder.addPropertyValue("queryLookupStrategyKey", configuration.getQueryLookupStrategyKey());
         builder.addPropertyValue("lazyInit", configuration.isLazyInit());
-        builder.addPropertyValue("repositoryBaseClass", configuration.getRepositoryBaseClassName());
-
-        NamedQueriesBeanDefinitionBuilder definitionBuilder = new NamedQueriesBeanDefinitionBuilder(
-                extension.getDefaultNamedQueryLocation());
+        configuration.getRepositoryBaseClassName()
+                .ifPresent(o -> builder.addPropertyValue("repositoryBaseClass", o));
 
-        if (StringUtils.hasText(configuration.getNamedQueriesLocation().orElse(""))) {
-            definitionBuilder.setLocations(configuration.getNamedQueriesLocation().orElse(""));
-        }
-
-        builder.addPropertyValue("namedQueries", definitionBuilder.build(configuration.getSource()));
+        builder.addPropertyReference("namedQueries", namedQueriesBeanName(configuration));
 
         String customImplementationBeanName = registerCustomImplementation(configuration);
 
@@ -113,15 +127,13 @@ class RepositoryBeanDefinitionBuilder {
             builder.addDependsOn(customImplementationBeanName);
         }
 
-        RootBeanDefinition evaluationContextProviderDefinition = new RootBeanDefinition(
-                ExtensionAwareEvaluationContextProvider.class);
-        evaluationContextProviderDefinition.setSource(configuration.getSource());
-
-        builder.addPropertyValue("evaluationContextProvider", evaluationContextProviderDefinition);
+        builder.addPropertyReference("evaluationContextProvider", evaluationContextProviderBeanName(configuration));
 
         return builder;
     }
 
+    // Spring Data 2.0 deprecates the implementation name accessors without offering a replacement
+    @SuppressWarnings("deprecation")
     private String registerCustomImplementation(RepositoryConfiguration<?> configuration) {
 
         String beanName = configuration.getImplementationBeanName();
@@ -131,7 +143,7 @@ class RepositoryBeanDefinitionBuilder {
             return beanName;
         }
 
-        AbstractBeanDefinition beanDefinition = implementationDetector.detectCustomImplementation(configuration).get();
+        AbstractBeanDefinition beanDefinition = detectCustomImplementation(configuration);
 
         if (null == beanDefinition) {
             return null;
@@ -148,4 +160,114 @@ class RepositoryBeanDefinitionBuilder {
 
         return beanName;
     }
+
+    /**
+     * @return name of the named queries bean shared by all repositories reading the same locations
+     */
+    private String namedQueriesBeanName(RepositoryConfiguration<?> configuration) {
+        String location = configuration.getNamedQueriesLocation().orElse("");
+        String beanName = namedQueriesBeanNames.get(location);
+        if (beanName == null) {
+            NamedQueriesBeanDefinitionBuilder definitionBuilder = new NamedQueriesBeanDefinitionBuilder(
+                    extension.getDefaultNamedQueryLocation());
+            if (StringUtils.hasText(location)) {
+                definitionBuilder.setLocations(location);
+            }
+            beanName = BeanDefinitionReaderUtils.registerWithGeneratedName(
+                    (AbstractBeanDefinition) definitionBuilder.build(configuration.getSource()), registry);
+            namedQueriesBeanNames.put(location, beanName);
+        }
+        return beanName;
+    }
+
+    private String evaluationContextProviderBeanName(RepositoryConfiguration<?> configuration) {
+        if (evaluationContextProviderBeanName == null) {
+            RootBeanDefinition definition = new RootBeanDefinition(ExtensionAwareEvaluationContextProvider.class);
+            definition.setSource(configuration.getSource());
+            evaluationContextProviderBeanName = BeanDefinitionReaderUtils.registerWithGeneratedName(definition,
+                    registry);
+        }
+        return evaluationContextProviderBeanName;
+    }
+
+    /**
+     * Looks up the custom implementation of a repository among the classes found by a single scan of the base
+     * packages, made on first call. As in Spring Data, the implementation must lie within the repository's
+     * implementation base packages, and among several such classes the one whose bean name matches is chosen.
+     *
+     * @return the implementation, <code>null</code> if there is none
+     * @throws IllegalStateException if several classes qualify
+     */
+    @SuppressWarnings("deprecation")
+    private AbstractBeanDefinition detectCustomImplementation(RepositoryConfiguration<?> configuration) {
+        if (implementationsByClassName == null) {
+            implementationsByClassName = scanImplementations(
+                    configurationSource.getRepositoryImplementationPostfix().orElse("Impl"));
+        }
+
+        List<BeanDefinition> candidates = new ArrayList<>();
+        for (BeanDefinition o : implementationsByClassName.getOrDefault(configuration.getImplementationClassName(),
+                Collections.emptyList())) {
+            if (isWithinAny(ClassUtils.getPackageName(o.getBeanClassName()),
+                    configuration.getImplementationBasePackages())) {
+                candidates.add(o);
+            }
+        }
+        if (candidates.size() > 1) {
+            List<BeanDefinition> named = new ArrayList<>();
+            for (BeanDefinition o : candidates) {
+                if (configuration.getImplementationBeanName().equals(configurationSource.generateBeanName(o))) {
+                    named.add(o);
+                }
+            }
+            candidates = named;
+        }
+
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        if (candidates.size() > 1) {
+            List<String> classNames = new ArrayList<>();
+            for (BeanDefinition o : candidates) {
+                classNames.add(o.getBeanClassName());
+            }
+            throw new IllegalStateException(String.format("Ambiguous custom implementation detected! Found %s but "
+                    + "expected a single implementation!", StringUtils.collectionToDelimitedString(classNames, ", ")));
+        }
+        return (AbstractBeanDefinition) candidates.get(0);
+    }
+
+    private static boolean isWithinAny(String packageName, Iterable<String> basePackages) {
+        for (String o : basePackages) {
+            if (packageName.equals(o) || packageName.startsWith(o + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return classes of the base packages whose names end with the postfix, keyed by simple name, to be narrowed down
+     * by package per repository
+     */
+    private Map<String, List<BeanDefinition>> scanImplementations(String postfix) {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false,
+                environment);
+        scanner.setResourceLoader(resourceLoader);
+        scanner.setMetadataReaderFactory(metadataReaderFactory);
+        scanner.addIncludeFilter(new RegexPatternTypeFilter(Pattern.compile(".*" + Pattern.quote(postfix))));
+        for (TypeFilter o : configurationSource.getExcludeFilters()) {
+            scanner.addExcludeFilter(o);
+        }
+
+        Map<String, List<BeanDefinition>> implementations = new HashMap<>();
+        for (String basePackage : configurationSource.getBasePackages()) {
+            for (BeanDefinition o : scanner.findCandidateComponents(basePackage)) {
+                implementations.computeIfAbsent(ClassUtils.getShortName(o.getBeanClassName()),
+                        key -> new ArrayList<>()).add(o);
+            }
+        }
+        LOGGER.debug("Found {} candidate custom repository implementations.", implementations.size());
+        return implementations;
+    }
 }
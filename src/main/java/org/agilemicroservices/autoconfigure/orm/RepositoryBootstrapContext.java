@@ -0,0 +1,127 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.type.classreading.CachingMetadataReaderFactory;
+import org.springframework.core.type.classreading.MetadataReader;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+import org.springframework.core.type.filter.AssignableTypeFilter;
+import org.springframework.data.repository.core.support.RepositoryFactorySupport;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+
+
+/**
+ * State shared by the repository registration of every persistence unit within a single registrar run, so that the
+ * Spring Data store detection scan runs once and class files are parsed once regardless of the number of units.
+ * <p>
+ * Scanners given the context's resource loader, such as Spring Data's repository scan, create their own
+ * {@link CachingMetadataReaderFactory} from it. As the loader is always a {@link DefaultResourceLoader}, those
+ * factories keep their readers in the loader's cache, the one {@link #getMetadataReaderFactory()} uses.
+ */
+public class RepositoryBootstrapContext {
+    private static final Logger logger = LoggerFactory.getLogger(RepositoryBootstrapContext.class);
+    private static final String MULTIPLE_MODULES = "Multiple Spring Data modules found, entering strict repository configuration mode!";
+    private static final String MODULE_DETECTION_PACKAGE = "org.springframework.data.**.repository.support";
+
+    private final ResourceLoader resourceLoader;
+    private final Environment environment;
+    private final MetadataReaderFactory metadataReaderFactory;
+    private Boolean inMultiStoreMode;
+
+
+    public RepositoryBootstrapContext(ResourceLoader resourceLoader, Environment environment) {
+        Assert.notNull(resourceLoader, "ResourceLoader must not be null!");
+        Assert.notNull(environment, "Environment must not be null!");
+
+        this.resourceLoader = cachingResourceLoader(resourceLoader);
+        this.environment = environment;
+        this.metadataReaderFactory = new CachingMetadataReaderFactory(this.resourceLoader);
+    }
+
+    private static ResourceLoader cachingResourceLoader(ResourceLoader resourceLoader) {
+        if (resourceLoader instanceof DefaultResourceLoader) {
+            return resourceLoader;
+        }
+        return new DefaultResourceLoader(resourceLoader.getClassLoader()) {
+            @Override
+            public Resource getResource(String location) {
+                return resourceLoader.getResource(location);
+            }
+        };
+    }
+
+    public ResourceLoader getResourceLoader() {
+        return resourceLoader;
+    }
+
+    public Environment getEnvironment() {
+        return environment;
+    }
+
+    public MetadataReaderFactory getMetadataReaderFactory() {
+        return metadataReaderFactory;
+    }
+
+    /**
+     * Scans {@code repository.support} packages for implementations of {@link RepositoryFactorySupport}, on first
+     * call only. Finding more than a single type is considered a multi-store configuration scenario which will
+     * trigger stricter repository scanning.
+     *
+     * @return
+     */
+    public synchronized boolean isInMultiStoreMode() {
+        if (inMultiStoreMode == null) {
+            ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+            scanner.setEnvironment(environment);
+            scanner.setResourceLoader(resourceLoader);
+            scanner.setMetadataReaderFactory(metadataReaderFactory);
+            scanner.addIncludeFilter(new LenientAssignableTypeFilter(RepositoryFactorySupport.class));
+
+            inMultiStoreMode = scanner.findCandidateComponents(MODULE_DETECTION_PACKAGE).size() > 1;
+            if (inMultiStoreMode) {
+                logger.debug(MULTIPLE_MODULES);
+            }
+        }
+        return inMultiStoreMode;
+    }
+
+
+    /**
+     * Special {@link AssignableTypeFilter} that generally considers exceptions during type matching indicating a
+     * non-match. TODO: Remove after upgrade to Spring 4.0.7.
+     *
+     * @author Oliver Gierke
+     * @see https://jira.spring.io/browse/SPR-12042
+     */
+    private static class LenientAssignableTypeFilter extends AssignableTypeFilter {
+
+        /**
+         * Creates a new {@link LenientAssignableTypeFilter} for the given target type.
+         *
+         * @param targetType must not be {@literal null}.
+         */
+        public LenientAssignableTypeFilter(Class<?> targetType) {
+            super(targetType);
+        }
+
+        /*
+         * (non-Javadoc)
+         * @see org.springframework.core.type.filter.AbstractTypeHierarchyTraversingFilter#match(org.springframework.core.type.classreading.MetadataReader, org.springframework.core.type.classreading.MetadataReaderFactory)
+         */
+        @Override
+        public boolean match(MetadataReader metadataReader, MetadataReaderFactory metadataReaderFactory) throws IOException {
+            try {
+                return super.match(metadataReader, metadataReaderFactory);
+            } catch (Exception o_O) {
+                return false;
+            }
+        }
+    }
+}
@@ -17,27 +17,22 @@ package org.agilemicroservices.autoconfigure.orm;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.FactoryBean;
 import org.springframework.beans.factory.parsing.BeanComponentDefinition;
 import org.springframework.beans.factory.support.AbstractBeanDefinition;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.support.BeanDefinitionRegistry;
-import org.springframework.beans.factory.support.BeanNameGenerator;
-import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
 import org.springframework.core.env.Environment;
 import org.springframework.core.env.EnvironmentCapable;
 import org.springframework.core.env.StandardEnvironment;
 import org.springframework.core.io.ResourceLoader;
-import org.springframework.core.type.classreading.MetadataReader;
-import org.springframework.core.type.classreading.MetadataReaderFactory;
-import org.springframework.core.type.filter.AssignableTypeFilter;
 import org.springframework.data.repository.config.RepositoryBeanNameGenerator;
 import org.springframework.data.repository.config.RepositoryConfiguration;
 import org.springframework.data.repository.config.RepositoryConfigurationExtension;
 import org.springframework.data.repository.config.RepositoryConfigurationSource;
-import org.springframework.data.repository.core.support.RepositoryFactorySupport;
 import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -56,13 +51,11 @@ public class RepositoryConfigurationDelegate {
     private static final Logger LOGGER = LoggerFactory.getLogger(RepositoryConfigurationDelegate.class);
 
     private static final String REPOSITORY_REGISTRATION = "Spring Data {} - Registering repository: {} - Interface: {} - Factory: {}";
-    private static final String MULTIPLE_MODULES = "Multiple Spring Data modules found, entering strict repository configuration mode!";
-    private static final String MODULE_DETECTION_PACKAGE = "org.springframework.data.**.repository.support";
 
     private final RepositoryConfigurationSource configurationSource;
+    private final RepositoryBootstrapContext bootstrapContext;
     private final ResourceLoader resourceLoader;
-    private final Environment environment;
-    private final BeanNameGenerator beanNameGenerator;
+    private final RepositoryBeanNameGenerator beanNameGenerator;
     private final boolean inMultiStoreMode;
 
     /**
@@ -75,15 +68,26 @@ public class RepositoryConfigurationDelegate {
      */
     public RepositoryConfigurationDelegate(RepositoryConfigurationSource configurationSource,
                                            ResourceLoader resourceLoader, Environment environment) {
-        Assert.notNull(resourceLoader);
+        this(configurationSource, new RepositoryBootstrapContext(resourceLoader,
+                defaultEnvironment(environment, resourceLoader)));
+    }
 
-        RepositoryBeanNameGenerator generator = new RepositoryBeanNameGenerator(resourceLoader.getClassLoader());
+    /**
+     * Creates a new {@link RepositoryConfigurationDelegate} for the given {@link RepositoryConfigurationSource},
+     * sharing store detection and class metadata with the other units of the given {@link RepositoryBootstrapContext}.
+     *
+     * @param configurationSource must not be {@literal null}.
+     * @param bootstrapContext    must not be {@literal null}.
+     */
+    public RepositoryConfigurationDelegate(RepositoryConfigurationSource configurationSource,
+                                           RepositoryBootstrapContext bootstrapContext) {
+        Assert.notNull(bootstrapContext, "RepositoryBootstrapContext must not be null!");
 
-        this.beanNameGenerator = (BeanNameGenerator) generator;
+        this.beanNameGenerator = new RepositoryBeanNameGenerator(bootstrapContext.getResourceLoader().getClassLoader());
         this.configurationSource = configurationSource;
-        this.resourceLoader = resourceLoader;
-        this.environment = defaultEnvironment(environment, resourceLoader);
-        this.inMultiStoreMode = multipleStoresDetected();
+        this.bootstrapContext = bootstrapContext;
+        this.resourceLoader = bootstrapContext.getResourceLoader();
+        this.inMultiStoreMode = bootstrapContext.isInMultiStoreMode();
     }
 
     /**
@@ -116,8 +120,8 @@ public class RepositoryConfigurationDelegate {
 
         extension.registerBeansForRoot(registry, configurationSource);
 
-        RepositoryBeanDefinitionBuilder builder = new RepositoryBeanDefinitionBuilder(registry, extension, resourceLoader,
-                environment);
+        RepositoryBeanDefinitionBuilder builder = new RepositoryBeanDefinitionBuilder(registry, extension,
+                bootstrapContext, configurationSource);
         List<BeanComponentDefinition> definitions = new ArrayList<BeanComponentDefinition>();
 
         for (RepositoryConfiguration<? extends RepositoryConfigurationSource> configuration : extension
@@ -128,7 +132,10 @@ public class RepositoryConfigurationDelegate {
             extension.postProcess(definitionBuilder, configurationSource);
 
             AbstractBeanDefinition beanDefinition = definitionBuilder.getBeanDefinition();
-            String beanName = beanNameGenerator.generateBeanName(beanDefinition, registry);
+            // lets type lookups match the repository without instantiating its factory
+            beanDefinition.setAttribute(FactoryBean.OBJECT_TYPE_ATTRIBUTE, ClassUtils.resolveClassName(
+                    configuration.getRepositoryInterface(), resourceLoader.getClassLoader()));
+            String beanName = beanNameGenerator.generateBeanName(beanDefinition);
 
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug(REPOSITORY_REGISTRATION, extension.getModuleName(), beanName,
@@ -141,60 +148,4 @@ public class RepositoryConfigurationDelegate {
 
         return definitions;
     }
-
-    /**
-     * Scans {@code repository.support} packages for implementations of {@link RepositoryFactorySupport}. Finding more
-     * than a single type is considered a multi-store configuration scenario which will trigger stricter repository
-     * scanning.
-     *
-     * @return
-     */
-    private boolean multipleStoresDetected() {
-
-        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
-        scanner.setEnvironment(environment);
-        scanner.setResourceLoader(resourceLoader);
-        scanner.addIncludeFilter(new LenientAssignableTypeFilter(RepositoryFactorySupport.class));
-
-        if (scanner.findCandidateComponents(MODULE_DETECTION_PACKAGE).size() > 1) {
-
-            LOGGER.debug(MULTIPLE_MODULES);
-            return true;
-        }
-
-        return false;
-    }
-
-    /**
-     * Special {@link AssignableTypeFilter} that generally considers exceptions during type matching indicating a
-     * non-match. TODO: Remove after upgrade to Spring 4.0.7.
-     *
-     * @author Oliver Gierke
-     * @see https://jira.spring.io/browse/SPR-12042
-     */
-    private static class LenientAssignableTypeFilter extends AssignableTypeFilter {
-
-        /**
-         * Creates a new {@link LenientAssignableTypeFilter} for the given target type.
-         *
-         * @param targetType must not be {@literal null}.
-         */
-        public LenientAssignableTypeFilter(Class<?> targetType) {
-            super(targetType);
-        }
-
-        /*
-         * (non-Javadoc)
-         * @see org.springframework.core.type.filter.AbstractTypeHierarchyTraversingFilter#match(org.springframework.core.type.classreading.MetadataReader, org.springframework.core.type.classreading.MetadataReaderFactory)
-         */
-        @Override
-        public boolean match(MetadataReader metadataReader, MetadataReaderFactory metadataReaderFactory) throws IOException {
-
-            try {
-                return super.match(metadataReader, metadataReaderFactory);
-            } catch (Exception o_O) {
-                return false;
-            }
-        }
-    }
 }
@@ -0,0 +1,91 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.Advised;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import java.lang.reflect.Method;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Times every call on the repository proxies of a persistence unit into its {@link OrmMetrics}. The timing advice is
+ * placed outermost, so latencies include transaction demarcation by <code>@Transactional</code> repository methods.
+ */
+public class RepositoryMetricsPostProcessor implements BeanPostProcessor, BeanFactoryAware {
+    private final String metricsBeanName;
+    private final Set<String> repositoryBeanNames;
+    private BeanFactory beanFactory;
+
+
+    public RepositoryMetricsPostProcessor(String metricsBeanName, Set<String> repositoryBeanNames) {
+        this.metricsBeanName = metricsBeanName;
+        this.repositoryBeanNames = repositoryBeanNames;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        // the repository factory beans are skipped, only the proxies they produce are advised
+        if (bean instanceof Advised && repositoryBeanNames.contains(beanName)) {
+            Advised advised = (Advised) bean;
+            Class<?>[] interfaces = advised.getProxiedInterfaces();
+            String repositoryName = interfaces.length > 0 ? interfaces[0].getSimpleName() : beanName;
+            advised.addAdvice(0, new TimingInterceptor(repositoryName,
+                    beanFactory.getBean(metricsBeanName, OrmMetrics.class)));
+        }
+        return bean;
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        this.beanFactory = beanFactory;
+    }
+
+
+    private static class TimingInterceptor implements MethodInterceptor {
+        private final String repositoryName;
+        private final OrmMetrics metrics;
+        private final ConcurrentMap<Method, String> methodNames = new ConcurrentHashMap<>();
+
+        TimingInterceptor(String repositoryName, OrmMetrics metrics) {
+            this.repositoryName = repositoryName;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            long start = System.nanoTime();
+            try {
+                return invocation.proceed();
+            } finally {
+                metrics.recordRepositoryCall(methodName(invocation.getMethod()), System.nanoTime() - start);
+            }
+        }
+
+        private String methodName(Method method) {
+            String name = methodNames.get(method);
+            if (name == null) {
+                name = methodNames.computeIfAbsent(method, this::signature);
+            }
+            return name;
+        }
+
+        /**
+         * @return <code>Repository.method(ParameterType, ...)</code>, keeping overloads apart
+         */
+        private String signature(Method method) {
+            StringJoiner parameters = new StringJoiner(", ", repositoryName + "." + method.getName() + "(", ")");
+            for (Class<?> o : method.getParameterTypes()) {
+                parameters.add(o.getSimpleName());
+            }
+            return parameters.toString();
+        }
+    }
+}
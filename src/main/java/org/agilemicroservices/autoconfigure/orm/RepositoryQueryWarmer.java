@@ -0,0 +1,258 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.hibernate.engine.spi.NamedQueryDefinition;
+import org.hibernate.engine.spi.NamedSQLQueryDefinition;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanClassLoaderAware;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.core.support.AbstractRepositoryMetadata;
+import org.springframework.util.ClassUtils;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Prepares the repositories of a persistence unit once the context is refreshed, so that their first calls do not pay
+ * for it. Repositories are created, deriving their query methods, and the HQL plans of declared and named queries are
+ * compiled into Hibernate's plan cache. Their SQL is prepared on the connections the warmup borrows, priming the pool's
+ * statement cache where it has one.
+ * <p>
+ * Repositories are created one after the other on the warmup's own thread: Spring holds its singleton registry lock
+ * while creating a bean, so creating them on several threads would not run any faster and would keep application
+ * threads looking up beans waiting for longer. Only compiling and preparing the queries runs in parallel, per
+ * repository, on no more threads than the pool has connections.
+ * <p>
+ * Once done the time spent on each stage and the slowest steps are logged. Failures are logged per method and do not
+ * stop the warmup.
+ */
+public class RepositoryQueryWarmer implements ApplicationListener<ContextRefreshedEvent>, BeanFactoryAware,
+        BeanClassLoaderAware {
+    private static final Logger logger = LoggerFactory.getLogger(RepositoryQueryWarmer.class);
+    private static final int REPORT_SIZE = 10;
+    private static final String SPRING_DATA_PACKAGE = "org.springframework.data.";
+
+    private final String unitName;
+    private final String entityManagerFactoryBeanName;
+    private final String dataSourceBeanName;
+    private final Map<String, String> repositoryInterfaces;
+    private final int concurrency;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private BeanFactory beanFactory;
+    private ClassLoader beanClassLoader;
+
+
+    /**
+     * @param unitName
+     * @param entityManagerFactoryBeanName
+     * @param dataSourceBeanName
+     * @param repositoryInterfaces         repository interface names by bean name
+     * @param concurrency                  most repositories whose queries are compiled and prepared at once
+     */
+    public RepositoryQueryWarmer(String unitName, String entityManagerFactoryBeanName, String dataSourceBeanName,
+                                 Map<String, String> repositoryInterfaces, int concurrency) {
+        this.unitName = unitName;
+        this.entityManagerFactoryBeanName = entityManagerFactoryBeanName;
+        this.dataSourceBeanName = dataSourceBeanName;
+        this.repositoryInterfaces = repositoryInterfaces;
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        if (!started.compareAndSet(false, true) || repositoryInterfaces.isEmpty()) {
+            return;
+        }
+
+        Thread thread = new Thread(this::warmUp, "orm-query-warmup-" + unitName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void warmUp() {
+        long start = System.nanoTime();
+        List<Timing> timings = new ArrayList<>();
+        long created;
+        ExecutorService executor = null;
+        try {
+            SessionFactoryImplementor sessionFactory = beanFactory.getBean(entityManagerFactoryBeanName,
+                    EntityManagerFactory.class).unwrap(SessionFactoryImplementor.class);
+            DataSource dataSource = beanFactory.getBean(dataSourceBeanName, DataSource.class);
+
+            List<Class<?>> interfaces = new ArrayList<>();
+            for (Map.Entry<String, String> o : repositoryInterfaces.entrySet()) {
+                interfaces.add(create(o.getKey(), o.getValue(), timings));
+            }
+            created = System.nanoTime();
+
+            executor = newExecutor();
+            List<Future<List<Timing>>> futures = new ArrayList<>();
+            for (Class<?> o : interfaces) {
+                futures.add(executor.submit(() -> warmUp(o, sessionFactory, dataSource)));
+            }
+            for (Future<List<Timing>> o : futures) {
+                timings.addAll(o.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ClassNotFoundException | ExecutionException | RuntimeException e) {
+            logger.error("Failed warming up repositories of persistence unit '" + unitName + "'.", e);
+            return;
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+
+        report(timings, created - start, System.nanoTime() - created);
+    }
+
+    private ExecutorService newExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.min(concurrency, repositoryInterfaces.size()), r -> {
+            Thread thread = new Thread(r, "orm-query-warmup-" + unitName + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates a repository, which derives all of its query methods, unless the context already has.
+     *
+     * @return the repository interface
+     */
+    private Class<?> create(String beanName, String interfaceName, List<Timing> timings)
+            throws ClassNotFoundException {
+        Class<?> repositoryInterface = ClassUtils.forName(interfaceName, beanClassLoader);
+        long start = System.nanoTime();
+        beanFactory.getBean(beanName);
+        timings.add(new Timing(repositoryInterface.getSimpleName(), System.nanoTime() - start));
+        return repositoryInterface;
+    }
+
+    private List<Timing> warmUp(Class<?> repositoryInterface, SessionFactoryImplementor sessionFactory,
+                                DataSource dataSource) throws SQLException {
+        List<Timing> timings = new ArrayList<>();
+        String repositoryName = repositoryInterface.getSimpleName();
+        Class<?> domainType = AbstractRepositoryMetadata.getMetadata(repositoryInterface).getDomainType();
+        try (Connection connection = dataSource.getConnection()) {
+            for (Method o : repositoryInterface.getMethods()) {
+                if (isQueryMethod(o)) {
+                    long start = System.nanoTime();
+                    try {
+                        if (warmUp(o, domainType, sessionFactory, connection)) {
+                            timings.add(new Timing(repositoryName + "." + o.getName(), System.nanoTime() - start));
+                        }
+                    } catch (RuntimeException | SQLException e) {
+                        logger.debug("Skipped warming up {}.{} of persistence unit '{}': {}", repositoryName,
+                                o.getName(), unitName, e.toString());
+                    }
+                }
+            }
+        }
+        return timings;
+    }
+
+    private static boolean isQueryMethod(Method method) {
+        return !method.isDefault() && !Modifier.isStatic(method.getModifiers())
+                && !method.getDeclaringClass().getName().startsWith(SPRING_DATA_PACKAGE)
+                && method.getDeclaringClass() != StreamingRepository.class;
+    }
+
+    /**
+     * Compiles and prepares the declared or named query of a method, derived queries having been built with their
+     * repository.
+     *
+     * @return <code>false</code> if the method has neither
+     */
+    private static boolean warmUp(Method method, Class<?> domainType, SessionFactoryImplementor sessionFactory,
+                                  Connection connection) throws SQLException {
+        Query annotation = AnnotationUtils.findAnnotation(method, Query.class);
+        if (annotation != null && !annotation.value().isEmpty()) {
+            if (annotation.nativeQuery()) {
+                prepare(connection, annotation.value());
+            } else {
+                prepareHql(sessionFactory, connection, annotation.value());
+            }
+            return true;
+        }
+
+        String name = annotation != null && !annotation.name().isEmpty() ? annotation.name()
+                : domainType.getSimpleName() + "." + method.getName();
+        NamedQueryDefinition namedQuery = sessionFactory.getNamedQuery(name);
+        if (namedQuery != null) {
+            prepareHql(sessionFactory, connection, namedQuery.getQueryString());
+            return true;
+        }
+        NamedSQLQueryDefinition namedSqlQuery = sessionFactory.getNamedSQLQuery(name);
+        if (namedSqlQuery != null) {
+            prepare(connection, namedSqlQuery.getQueryString());
+            return true;
+        }
+        return false;
+    }
+
+    private static void prepareHql(SessionFactoryImplementor sessionFactory, Connection connection, String hql)
+            throws SQLException {
+        for (String o : sessionFactory.getQueryPlanCache()
+                .getHQLQueryPlan(hql, false, Collections.emptyMap()).getSqlStrings()) {
+            prepare(connection, o);
+        }
+    }
+
+    private static void prepare(Connection connection, String sql) throws SQLException {
+        // closing hands the statement to the pool's statement cache
+        connection.prepareStatement(sql).close();
+    }
+
+    private void report(List<Timing> timings, long createNanos, long compileNanos) {
+        timings.sort(Comparator.comparingLong((Timing o) -> o.nanos).reversed());
+
+        StringBuilder sb = new StringBuilder();
+        for (Timing o : timings.subList(0, Math.min(REPORT_SIZE, timings.size()))) {
+            sb.append(String.format("%n    %8.1f ms  %s", o.nanos / 1e6, o.name));
+        }
+        logger.info("Warmed up {} repositories of persistence unit '{}', created in {} ms and queries compiled and "
+                        + "prepared on {} threads in {} ms, slowest:{}", repositoryInterfaces.size(), unitName,
+                TimeUnit.NANOSECONDS.toMillis(createNanos), Math.min(concurrency, repositoryInterfaces.size()),
+                TimeUnit.NANOSECONDS.toMillis(compileNanos), sb);
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public void setBeanClassLoader(ClassLoader classLoader) {
+        this.beanClassLoader = classLoader;
+    }
+
+
+    private static class Timing {
+        final String name;
+        final long nanos;
+
+        Timing(String name, long nanos) {
+            this.name = name;
+            this.nanos = nanos;
+        }
+    }
+}
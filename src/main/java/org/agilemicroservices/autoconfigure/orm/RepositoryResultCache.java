@@ -0,0 +1,326 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.*;
+import org.hibernate.persister.entity.EntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.annotation.AnnotationUtils;
+
+import javax.persistence.Entity;
+import javax.persistence.EntityManagerFactory;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+
+/**
+ * Holds the cached results of the repository methods of a persistence unit, one bounded LRU map per method. All
+ * entries of a repository's domain type are dropped once a transaction of the unit writing an entity of that type
+ * commits, as reported by Hibernate, and the results of calls that started before the commit are not stored.
+ */
+public class RepositoryResultCache implements RepositoryResultCacheMXBean {
+    public static final String OBJECT_NAME_PREFIX = "org.agilemicroservices.orm:type=RepositoryResultCache,unit=";
+    private static final Logger logger = LoggerFactory.getLogger(RepositoryResultCache.class);
+
+    private final String unitName;
+    private final int maxEntries;
+    private final int ttlSeconds;
+    private final Set<String> configuredMethods;
+    private final Map<String, MethodCache> caches = new TreeMap<>();
+    private final List<MethodCache> cacheList = new CopyOnWriteArrayList<>();
+    private boolean listening;
+
+
+    /**
+     * @param unitName
+     * @param maxEntries        default entries per method
+     * @param ttlSeconds        default seconds an entry is used for, 0 for no limit
+     * @param configuredMethods <code>Repository.method</code> names cached in addition to annotated methods
+     */
+    public RepositoryResultCache(String unitName, int maxEntries, int ttlSeconds, Set<String> configuredMethods) {
+        this.unitName = unitName;
+        this.maxEntries = maxEntries;
+        this.ttlSeconds = ttlSeconds;
+        this.configuredMethods = configuredMethods;
+    }
+
+    /**
+     * Creates the caches of the methods of a repository that are annotated with {@link CacheableResult} or
+     * configured by name. Overloads of a method share its cache. Methods returning entities, alone or within
+     * collections, pages or optionals, are refused, as cached instances would be shared between callers.
+     *
+     * @param repositoryInterface
+     * @param domainType
+     * @return caches by method, empty if no method of the repository is cached
+     */
+    synchronized Map<Method, MethodCache> createCaches(Class<?> repositoryInterface, Class<?> domainType) {
+        Map<Method, MethodCache> methodCaches = new HashMap<>();
+        for (Method o : repositoryInterface.getMethods()) {
+            String name = repositoryInterface.getSimpleName() + "." + o.getName();
+            CacheableResult annotation = AnnotationUtils.findAnnotation(o, CacheableResult.class);
+            if (annotation == null && !configuredMethods.contains(name)) {
+                continue;
+            }
+            if (o.getReturnType() == void.class || Stream.class.isAssignableFrom(o.getReturnType())) {
+                throw new IllegalArgumentException("Cannot cache the results of " + name + " in persistence unit '"
+                        + unitName + "'.");
+            }
+            Class<?> entityType = entityTypeOf(ResolvableType.forMethodReturnType(o, repositoryInterface));
+            if (entityType != null) {
+                throw new IllegalArgumentException("Cannot cache the results of " + name + " in persistence unit '"
+                        + unitName + "', it returns " + entityType.getName() + " entities; return a projection or "
+                        + "DTO instead.");
+            }
+
+            MethodCache cache = caches.get(name);
+            if (cache == null) {
+                int methodMaxEntries = annotation != null && annotation.maxEntries() >= 0 ? annotation.maxEntries()
+                        : maxEntries;
+                int methodTtlSeconds = annotation != null && annotation.ttlSeconds() >= 0 ? annotation.ttlSeconds()
+                        : ttlSeconds;
+                cache = new MethodCache(name, domainType, methodMaxEntries, methodTtlSeconds);
+                caches.put(name, cache);
+                cacheList.add(cache);
+                logger.debug("Caching results of {} in persistence unit '{}' with {} entries and ttl {} s.", name,
+                        unitName, methodMaxEntries, methodTtlSeconds);
+            }
+            methodCaches.put(o, cache);
+        }
+        return methodCaches;
+    }
+
+    /**
+     * @return an entity type the type is or holds as element, component or type argument, <code>null</code> if none
+     */
+    private static Class<?> entityTypeOf(ResolvableType type) {
+        Class<?> resolved = type.resolve();
+        if (resolved == null) {
+            return null;
+        }
+        if (AnnotationUtils.findAnnotation(resolved, Entity.class) != null) {
+            return resolved;
+        }
+        if (type.isArray()) {
+            return entityTypeOf(type.getComponentType());
+        }
+        for (ResolvableType o : type.getGenerics()) {
+            Class<?> entityType = entityTypeOf(o);
+            if (entityType != null) {
+                return entityType;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Registers the listeners invalidating the caches on the unit's Hibernate <code>SessionFactory</code>, once.
+     *
+     * @param entityManagerFactory
+     */
+    synchronized void listen(EntityManagerFactory entityManagerFactory) {
+        if (listening) {
+            return;
+        }
+        SessionFactoryImplementor sessionFactory =
+                (SessionFactoryImplementor) entityManagerFactory.unwrap(SessionFactory.class);
+        EventListenerRegistry listenerRegistry =
+                sessionFactory.getServiceRegistry().getService(EventListenerRegistry.class);
+        InvalidatingListener listener = new InvalidatingListener();
+        listenerRegistry.appendListeners(EventType.POST_COMMIT_INSERT, listener);
+        listenerRegistry.appendListeners(EventType.POST_COMMIT_UPDATE, listener);
+        listenerRegistry.appendListeners(EventType.POST_COMMIT_DELETE, listener);
+        listening = true;
+    }
+
+    /**
+     * Drops the cached results of every repository whose domain type is, or is a supertype of, the given type.
+     *
+     * @param entityType
+     */
+    public void invalidate(Class<?> entityType) {
+        for (MethodCache o : cacheList) {
+            if (o.domainType.isAssignableFrom(entityType)) {
+                o.clear();
+            }
+        }
+    }
+
+    @Override
+    public String getUnitName() {
+        return unitName;
+    }
+
+    @Override
+    public synchronized Map<String, Double> getHitRatios() {
+        Map<String, Double> ratios = new TreeMap<>();
+        for (MethodCache o : caches.values()) {
+            long hits = o.hits.sum();
+            long calls = hits + o.misses.sum();
+            ratios.put(o.name, calls > 0 ? (double) hits / calls : 0);
+        }
+        return ratios;
+    }
+
+    @Override
+    public synchronized Map<String, Long> getHitCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (MethodCache o : caches.values()) {
+            counts.put(o.name, o.hits.sum());
+        }
+        return counts;
+    }
+
+    @Override
+    public synchronized Map<String, Long> getMissCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (MethodCache o : caches.values()) {
+            counts.put(o.name, o.misses.sum());
+        }
+        return counts;
+    }
+
+    @Override
+    public synchronized Map<String, Integer> getSizes() {
+        Map<String, Integer> sizes = new TreeMap<>();
+        for (MethodCache o : caches.values()) {
+            sizes.put(o.name, o.size());
+        }
+        return sizes;
+    }
+
+    @Override
+    public void clear() {
+        for (MethodCache o : cacheList) {
+            o.clear();
+        }
+    }
+
+
+    /**
+     * Results of one repository method by argument list. A result is only stored if the cache was not cleared since
+     * the call started, so a call racing a commit cannot store what the commit replaced.
+     */
+    static class MethodCache {
+        private final String name;
+        private final Class<?> domainType;
+        private final long ttlNanos;
+        private final LinkedHashMap<List<Object>, Entry> entries;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private long generation;
+
+        MethodCache(String name, Class<?> domainType, int maxEntries, int ttlSeconds) {
+            this.name = name;
+            this.domainType = domainType;
+            this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+            this.entries = new LinkedHashMap<List<Object>, Entry>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<Object>, Entry> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+        }
+
+        Class<?> getDomainType() {
+            return domainType;
+        }
+
+        /**
+         * @param key
+         * @return the cached entry, <code>null</code> on a miss
+         */
+        synchronized Entry get(List<Object> key) {
+            Entry entry = entries.get(key);
+            if (entry != null && ttlNanos > 0 && System.nanoTime() - entry.created > ttlNanos) {
+                entries.remove(key);
+                entry = null;
+            }
+            if (entry != null) {
+                hits.increment();
+            } else {
+                misses.increment();
+            }
+            return entry;
+        }
+
+        synchronized long getGeneration() {
+            return generation;
+        }
+
+        synchronized void put(List<Object> key, Object value, long generation) {
+            if (this.generation == generation) {
+                entries.put(key, new Entry(value));
+            }
+        }
+
+        synchronized void clear() {
+            entries.clear();
+            generation++;
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+
+
+    static class Entry {
+        private final Object value;
+        private final long created = System.nanoTime();
+
+        Entry(Object value) {
+            this.value = value;
+        }
+
+        Object getValue() {
+            return value;
+        }
+    }
+
+
+    private class InvalidatingListener implements PostCommitInsertEventListener, PostCommitUpdateEventListener,
+            PostCommitDeleteEventListener {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            invalidate(event.getPersister().getMappedClass());
+        }
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            invalidate(event.getPersister().getMappedClass());
+        }
+
+        @Override
+        public void onPostDelete(PostDeleteEvent event) {
+            invalidate(event.getPersister().getMappedClass());
+        }
+
+        @Override
+        public void onPostInsertCommitFailed(PostInsertEvent event) {
+        }
+
+        @Override
+        public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+        }
+
+        @Override
+        public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+        }
+
+        @Override
+        public boolean requiresPostCommitHanding(EntityPersister persister) {
+            return true;
+        }
+    }
+}
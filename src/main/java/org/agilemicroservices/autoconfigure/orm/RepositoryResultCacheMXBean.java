@@ -0,0 +1,25 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import java.util.Map;
+
+
+/**
+ * JMX view of the repository result cache of a persistence unit, keyed by <code>Repository.method</code>.
+ */
+public interface RepositoryResultCacheMXBean {
+
+    String getUnitName();
+
+    /**
+     * @return hits over calls, 0 for methods not yet called
+     */
+    Map<String, Double> getHitRatios();
+
+    Map<String, Long> getHitCounts();
+
+    Map<String, Long> getMissCounts();
+
+    Map<String, Integer> getSizes();
+
+    void clear();
+}
@@ -0,0 +1,143 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.Advised;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.repository.core.support.AbstractRepositoryMetadata;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManagerFactory;
+import java.lang.reflect.Method;
+import java.util.*;
+
+
+/**
+ * Serves the cached methods of the repository proxies of a persistence unit from its {@link RepositoryResultCache}.
+ * The advice is placed outermost, so hits skip transaction demarcation and, in a sharded unit, the fan-out. Calls made
+ * within a read-write transaction of the unit bypass the cache and see the transaction's own writes.
+ * <p>
+ * Save, delete and <code>@Modifying</code> methods of a cached repository also drop its domain type on commit, which
+ * covers bulk updates that Hibernate does not report per entity.
+ */
+public class RepositoryResultCachePostProcessor implements BeanPostProcessor, BeanFactoryAware {
+    private final String cacheBeanName;
+    private final String entityManagerFactoryBeanName;
+    private final Set<String> repositoryBeanNames;
+    private BeanFactory beanFactory;
+
+
+    public RepositoryResultCachePostProcessor(String cacheBeanName, String entityManagerFactoryBeanName,
+                                              Set<String> repositoryBeanNames) {
+        this.cacheBeanName = cacheBeanName;
+        this.entityManagerFactoryBeanName = entityManagerFactoryBeanName;
+        this.repositoryBeanNames = repositoryBeanNames;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        // the repository factory beans are skipped, only the proxies they produce are advised
+        if (bean instanceof Advised && repositoryBeanNames.contains(beanName)) {
+            Advised advised = (Advised) bean;
+            Class<?> repositoryInterface = advised.getProxiedInterfaces()[0];
+            Class<?> domainType = AbstractRepositoryMetadata.getMetadata(repositoryInterface).getDomainType();
+            RepositoryResultCache cache = beanFactory.getBean(cacheBeanName, RepositoryResultCache.class);
+            Map<Method, RepositoryResultCache.MethodCache> methodCaches = cache.createCaches(repositoryInterface,
+                    domainType);
+            if (!methodCaches.isEmpty()) {
+                EntityManagerFactory entityManagerFactory = beanFactory.getBean(entityManagerFactoryBeanName,
+                        EntityManagerFactory.class);
+                cache.listen(entityManagerFactory);
+                advised.addAdvice(0, new CachingInterceptor(cache, entityManagerFactory, domainType, methodCaches));
+            }
+        }
+        return bean;
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        this.beanFactory = beanFactory;
+    }
+
+
+    private static class CachingInterceptor implements MethodInterceptor {
+        private final RepositoryResultCache cache;
+        private final EntityManagerFactory entityManagerFactory;
+        private final Class<?> domainType;
+        private final Map<Method, RepositoryResultCache.MethodCache> methodCaches;
+
+        CachingInterceptor(RepositoryResultCache cache, EntityManagerFactory entityManagerFactory, Class<?> domainType,
+                           Map<Method, RepositoryResultCache.MethodCache> methodCaches) {
+            this.cache = cache;
+            this.entityManagerFactory = entityManagerFactory;
+            this.domainType = domainType;
+            this.methodCaches = methodCaches;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            Method method = invocation.getMethod();
+            RepositoryResultCache.MethodCache methodCache = methodCaches.get(method);
+            if (methodCache != null && !isReadWriteTransaction()) {
+                List<Object> key = keyOf(invocation.getArguments());
+                RepositoryResultCache.Entry entry = methodCache.get(key);
+                if (entry != null) {
+                    return entry.getValue();
+                }
+                long generation = methodCache.getGeneration();
+                Object result = invocation.proceed();
+                methodCache.put(key, result, generation);
+                return result;
+            }
+
+            Object result = invocation.proceed();
+            if (isWrite(method)) {
+                invalidateOnCommit();
+            }
+            return result;
+        }
+
+        private boolean isReadWriteTransaction() {
+            return TransactionSynchronizationManager.hasResource(entityManagerFactory)
+                    && !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        }
+
+        /**
+         * @return the arguments, array arguments compared by content, and the calling thread's tenant
+         */
+        private static List<Object> keyOf(Object[] arguments) {
+            List<Object> key = new ArrayList<>(arguments.length + 1);
+            key.add(TenantContext.getTenantId());
+            for (Object o : arguments) {
+                key.add(o instanceof Object[] ? Arrays.asList((Object[]) o) : o);
+            }
+            return key;
+        }
+
+        private static boolean isWrite(Method method) {
+            String name = method.getName();
+            return name.startsWith("save") || name.startsWith("delete") || name.startsWith("remove")
+                    || AnnotationUtils.findAnnotation(method, Modifying.class) != null;
+        }
+
+        private void invalidateOnCommit() {
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                    @Override
+                    public void afterCommit() {
+                        cache.invalidate(domainType);
+                    }
+                });
+            } else {
+                // the repository's own transaction has completed
+                cache.invalidate(domainType);
+            }
+        }
+    }
+}
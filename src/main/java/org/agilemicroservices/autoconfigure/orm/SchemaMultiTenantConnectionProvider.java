@@ -0,0 +1,133 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.hibernate.engine.jdbc.connections.spi.MultiTenantConnectionProvider;
+import org.hibernate.service.UnknownUnwrapTypeException;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+
+/**
+ * Serves every tenant of a multi-tenant persistence unit from the unit's single pool, switching each borrowed
+ * connection to the tenant's schema. The schema is named after the tenant and selected through
+ * <code>Connection.setSchema</code>, or through a statement such as <code>SET search_path TO %s</code> for drivers
+ * lacking it. Connections are returned to the pool switched back to the default schema.
+ */
+public class SchemaMultiTenantConnectionProvider implements MultiTenantConnectionProvider {
+    private static final long serialVersionUID = 1L;
+    private static final Pattern TENANT_ID_PATTERN = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private final String unitName;
+    private final DataSource dataSource;
+    private final String schemaStatement;
+    private final Set<String> tenantIds;
+    private volatile String defaultSchema;
+
+
+    /**
+     * @param unitName
+     * @param dataSource      pool of the unit
+     * @param defaultSchema   schema connections are returned in, <code>null</code> for the schema of the first
+     *                        connection borrowed
+     * @param schemaStatement format of the statement switching schemas, <code>null</code> to use
+     *                        <code>Connection.setSchema</code>
+     * @param tenantIds       tenants served, empty to serve any
+     */
+    public SchemaMultiTenantConnectionProvider(String unitName, DataSource dataSource, String defaultSchema,
+                                               String schemaStatement, Set<String> tenantIds) {
+        this.unitName = unitName;
+        this.dataSource = dataSource;
+        this.defaultSchema = defaultSchema;
+        this.schemaStatement = schemaStatement;
+        this.tenantIds = tenantIds;
+    }
+
+    @Override
+    public Connection getAnyConnection() throws SQLException {
+        Connection connection = dataSource.getConnection();
+        if (defaultSchema == null) {
+            try {
+                defaultSchema = connection.getSchema();
+            } catch (SQLException | RuntimeException | AbstractMethodError e) {
+                connection.close();
+                throw new SQLException("Failed determining default schema of persistence unit '" + unitName
+                        + "', set it explicitly.", e);
+            }
+        }
+        return connection;
+    }
+
+    @Override
+    public void releaseAnyConnection(Connection connection) throws SQLException {
+        connection.close();
+    }
+
+    @Override
+    public Connection getConnection(String tenantIdentifier) throws SQLException {
+        if (TenantIdentifierResolver.NO_TENANT.equals(tenantIdentifier)) {
+            throw new SQLException("No tenant set for multi-tenant persistence unit '" + unitName + "'.");
+        }
+        if (!TENANT_ID_PATTERN.matcher(tenantIdentifier).matches()
+                || (!tenantIds.isEmpty() && !tenantIds.contains(tenantIdentifier))) {
+            throw new SQLException("Unknown tenant '" + tenantIdentifier + "' of persistence unit '" + unitName
+                    + "'.");
+        }
+
+        Connection connection = getAnyConnection();
+        try {
+            switchSchema(connection, tenantIdentifier);
+        } catch (SQLException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+
+    @Override
+    public void releaseConnection(String tenantIdentifier, Connection connection) throws SQLException {
+        try {
+            if (defaultSchema != null) {
+                switchSchema(connection, defaultSchema);
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    private void switchSchema(Connection connection, String schema) throws SQLException {
+        if (schemaStatement == null) {
+            connection.setSchema(schema);
+            return;
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(String.format(schemaStatement, schema));
+        }
+    }
+
+    @Override
+    public boolean supportsAggressiveRelease() {
+        return false;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public boolean isUnwrappableAs(Class unwrapType) {
+        return unwrapType.isInstance(this) || unwrapType.isInstance(dataSource);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> unwrapType) {
+        if (unwrapType.isInstance(this)) {
+            return (T) this;
+        }
+        if (unwrapType.isInstance(dataSource)) {
+            return (T) dataSource;
+        }
+        throw new UnknownUnwrapTypeException(unwrapType);
+    }
+}
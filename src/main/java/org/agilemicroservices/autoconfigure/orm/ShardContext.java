@@ -0,0 +1,35 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+/**
+ * Shard of the calling thread, selecting the database connections of sharded persistence units are taken from.
+ * Repository calls on such units set it themselves, routed by {@link ShardRoutingInterceptor}.
+ */
+public final class ShardContext {
+    private static final ThreadLocal<Integer> SHARD = new ThreadLocal<>();
+
+
+    private ShardContext() {
+    }
+
+    /**
+     * @return shard of the calling thread, <code>null</code> if none is set
+     */
+    public static Integer getShard() {
+        return SHARD.get();
+    }
+
+    /**
+     * @param shard shard of the calling thread, <code>null</code> to clear it
+     */
+    public static void setShard(Integer shard) {
+        if (shard == null) {
+            SHARD.remove();
+        } else {
+            SHARD.set(shard);
+        }
+    }
+
+    public static void clear() {
+        SHARD.remove();
+    }
+}
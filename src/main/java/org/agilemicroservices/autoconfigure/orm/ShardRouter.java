@@ -0,0 +1,111 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Maps shard keys to the shards of a sharded persistence unit and runs work across shards in parallel. A key belongs
+ * to shard <code>floorMod(key.hashCode(), shardCount)</code>, so keys must hash alike in every JVM, as numbers, strings
+ * and UUIDs do, and the shard count cannot change without moving data.
+ */
+public class ShardRouter implements DisposableBean {
+    private final String unitName;
+    private final ShardRoutingDataSource routingDataSource;
+    private final ExecutorService executor;
+
+
+    public ShardRouter(String unitName, ShardRoutingDataSource routingDataSource) {
+        this.unitName = unitName;
+        this.routingDataSource = routingDataSource;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "orm-" + unitName + "-shard-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public String getUnitName() {
+        return unitName;
+    }
+
+    public int getShardCount() {
+        return routingDataSource.getShardCount();
+    }
+
+    /**
+     * @param key
+     * @return shard holding the key
+     */
+    public int shardOf(Object key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Cannot route a null shard key in persistence unit '" + unitName
+                    + "'.");
+        }
+        return Math.floorMod(key.hashCode(), getShardCount());
+    }
+
+    /**
+     * @return shard the current transaction of the unit is bound to, <code>null</code> if none
+     */
+    public Integer getTransactionShard() {
+        return routingDataSource.getTransactionShard();
+    }
+
+    /**
+     * Binds the current transaction of the unit to a shard, unless it already is.
+     *
+     * @param shard
+     */
+    public void bindTransactionShard(int shard) {
+        routingDataSource.bindTransactionShard(shard);
+    }
+
+    /**
+     * Runs tasks concurrently, each on its own thread, waiting for all of them.
+     *
+     * @param tasks
+     * @return results in the order of the tasks
+     * @throws Throwable the failure of the first failed task, once all tasks completed
+     */
+    <T> List<T> invokeAll(List<Callable<T>> tasks) throws Throwable {
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        for (Callable<T> o : tasks) {
+            futures.add(executor.submit(o));
+        }
+
+        List<T> results = new ArrayList<>(tasks.size());
+        Throwable failure = null;
+        try {
+            for (Future<T> o : futures) {
+                try {
+                    results.add(o.get());
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            for (Future<T> o : futures) {
+                o.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+}
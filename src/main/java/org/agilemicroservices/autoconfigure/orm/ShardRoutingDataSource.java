@@ -0,0 +1,79 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+
+/**
+ * Routes connections to the pool of the shard set in the {@link ShardContext}, or of shard 0 when none is set, as by
+ * Hibernate at startup. A transaction stays on the shard it is bound to, by the repository call first routed within it
+ * or else by its first connection, until it completes. The shard is only known once a repository call has selected
+ * it, so this DataSource must sit behind a {@link LazyConnectionDataSourceProxy} that defers fetching the connection
+ * to the first statement.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+    private final String unitName;
+    private final int shardCount;
+
+
+    /**
+     * @param unitName
+     * @param shardCount shards, keyed 0 to <code>shardCount - 1</code> in the target DataSources
+     */
+    public ShardRoutingDataSource(String unitName, int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("At least one shard is required in persistence unit '" + unitName
+                    + "'.");
+        }
+        this.unitName = unitName;
+        this.shardCount = shardCount;
+    }
+
+    public String getUnitName() {
+        return unitName;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * @return shard the current transaction's connection belongs to, <code>null</code> if none or not yet connected
+     */
+    public Integer getTransactionShard() {
+        return (Integer) TransactionSynchronizationManager.getResource(this);
+    }
+
+    /**
+     * Binds the current transaction to a shard before it connects, so that statements deferred to the flush, such as
+     * the INSERT of a persisted entity, run on the shard of the repository call that queued them.
+     *
+     * @param shard
+     */
+    public void bindTransactionShard(int shard) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()
+                && !TransactionSynchronizationManager.hasResource(this)) {
+            TransactionSynchronizationManager.bindResource(this, shard);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(ShardRoutingDataSource.this);
+                }
+            });
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Integer transactionShard = getTransactionShard();
+        if (transactionShard != null) {
+            return transactionShard;
+        }
+        Integer shard = ShardContext.getShard();
+        int key = shard != null ? shard : 0;
+        bindTransactionShard(key);
+        return key;
+    }
+}
@@ -0,0 +1,379 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.data.domain.*;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.parser.PartTree;
+import org.springframework.data.util.DirectFieldAccessFallbackBeanWrapper;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManagerFactory;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
+
+
+/**
+ * Routes the calls on a repository of a sharded persistence unit. Calls on one entity, by id or by the entity whose
+ * id is its shard key, run on the caller's thread against the entity's shard. Calls on several entities are split by
+ * shard, and all other calls are run on every shard; either way the shards are called in parallel, each in a
+ * transaction of its own, and their results merged.
+ * <p>
+ * Merged collections and pages are sorted by the call's <code>Sort</code> or <code>Pageable</code>, or by the
+ * <code>OrderBy</code> clause of a derived query, and cut to the page or to the <code>Top</code>/<code>First</code>
+ * limit of the query. Single results of a <code>Top</code>/<code>First</code> query are the first of the shards'
+ * results in that order. Counts are summed and <code>exists</code> queries true on any shard. Other single results
+ * must be found on at most one shard. Writes spanning shards are refused within a transaction of the unit, which could
+ * not include them. Reads spanning shards within such a transaction run in transactions of their own as well, so they
+ * do not see its uncommitted writes.
+ */
+public class ShardRoutingInterceptor implements MethodInterceptor {
+    private static final Set<String> ID_METHODS = new HashSet<>(Arrays.asList(
+            "findById", "existsById", "deleteById", "getOne"));
+    private static final Set<String> ENTITY_METHODS = new HashSet<>(Arrays.asList(
+            "save", "saveAndFlush", "delete"));
+    private static final Set<String> ENTITIES_METHODS = new HashSet<>(Arrays.asList(
+            "saveAll", "deleteAll", "deleteInBatch"));
+    private static final String IDS_METHOD = "findAllById";
+
+    private final String unitName;
+    private final ShardRouter router;
+    private final EntityManagerFactory entityManagerFactory;
+    private final Class<?> domainType;
+    private final ConcurrentMap<Method, Optional<PartTree>> partTrees = new ConcurrentHashMap<>();
+
+
+    public ShardRoutingInterceptor(String unitName, ShardRouter router, EntityManagerFactory entityManagerFactory,
+                                   Class<?> domainType) {
+        this.unitName = unitName;
+        this.router = router;
+        this.entityManagerFactory = entityManagerFactory;
+        this.domainType = domainType;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        Method method = invocation.getMethod();
+        Object[] args = invocation.getArguments();
+        String name = method.getName();
+        if (method.getDeclaringClass() == Object.class || "flush".equals(name)) {
+            return invocation.proceed();
+        }
+
+        if (args.length == 1) {
+            if (ID_METHODS.contains(name)) {
+                return proceedOn(router.shardOf(args[0]), invocation);
+            }
+            if (ENTITY_METHODS.contains(name) && !(args[0] instanceof Iterable)) {
+                return proceedOn(shardOfEntity(args[0]), invocation);
+            }
+            if (args[0] instanceof Iterable && (IDS_METHOD.equals(name) || ENTITIES_METHODS.contains(name))) {
+                return invokeGrouped(invocation, IDS_METHOD.equals(name));
+            }
+        }
+        return invokeAll(invocation);
+    }
+
+    private int shardOfEntity(Object entity) {
+        Object id = entityManagerFactory.getPersistenceUnitUtil().getIdentifier(entity);
+        if (id == null) {
+            throw new IllegalArgumentException("Entity " + entity.getClass().getName() + " has no id to route it by "
+                    + "in sharded persistence unit '" + unitName + "', ids must be assigned before saving.");
+        }
+        return router.shardOf(id);
+    }
+
+    private Object proceedOn(int shard, MethodInvocation invocation) throws Throwable {
+        Integer transactionShard = router.getTransactionShard();
+        if (transactionShard != null && transactionShard != shard) {
+            throw new IllegalStateException("Transaction of persistence unit '" + unitName + "' is bound to shard "
+                    + transactionShard + ", cannot access shard " + shard + ".");
+        }
+        if (transactionShard == null && TransactionSynchronizationManager.hasResource(entityManagerFactory)) {
+            // a persist or a proxy runs no statement until the flush, which must reach this shard as well
+            router.bindTransactionShard(shard);
+        }
+
+        Integer previous = ShardContext.getShard();
+        ShardContext.setShard(shard);
+        try {
+            return invocation.proceed();
+        } finally {
+            ShardContext.setShard(previous);
+        }
+    }
+
+    /**
+     * Splits the entities or ids of the call by shard, running the call on the caller's thread when all belong to one.
+     */
+    private Object invokeGrouped(MethodInvocation invocation, boolean byId) throws Throwable {
+        Map<Integer, List<Object>> groups = new TreeMap<>();
+        for (Object o : (Iterable<?>) invocation.getArguments()[0]) {
+            groups.computeIfAbsent(byId ? router.shardOf(o) : shardOfEntity(o), k -> new ArrayList<>()).add(o);
+        }
+        if (groups.size() == 1) {
+            Map.Entry<Integer, List<Object>> group = groups.entrySet().iterator().next();
+            return proceedOn(group.getKey(), cloneOf(invocation, new Object[]{group.getValue()}));
+        }
+        if (!byId) {
+            checkNoUnitTransaction(invocation.getMethod());
+        }
+
+        List<Callable<Object>> tasks = new ArrayList<>();
+        for (Map.Entry<Integer, List<Object>> o : groups.entrySet()) {
+            tasks.add(task(o.getKey(), cloneOf(invocation, new Object[]{o.getValue()})));
+        }
+        List<Object> results = router.invokeAll(tasks);
+        if (invocation.getMethod().getReturnType() == void.class) {
+            return null;
+        }
+        return concat(results);
+    }
+
+    private Object invokeAll(MethodInvocation invocation) throws Throwable {
+        Method method = invocation.getMethod();
+        Class<?> returnType = method.getReturnType();
+        if (Stream.class.isAssignableFrom(returnType)) {
+            throw new UnsupportedOperationException("Streaming query " + method.getName() + " cannot span the shards "
+                    + "of persistence unit '" + unitName + "'.");
+        }
+        if (isWrite(method)) {
+            checkNoUnitTransaction(method);
+        }
+
+        // each shard returns everything up to the end of the page, which is cut once merged
+        Object[] args = invocation.getArguments();
+        Pageable pageable = Pageable.unpaged();
+        Sort sort = Sort.unsorted();
+        int pageableIndex = -1;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] instanceof Pageable) {
+                pageable = (Pageable) args[i];
+                pageableIndex = i;
+                sort = pageable.getSort();
+            } else if (args[i] instanceof Sort) {
+                sort = (Sort) args[i];
+            }
+        }
+        PartTree partTree = partTreeOf(method);
+        if (sort.isUnsorted() && partTree != null) {
+            sort = partTree.getSort();
+        }
+
+        List<Callable<Object>> tasks = new ArrayList<>();
+        for (int i = 0; i < router.getShardCount(); i++) {
+            Object[] shardArgs = args.clone();
+            if (pageableIndex >= 0 && pageable.isPaged()) {
+                shardArgs[pageableIndex] = PageRequest.of(0, (int) pageable.getOffset() + pageable.getPageSize(),
+                        pageable.getSort());
+            }
+            tasks.add(task(i, cloneOf(invocation, shardArgs)));
+        }
+        List<Object> results = router.invokeAll(tasks);
+        return merge(method, results, pageable, sort, partTree);
+    }
+
+    private Callable<Object> task(int shard, MethodInvocation invocation) {
+        // the shard's work runs as the calling tenant
+        String tenantId = TenantContext.getTenantId();
+        return () -> {
+            TenantContext.setTenantId(tenantId);
+            try {
+                return proceedOn(shard, invocation);
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new UndeclaredThrowableException(e);
+            } finally {
+                TenantContext.clear();
+            }
+        };
+    }
+
+    private static MethodInvocation cloneOf(MethodInvocation invocation, Object[] args) {
+        if (!(invocation instanceof ProxyMethodInvocation)) {
+            throw new IllegalStateException("Cannot route " + invocation.getMethod() + " across shards.");
+        }
+        return ((ProxyMethodInvocation) invocation).invocableClone(args);
+    }
+
+    private static boolean isWrite(Method method) {
+        String name = method.getName();
+        return name.startsWith("save") || name.startsWith("delete") || name.startsWith("remove")
+                || AnnotationUtils.findAnnotation(method, Modifying.class) != null;
+    }
+
+    private void checkNoUnitTransaction(Method method) {
+        if (TransactionSynchronizationManager.hasResource(entityManagerFactory)) {
+            throw new IllegalStateException("Cannot run " + method.getName() + " across the shards of persistence "
+                    + "unit '" + unitName + "' within a transaction.");
+        }
+    }
+
+    private PartTree partTreeOf(Method method) {
+        return partTrees.computeIfAbsent(method, o -> {
+            if (AnnotationUtils.findAnnotation(o, Query.class) != null) {
+                return Optional.empty();
+            }
+            try {
+                return Optional.of(new PartTree(o.getName(), domainType));
+            } catch (RuntimeException e) {
+                // not a derived query
+                return Optional.empty();
+            }
+        }).orElse(null);
+    }
+
+
+    private Object merge(Method method, List<Object> results, Pageable pageable, Sort sort, PartTree partTree) {
+        Class<?> type = method.getReturnType();
+        String name = method.getName();
+        if (type == void.class) {
+            return null;
+        }
+
+        if (Page.class.isAssignableFrom(type)) {
+            List<Object> content = new ArrayList<>();
+            long total = 0;
+            for (Object o : results) {
+                content.addAll(((Page<?>) o).getContent());
+                total += ((Page<?>) o).getTotalElements();
+            }
+            return new PageImpl<>(pageOf(sorted(content, sort), pageable), pageable, total);
+        }
+        if (Slice.class.isAssignableFrom(type)) {
+            List<Object> content = new ArrayList<>();
+            boolean hasNext = false;
+            for (Object o : results) {
+                content.addAll(((Slice<?>) o).getContent());
+                hasNext |= ((Slice<?>) o).hasNext();
+            }
+            hasNext |= pageable.isPaged() && content.size() > pageable.getOffset() + pageable.getPageSize();
+            return new SliceImpl<>(pageOf(sorted(content, sort), pageable), pageable, hasNext);
+        }
+        if (Iterable.class.isAssignableFrom(type)) {
+            List<Object> content = sorted(concat(results), sort);
+            Integer maxResults = partTree != null ? partTree.getMaxResults() : null;
+            if (maxResults != null && content.size() > maxResults) {
+                content = new ArrayList<>(content.subList(0, maxResults));
+            }
+            return Set.class.isAssignableFrom(type) ? new LinkedHashSet<>(content) : content;
+        }
+
+        if ((name.startsWith("count") || name.startsWith("delete") || name.startsWith("remove"))
+                && (type == long.class || type == Long.class || type == int.class || type == Integer.class)) {
+            long sum = 0;
+            for (Object o : results) {
+                sum += o != null ? ((Number) o).longValue() : 0;
+            }
+            return type == long.class || type == Long.class ? (Object) sum : (Object) (int) sum;
+        }
+        if (name.startsWith("exists") && (type == boolean.class || type == Boolean.class)) {
+            return results.contains(Boolean.TRUE);
+        }
+
+        List<Object> found = new ArrayList<>();
+        for (Object o : results) {
+            Object value = o instanceof Optional ? ((Optional<?>) o).orElse(null) : o;
+            if (value != null) {
+                found.add(value);
+            }
+        }
+        if (found.isEmpty()) {
+            return type == Optional.class ? Optional.empty() : null;
+        }
+        int foundCount = found.size();
+        if (foundCount > 1 && partTree != null && partTree.isLimiting()) {
+            // each shard returned its first, the first across shards is the first of those
+            found = sorted(found, sort);
+        } else if (foundCount > 1) {
+            throw new IncorrectResultSizeDataAccessException("Query " + name + " found results on " + foundCount
+                    + " shards of persistence unit '" + unitName + "'.", 1, foundCount);
+        }
+        return type == Optional.class ? Optional.of(found.get(0)) : found.get(0);
+    }
+
+    private static List<Object> concat(List<Object> results) {
+        List<Object> content = new ArrayList<>();
+        for (Object o : results) {
+            if (o != null) {
+                for (Object j : (Iterable<?>) o) {
+                    content.add(j);
+                }
+            }
+        }
+        return content;
+    }
+
+    private static List<Object> pageOf(List<Object> content, Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            return content;
+        }
+        int from = (int) Math.min(content.size(), pageable.getOffset());
+        int to = (int) Math.min(content.size(), pageable.getOffset() + pageable.getPageSize());
+        return new ArrayList<>(content.subList(from, to));
+    }
+
+    /**
+     * Sorts in memory by the properties of the sort, read once per element.
+     */
+    private static List<Object> sorted(List<Object> content, Sort sort) {
+        if (sort.isUnsorted() || content.size() < 2) {
+            return content;
+        }
+
+        List<Sort.Order> orders = new ArrayList<>();
+        sort.forEach(orders::add);
+        List<Object[]> keyed = new ArrayList<>(content.size());
+        for (Object o : content) {
+            DirectFieldAccessFallbackBeanWrapper wrapper = new DirectFieldAccessFallbackBeanWrapper(o);
+            Object[] entry = new Object[orders.size() + 1];
+            for (int i = 0; i < orders.size(); i++) {
+                entry[i] = wrapper.getPropertyValue(orders.get(i).getProperty());
+            }
+            entry[orders.size()] = o;
+            keyed.add(entry);
+        }
+
+        keyed.sort((a, b) -> {
+            for (int i = 0; i < orders.size(); i++) {
+                int result = compare(a[i], b[i], orders.get(i));
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return 0;
+        });
+
+        List<Object> result = new ArrayList<>(keyed.size());
+        for (Object[] o : keyed) {
+            result.add(o[orders.size()]);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Object a, Object b, Sort.Order order) {
+        if (a == null || b == null) {
+            if (a == b) {
+                return 0;
+            }
+            boolean nullsFirst = order.getNullHandling() == Sort.NullHandling.NULLS_FIRST;
+            return (a == null) == nullsFirst ? -1 : 1;
+        }
+
+        int result = order.isIgnoreCase() && a instanceof String && b instanceof String
+                ? ((String) a).compareToIgnoreCase((String) b)
+                : ((Comparable<Object>) a).compareTo(b);
+        return order.isAscending() ? result : -result;
+    }
+}
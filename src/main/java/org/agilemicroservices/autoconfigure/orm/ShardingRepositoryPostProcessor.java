@@ -0,0 +1,52 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.springframework.aop.framework.Advised;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.core.support.AbstractRepositoryMetadata;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Set;
+
+
+/**
+ * Routes the calls on the repository proxies of a sharded persistence unit through a {@link ShardRoutingInterceptor},
+ * placed ahead of the transaction advice so that each shard's work runs in a transaction of its own.
+ */
+public class ShardingRepositoryPostProcessor implements BeanPostProcessor, BeanFactoryAware {
+    private final String unitName;
+    private final String shardRouterBeanName;
+    private final String entityManagerFactoryBeanName;
+    private final Set<String> repositoryBeanNames;
+    private BeanFactory beanFactory;
+
+
+    public ShardingRepositoryPostProcessor(String unitName, String shardRouterBeanName,
+                                           String entityManagerFactoryBeanName, Set<String> repositoryBeanNames) {
+        this.unitName = unitName;
+        this.shardRouterBeanName = shardRouterBeanName;
+        this.entityManagerFactoryBeanName = entityManagerFactoryBeanName;
+        this.repositoryBeanNames = repositoryBeanNames;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        // the repository factory beans are skipped, only the proxies they produce are advised
+        if (bean instanceof Advised && repositoryBeanNames.contains(beanName)) {
+            Advised advised = (Advised) bean;
+            Class<?>[] interfaces = advised.getProxiedInterfaces();
+            Class<?> domainType = AbstractRepositoryMetadata.getMetadata(interfaces[0]).getDomainType();
+            advised.addAdvice(0, new ShardRoutingInterceptor(unitName,
+                    beanFactory.getBean(shardRouterBeanName, ShardRouter.class),
+                    beanFactory.getBean(entityManagerFactoryBeanName, EntityManagerFactory.class), domainType));
+        }
+        return bean;
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        this.beanFactory = beanFactory;
+    }
+}
@@ -0,0 +1,271 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+
+/**
+ * Statement statistics of a persistence unit, recorded by {@link SqlStatisticsDataSource}. Statements are aggregated
+ * by fingerprint, their SQL with literals replaced by <code>?</code>, so that executions differing only in their
+ * values count together.
+ * <p>
+ * Within a transaction, a fingerprint executed more often than the repeat threshold, the signature of an N+1 select,
+ * is logged along with the calling application code and counted against the fingerprint. Statements running longer
+ * than the slow threshold are logged to the <code>org.agilemicroservices.autoconfigure.orm.SqlStatistics.slow</code>
+ * category.
+ */
+public class SqlStatistics implements SqlStatisticsMXBean {
+    private static final Logger logger = LoggerFactory.getLogger(SqlStatistics.class);
+    private static final Logger slowLogger = LoggerFactory.getLogger(SqlStatistics.class.getName() + ".slow");
+    public static final String OBJECT_NAME_PREFIX = "org.agilemicroservices.orm:type=SqlStatistics,unit=";
+    /**
+     * Fingerprint under which statements are counted once {@value #MAX_FINGERPRINTS} distinct ones are tracked.
+     */
+    public static final String OTHER = "(other)";
+    static final int MAX_FINGERPRINTS = 1000;
+    private static final int MAX_CACHED_SQL = 10000;
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(\\s*,\\s*\\?)+\\s*\\)");
+    private static final String[] FRAMEWORK_PACKAGES = {"java.", "javax.", "sun.", "com.sun.", "jdk.",
+            "org.hibernate.", "org.springframework.", "org.codehaus.groovy.", "groovy.", "com.zaxxer.",
+            "com.mchange.", SqlStatistics.class.getPackage().getName() + "."};
+
+    private final String unitName;
+    private final int repeatThreshold;
+    private final long slowThresholdNanos;
+    private final ConcurrentMap<String, String> fingerprintsBySql = new ConcurrentHashMap<>();
+    private volatile ConcurrentMap<String, Fingerprint> fingerprints = new ConcurrentHashMap<>();
+    private final LongAdder slowCount = new LongAdder();
+
+
+    /**
+     * @param unitName
+     * @param repeatThreshold     executions of one fingerprint allowed per transaction, 0 not to check
+     * @param slowThresholdMillis duration above which statements are logged, 0 not to log
+     */
+    public SqlStatistics(String unitName, int repeatThreshold, long slowThresholdMillis) {
+        if (repeatThreshold < 0 || slowThresholdMillis < 0) {
+            throw new IllegalArgumentException("Invalid repeat threshold " + repeatThreshold + " or slow threshold "
+                    + slowThresholdMillis + " ms in persistence unit '" + unitName + "'.");
+        }
+        this.unitName = unitName;
+        this.repeatThreshold = repeatThreshold;
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+    }
+
+    /**
+     * Normalizes a statement: string and numeric literals become <code>?</code>, lists of parameters in parentheses
+     * collapse to one and runs of whitespace to a single space.
+     *
+     * @param sql
+     * @return
+     */
+    static String normalize(String sql) {
+        StringBuilder sb = new StringBuilder(sql.length());
+        int length = sql.length();
+        for (int i = 0; i < length; i++) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                // '' escapes a quote within the literal
+                i++;
+                while (i < length && (sql.charAt(i) != '\'' || (i + 1 < length && sql.charAt(i + 1) == '\''))) {
+                    i += sql.charAt(i) == '\'' ? 2 : 1;
+                }
+                sb.append('?');
+            } else if (Character.isDigit(c) && !isIdentifierPart(sb)) {
+                while (i + 1 < length && (Character.isLetterOrDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '.')) {
+                    i++;
+                }
+                sb.append('?');
+            } else if (Character.isWhitespace(c)) {
+                if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ' ') {
+                    sb.append(' ');
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        int end = sb.length();
+        if (end > 0 && sb.charAt(end - 1) == ' ') {
+            sb.setLength(end - 1);
+        }
+        return IN_LIST.matcher(sb).replaceAll("(?)");
+    }
+
+    private static boolean isIdentifierPart(StringBuilder sb) {
+        if (sb.length() == 0) {
+            return false;
+        }
+        char c = sb.charAt(sb.length() - 1);
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '"' || c == '`';
+    }
+
+    /**
+     * @param sql
+     * @return the statistics of the statement's fingerprint
+     */
+    Fingerprint fingerprint(String sql) {
+        String fingerprint = fingerprintsBySql.get(sql);
+        if (fingerprint == null) {
+            fingerprint = normalize(sql);
+            if (fingerprintsBySql.size() < MAX_CACHED_SQL) {
+                fingerprintsBySql.putIfAbsent(sql, fingerprint);
+            }
+        }
+
+        ConcurrentMap<String, Fingerprint> current = fingerprints;
+        Fingerprint result = current.get(fingerprint);
+        if (result == null) {
+            String key = current.size() < MAX_FINGERPRINTS ? fingerprint : OTHER;
+            result = current.computeIfAbsent(key, Fingerprint::new);
+        }
+        return result;
+    }
+
+    /**
+     * Records an execution, on the thread running it so that it is attributed to the thread's transaction.
+     *
+     * @param fingerprint
+     * @param sql         the statement as executed, for the slow log
+     * @param nanos
+     * @param rows        rows changed, further rows read being added as they are fetched
+     */
+    void recordExecution(Fingerprint fingerprint, String sql, long nanos, long rows) {
+        fingerprint.latency.record(nanos);
+        fingerprint.nanos.add(nanos);
+        if (rows > 0) {
+            fingerprint.rows.add(rows);
+        }
+
+        if (slowThresholdNanos > 0 && nanos > slowThresholdNanos) {
+            slowCount.increment();
+            slowLogger.warn("Statement of persistence unit '{}' took {} ms: {}", unitName,
+                    TimeUnit.NANOSECONDS.toMillis(nanos), sql);
+        }
+
+        if (repeatThreshold > 0 && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionStatements statements = (TransactionStatements) TransactionSynchronizationManager
+                    .getResource(this);
+            if (statements == null) {
+                statements = new TransactionStatements();
+                TransactionSynchronizationManager.bindResource(this, statements);
+                TransactionSynchronizationManager.registerSynchronization(statements);
+            }
+            if (statements.increment(fingerprint.fingerprint) == repeatThreshold + 1) {
+                fingerprint.repeatedTransactions.increment();
+                logger.warn("Transaction {}in persistence unit '{}' ran more than {} times, from {}: {}",
+                        transactionName(), unitName, repeatThreshold, caller(), fingerprint.fingerprint);
+            }
+        }
+    }
+
+    private static String transactionName() {
+        String name = TransactionSynchronizationManager.getCurrentTransactionName();
+        return name != null ? "'" + name + "' " : "";
+    }
+
+    /**
+     * @return the innermost application frame of the calling thread
+     */
+    private static String caller() {
+        for (StackTraceElement o : new Throwable().getStackTrace()) {
+            if (!isFramework(o.getClassName())) {
+                return o.toString();
+            }
+        }
+        return "unknown";
+    }
+
+    private static boolean isFramework(String className) {
+        for (String o : FRAMEWORK_PACKAGES) {
+            if (className.startsWith(o)) {
+                return true;
+            }
+        }
+        return className.contains("$Proxy");
+    }
+
+
+    @Override
+    public String getUnitName() {
+        return unitName;
+    }
+
+    @Override
+    public long getStatementCount() {
+        long count = 0;
+        for (Fingerprint o : fingerprints.values()) {
+            count += o.latency.getCount();
+        }
+        return count;
+    }
+
+    @Override
+    public long getSlowStatementCount() {
+        return slowCount.sum();
+    }
+
+    @Override
+    public List<StatementStatistics> getStatements() {
+        List<StatementStatistics> result = new ArrayList<>();
+        for (Fingerprint o : fingerprints.values()) {
+            result.add(new StatementStatistics(o.fingerprint, o.latency.getCount(), o.nanos.sum() / 1e6,
+                    o.latency.snapshot(), o.rows.sum(), o.repeatedTransactions.sum()));
+        }
+        result.sort(Comparator.comparingDouble(StatementStatistics::getTotalMillis).reversed());
+        return result;
+    }
+
+    /**
+     * Discards the recorded statistics. Statements in flight may be recorded against either side of the reset.
+     */
+    @Override
+    public void reset() {
+        fingerprints = new ConcurrentHashMap<>();
+        slowCount.reset();
+    }
+
+
+    /**
+     * Running totals of one fingerprint.
+     */
+    static class Fingerprint {
+        final String fingerprint;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder nanos = new LongAdder();
+        final LongAdder rows = new LongAdder();
+        final LongAdder repeatedTransactions = new LongAdder();
+
+        Fingerprint(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        void addRow() {
+            rows.increment();
+        }
+    }
+
+    /**
+     * Executions per fingerprint within the current transaction, bound to it until it completes.
+     */
+    private class TransactionStatements extends TransactionSynchronizationAdapter {
+        private final Map<String, Integer> counts = new HashMap<>();
+
+        int increment(String fingerprint) {
+            return counts.merge(fingerprint, 1, Integer::sum);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(SqlStatistics.this);
+        }
+    }
+}
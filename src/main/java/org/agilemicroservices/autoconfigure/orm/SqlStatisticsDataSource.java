@@ -0,0 +1,234 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+
+
+/**
+ * Records the statements executed on a unit's connections into its {@link SqlStatistics}. Connections, statements
+ * and result sets are wrapped in proxies that time each execution and count the rows it changes or reads.
+ */
+public class SqlStatisticsDataSource extends DelegatingDataSource {
+    private final SqlStatistics statistics;
+
+
+    public SqlStatisticsDataSource(DataSource targetDataSource, SqlStatistics statistics) {
+        super(targetDataSource);
+        this.statistics = statistics;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return proxy(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return proxy(super.getConnection(username, password));
+    }
+
+    private Connection proxy(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(SqlStatisticsDataSource.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionHandler(connection));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the method is handled, with its result in <code>result[0]</code>
+     */
+    private static boolean invokeObjectMethod(Object proxy, Method method, Object[] args, Object[] result) {
+        switch (method.getName()) {
+            case "equals":
+                result[0] = proxy == args[0];
+                return true;
+            case "hashCode":
+                result[0] = System.identityHashCode(proxy);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+
+    private class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+
+        ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object[] result = new Object[1];
+            if (invokeObjectMethod(proxy, method, args, result)) {
+                return result[0];
+            }
+
+            Object value = SqlStatisticsDataSource.invoke(target, method, args);
+            switch (method.getName()) {
+                case "createStatement":
+                    return proxy((Connection) proxy, (Statement) value, Statement.class, null);
+                case "prepareStatement":
+                    return proxy((Connection) proxy, (Statement) value, PreparedStatement.class, (String) args[0]);
+                case "prepareCall":
+                    return proxy((Connection) proxy, (Statement) value, CallableStatement.class, (String) args[0]);
+                default:
+                    return value;
+            }
+        }
+
+        private Object proxy(Connection connection, Statement statement, Class<?> type, String sql) {
+            return Proxy.newProxyInstance(SqlStatisticsDataSource.class.getClassLoader(), new Class<?>[]{type},
+                    new StatementHandler(connection, statement, sql));
+        }
+    }
+
+    private class StatementHandler implements InvocationHandler {
+        private final Connection connection;
+        private final Statement target;
+        private final String preparedSql;
+        private SqlStatistics.Fingerprint preparedFingerprint;
+        private String batchSql;
+        private SqlStatistics.Fingerprint lastFingerprint;
+
+        /**
+         * @param connection proxy of the statement's connection
+         * @param target
+         * @param preparedSql SQL of a prepared statement, <code>null</code> for a plain one
+         */
+        StatementHandler(Connection connection, Statement target, String preparedSql) {
+            this.connection = connection;
+            this.target = target;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object[] result = new Object[1];
+            if (invokeObjectMethod(proxy, method, args, result)) {
+                return result[0];
+            }
+
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                return execute((Statement) proxy, method, args);
+            }
+            if ("addBatch".equals(name) && args != null && args.length == 1 && batchSql == null) {
+                batchSql = (String) args[0];
+            }
+
+            Object value = SqlStatisticsDataSource.invoke(target, method, args);
+            switch (name) {
+                case "getConnection":
+                    return connection;
+                case "getResultSet":
+                    return value != null ? proxy((Statement) proxy, (ResultSet) value, lastFingerprint) : null;
+                case "getGeneratedKeys":
+                    // keys are not rows read by the statement
+                    return value != null ? proxy((Statement) proxy, (ResultSet) value, null) : null;
+                case "clearBatch":
+                    batchSql = null;
+                    return value;
+                default:
+                    return value;
+            }
+        }
+
+        private Object execute(Statement proxy, Method method, Object[] args) throws Throwable {
+            String sql;
+            SqlStatistics.Fingerprint fingerprint;
+            if (args != null && args.length > 0 && args[0] instanceof String) {
+                sql = (String) args[0];
+                fingerprint = statistics.fingerprint(sql);
+            } else if (preparedSql != null) {
+                sql = preparedSql;
+                if (preparedFingerprint == null) {
+                    preparedFingerprint = statistics.fingerprint(sql);
+                }
+                fingerprint = preparedFingerprint;
+            } else {
+                sql = batchSql;
+                fingerprint = sql != null ? statistics.fingerprint(sql) : null;
+            }
+            lastFingerprint = fingerprint;
+
+            long start = System.nanoTime();
+            Object value = SqlStatisticsDataSource.invoke(target, method, args);
+            long nanos = System.nanoTime() - start;
+            if ("executeBatch".equals(method.getName()) || "executeLargeBatch".equals(method.getName())) {
+                batchSql = null;
+            }
+            if (fingerprint != null) {
+                statistics.recordExecution(fingerprint, sql, nanos, updateCount(value));
+            }
+            return value instanceof ResultSet ? proxy(proxy, (ResultSet) value, fingerprint) : value;
+        }
+
+        private long updateCount(Object value) {
+            long rows = 0;
+            if (value instanceof Number) {
+                rows = ((Number) value).longValue();
+            } else if (value instanceof int[]) {
+                for (int o : (int[]) value) {
+                    rows += Math.max(0, o);
+                }
+            } else if (value instanceof long[]) {
+                for (long o : (long[]) value) {
+                    rows += Math.max(0, o);
+                }
+            }
+            return Math.max(0, rows);
+        }
+
+        private ResultSet proxy(Statement statement, ResultSet resultSet, SqlStatistics.Fingerprint fingerprint) {
+            return (ResultSet) Proxy.newProxyInstance(SqlStatisticsDataSource.class.getClassLoader(),
+                    new Class<?>[]{ResultSet.class}, new ResultSetHandler(statement, resultSet, fingerprint));
+        }
+    }
+
+    private static class ResultSetHandler implements InvocationHandler {
+        private final Statement statement;
+        private final ResultSet target;
+        private final SqlStatistics.Fingerprint fingerprint;
+
+        ResultSetHandler(Statement statement, ResultSet target, SqlStatistics.Fingerprint fingerprint) {
+            this.statement = statement;
+            this.target = target;
+            this.fingerprint = fingerprint;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object[] result = new Object[1];
+            if (invokeObjectMethod(proxy, method, args, result)) {
+                return result[0];
+            }
+
+            Object value = SqlStatisticsDataSource.invoke(target, method, args);
+            switch (method.getName()) {
+                case "next":
+                    if (fingerprint != null && Boolean.TRUE.equals(value)) {
+                        fingerprint.addRow();
+                    }
+                    return value;
+                case "getStatement":
+                    return statement;
+                default:
+                    return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import java.util.List;
+
+
+/**
+ * JMX view of the statement statistics of a persistence unit.
+ */
+public interface SqlStatisticsMXBean {
+
+    String getUnitName();
+
+    long getStatementCount();
+
+    long getSlowStatementCount();
+
+    /**
+     * @return statistics of every fingerprint, by descending total time
+     */
+    List<StatementStatistics> getStatements();
+
+    void reset();
+}
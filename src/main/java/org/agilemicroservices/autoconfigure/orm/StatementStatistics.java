@@ -0,0 +1,67 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import java.beans.ConstructorProperties;
+
+
+/**
+ * Aggregate of the executions of one statement fingerprint in a persistence unit.
+ */
+public class StatementStatistics {
+    private final String fingerprint;
+    private final long count;
+    private final double totalMillis;
+    private final LatencySnapshot latency;
+    private final long rows;
+    private final long repeatedTransactions;
+
+
+    @ConstructorProperties({"fingerprint", "count", "totalMillis", "latency", "rows", "repeatedTransactions"})
+    public StatementStatistics(String fingerprint, long count, double totalMillis, LatencySnapshot latency, long rows,
+                               long repeatedTransactions) {
+        this.fingerprint = fingerprint;
+        this.count = count;
+        this.totalMillis = totalMillis;
+        this.latency = latency;
+        this.rows = rows;
+        this.repeatedTransactions = repeatedTransactions;
+    }
+
+    /**
+     * @return the statement's SQL with literals replaced by <code>?</code> and whitespace collapsed
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getTotalMillis() {
+        return totalMillis;
+    }
+
+    public LatencySnapshot getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return rows read by queries and changed by updates
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * @return transactions that ran the statement more often than the unit's repeat threshold
+     */
+    public long getRepeatedTransactions() {
+        return repeatedTransactions;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: count=%d, total=%.3fms, p99=%.3fms, rows=%d, repeatedTransactions=%d", fingerprint,
+                count, totalMillis, latency.getP99Millis(), rows, repeatedTransactions);
+    }
+}
@@ -0,0 +1,115 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.support.JpaEntityInformation;
+import org.springframework.data.jpa.repository.support.SimpleJpaRepository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static org.agilemicroservices.autoconfigure.orm.PropertiesRepositoryConfigurationSource.FETCH_SIZE;
+
+
+/**
+ * Base class of the repositories of every unit, adding {@link StreamingRepository} to the standard JPA repository.
+ *
+ * @param <T>
+ * @param <ID>
+ */
+public class StreamingJpaRepository<T, ID> extends SimpleJpaRepository<T, ID> implements StreamingRepository<T, ID> {
+    private static final int DEFAULT_FETCH_SIZE = 100;
+
+    private final EntityManager entityManager;
+    private final int defaultFetchSize;
+
+
+    public StreamingJpaRepository(JpaEntityInformation<T, ?> entityInformation, EntityManager entityManager) {
+        super(entityInformation, entityManager);
+        this.entityManager = entityManager;
+
+        Object fetchSize = entityManager.getEntityManagerFactory().getProperties().get(FETCH_SIZE);
+        this.defaultFetchSize = fetchSize != null ? Integer.parseInt(fetchSize.toString().trim()) : DEFAULT_FETCH_SIZE;
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Stream<T> streamAll() {
+        return streamAll(defaultFetchSize);
+    }
+
+    // the cursor is closed with the transaction, so one begun just for this call would leave nothing to consume
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Stream<T> streamAll(int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("fetchSize must be positive");
+        }
+        Query query = getQuery(null, Sort.unsorted()).unwrap(Query.class);
+        query.setFetchSize(fetchSize);
+        ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY);
+
+        DetachingIterator<T> iterator = new DetachingIterator<>(results, entityManager.unwrap(Session.class));
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(iterator::close);
+    }
+
+
+    /**
+     * Iterates a cursor, evicting each entity from the session when advancing past it.
+     */
+    private static class DetachingIterator<T> implements Iterator<T> {
+        private final ScrollableResults results;
+        private final Session session;
+        private Object current;
+        private Boolean hasNext;
+
+        DetachingIterator(ScrollableResults results, Session session) {
+            this.results = results;
+            this.session = session;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (hasNext == null) {
+                detachCurrent();
+                hasNext = results.next();
+            }
+            return hasNext;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            hasNext = null;
+            current = results.get(0);
+            return (T) current;
+        }
+
+        void close() {
+            detachCurrent();
+            results.close();
+        }
+
+        private void detachCurrent() {
+            if (current != null) {
+                session.evict(current);
+                current = null;
+            }
+        }
+    }
+}
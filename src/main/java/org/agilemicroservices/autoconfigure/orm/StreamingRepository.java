@@ -0,0 +1,34 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.springframework.data.repository.NoRepositoryBean;
+import org.springframework.data.repository.Repository;
+
+import java.util.stream.Stream;
+
+
+/**
+ * Repository whose entities can be read as a stream over a forward-only cursor, for exports and other scripts reading
+ * more rows than fit in memory. Each entity is detached from the persistence context once the stream moves past it.
+ * <p>
+ * Streams hold a connection open and can only be opened within a transaction, begun through TransactionUtil, in which
+ * they must be consumed and closed.
+ *
+ * @param <T>
+ * @param <ID>
+ */
+@NoRepositoryBean
+public interface StreamingRepository<T, ID> extends Repository<T, ID> {
+
+    /**
+     * Streams all entities, fetching <code>repository.fetch_size</code> rows of the unit per round-trip.
+     *
+     * @return
+     */
+    Stream<T> streamAll();
+
+    /**
+     * @param fetchSize rows fetched per round-trip
+     * @return
+     */
+    Stream<T> streamAll(int fetchSize);
+}
@@ -0,0 +1,36 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+/**
+ * Tenant of the calling thread, selecting the schema used by multi-tenant persistence units. Transactions and
+ * repository calls on such units use the tenant set when the unit's <code>EntityManager</code> is opened, so the
+ * tenant must not change while a transaction is in progress.
+ */
+public final class TenantContext {
+    private static final ThreadLocal<String> TENANT_ID = new ThreadLocal<>();
+
+
+    private TenantContext() {
+    }
+
+    /**
+     * @return tenant of the calling thread, <code>null</code> if none is set
+     */
+    public static String getTenantId() {
+        return TENANT_ID.get();
+    }
+
+    /**
+     * @param tenantId tenant of the calling thread, <code>null</code> to clear it
+     */
+    public static void setTenantId(String tenantId) {
+        if (tenantId == null) {
+            TENANT_ID.remove();
+        } else {
+            TENANT_ID.set(tenantId);
+        }
+    }
+
+    public static void clear() {
+        TENANT_ID.remove();
+    }
+}
@@ -0,0 +1,48 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.hibernate.context.spi.CurrentTenantIdentifierResolver;
+
+
+/**
+ * Resolves the tenant of a multi-tenant persistence unit from the {@link TenantContext}, falling back to the unit's
+ * default tenant when the calling thread has none. Without either, sessions are opened for {@link #NO_TENANT}, as
+ * Spring Data does at startup, and fail once they need a connection.
+ */
+public class TenantIdentifierResolver implements CurrentTenantIdentifierResolver {
+    /**
+     * Identifier of sessions opened with no tenant set, which {@link SchemaMultiTenantConnectionProvider} serves no
+     * connections to. It is not a valid tenant id.
+     */
+    public static final String NO_TENANT = "<none>";
+
+    private final String unitName;
+    private final String defaultTenantId;
+
+
+    /**
+     * @param unitName
+     * @param defaultTenantId tenant used when none is set, <code>null</code> to require one for database access
+     */
+    public TenantIdentifierResolver(String unitName, String defaultTenantId) {
+        this.unitName = unitName;
+        this.defaultTenantId = defaultTenantId;
+    }
+
+    public String getUnitName() {
+        return unitName;
+    }
+
+    @Override
+    public String resolveCurrentTenantIdentifier() {
+        String tenantId = TenantContext.getTenantId();
+        if (tenantId == null) {
+            tenantId = defaultTenantId;
+        }
+        return tenantId != null ? tenantId : NO_TENANT;
+    }
+
+    @Override
+    public boolean validateExistingCurrentSessions() {
+        return true;
+    }
+}
@@ -0,0 +1,113 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+
+
+/**
+ * Transaction state bound to a thread, captured so that work on the thread's transactions can run on another thread.
+ * The worker sees the owner's transactional resources, synchronization state, {@link ShardContext} and
+ * {@link TenantContext}; resources it binds and synchronizations it registers, such as the shard a transaction
+ * connected to, are handed back to the owner by {@link #restore()}. The owner must not use its transactions while the
+ * worker runs.
+ */
+public final class ThreadTransactionContext {
+    private final Map<Object, Object> resources;
+    private final boolean synchronizationActive;
+    private final String transactionName;
+    private final boolean readOnly;
+    private final Integer isolationLevel;
+    private final boolean actualTransactionActive;
+    private final Integer shard;
+    private final String tenantId;
+    private final Map<Object, Object> addedResources = new LinkedHashMap<>();
+    private final List<TransactionSynchronization> addedSynchronizations = new ArrayList<>();
+
+
+    private ThreadTransactionContext() {
+        resources = new LinkedHashMap<>(TransactionSynchronizationManager.getResourceMap());
+        synchronizationActive = TransactionSynchronizationManager.isSynchronizationActive();
+        transactionName = TransactionSynchronizationManager.getCurrentTransactionName();
+        readOnly = TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        isolationLevel = TransactionSynchronizationManager.getCurrentTransactionIsolationLevel();
+        actualTransactionActive = TransactionSynchronizationManager.isActualTransactionActive();
+        shard = ShardContext.getShard();
+        tenantId = TenantContext.getTenantId();
+    }
+
+    /**
+     * @return the transaction state of the calling thread
+     */
+    public static ThreadTransactionContext capture() {
+        return new ThreadTransactionContext();
+    }
+
+    /**
+     * Runs a task on the calling thread with the captured state bound, unbinding it afterwards. The calling thread
+     * must have no transaction state of its own.
+     *
+     * @param task
+     * @return the task's result
+     * @throws Exception the task's failure
+     */
+    public <T> T call(Callable<T> task) throws Exception {
+        for (Map.Entry<Object, Object> o : resources.entrySet()) {
+            TransactionSynchronizationManager.bindResource(o.getKey(), o.getValue());
+        }
+        if (synchronizationActive) {
+            TransactionSynchronizationManager.initSynchronization();
+        }
+        TransactionSynchronizationManager.setCurrentTransactionName(transactionName);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(readOnly);
+        TransactionSynchronizationManager.setCurrentTransactionIsolationLevel(isolationLevel);
+        TransactionSynchronizationManager.setActualTransactionActive(actualTransactionActive);
+        ShardContext.setShard(shard);
+        TenantContext.setTenantId(tenantId);
+        try {
+            return task.call();
+        } finally {
+            detach();
+        }
+    }
+
+    private void detach() {
+        synchronized (this) {
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                addedSynchronizations.addAll(TransactionSynchronizationManager.getSynchronizations());
+            }
+            for (Map.Entry<Object, Object> o : TransactionSynchronizationManager.getResourceMap().entrySet()) {
+                if (!resources.containsKey(o.getKey())) {
+                    addedResources.put(o.getKey(), o.getValue());
+                }
+            }
+        }
+        for (Object o : new ArrayList<>(TransactionSynchronizationManager.getResourceMap().keySet())) {
+            TransactionSynchronizationManager.unbindResource(o);
+        }
+        TransactionSynchronizationManager.clear();
+        ShardContext.clear();
+        TenantContext.clear();
+    }
+
+    /**
+     * Binds the resources and registers the synchronizations the worker added to the calling thread, which must be
+     * the thread the state was captured on, once the task returned.
+     */
+    public synchronized void restore() {
+        for (Map.Entry<Object, Object> o : addedResources.entrySet()) {
+            if (!TransactionSynchronizationManager.hasResource(o.getKey())) {
+                TransactionSynchronizationManager.bindResource(o.getKey(), o.getValue());
+            }
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            for (TransactionSynchronization o : addedSynchronizations) {
+                TransactionSynchronizationManager.registerSynchronization(o);
+            }
+        }
+        addedResources.clear();
+        addedSynchronizations.clear();
+    }
+}
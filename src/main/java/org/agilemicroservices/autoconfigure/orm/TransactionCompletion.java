@@ -0,0 +1,68 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.springframework.transaction.TransactionTimedOutException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * Outcome of completing the transactions of several persistence units at once, with the latency of each unit.
+ */
+public class TransactionCompletion {
+    private final List<UnitCompletion> units;
+    private final double millis;
+
+
+    public TransactionCompletion(List<UnitCompletion> units, double millis) {
+        this.units = Collections.unmodifiableList(new ArrayList<>(units));
+        this.millis = millis;
+    }
+
+    /**
+     * @return the units, in the order they were completed
+     */
+    public List<UnitCompletion> getUnits() {
+        return units;
+    }
+
+    public double getMillis() {
+        return millis;
+    }
+
+    /**
+     * @return <code>true</code> if every unit committed
+     */
+    public boolean isCommitted() {
+        for (UnitCompletion o : units) {
+            if (o.getOutcome() != UnitCompletion.Outcome.COMMITTED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the first unit's failure, a {@link TransactionTimedOutException} if a unit timed out instead, or
+     * <code>null</code> if no unit failed
+     */
+    public Throwable getFailure() {
+        Throwable timeout = null;
+        for (UnitCompletion o : units) {
+            if (o.getFailure() != null) {
+                return o.getFailure();
+            }
+            if (timeout == null && o.getOutcome() == UnitCompletion.Outcome.TIMED_OUT) {
+                timeout = new TransactionTimedOutException("Persistence unit '" + o.getUnitName()
+                        + "' did not flush in time.");
+            }
+        }
+        return timeout;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.3fms %s", millis, units);
+    }
+}
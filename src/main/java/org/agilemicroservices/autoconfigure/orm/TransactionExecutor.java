@@ -0,0 +1,108 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Runs the asynchronous transactions of a persistence unit, at most as many at once as the unit's pool has
+ * connections so that tasks wait here rather than on the pool's connection timeout. Tasks run on virtual threads when
+ * requested and the JDK supports them, otherwise on daemon platform threads that time out when idle.
+ */
+public class TransactionExecutor implements Executor, DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(TransactionExecutor.class);
+    private static final long KEEP_ALIVE_SECONDS = 10;
+
+    private final String unitName;
+    private final int concurrency;
+    private final Semaphore permits;
+    private final ExecutorService delegate;
+    private final boolean virtualThreads;
+
+
+    public TransactionExecutor(String unitName, int concurrency, boolean virtualThreads) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Invalid concurrency " + concurrency + " in persistence unit '"
+                    + unitName + "'.");
+        }
+        this.unitName = unitName;
+        this.concurrency = concurrency;
+        this.permits = new Semaphore(concurrency, true);
+
+        ExecutorService executor = virtualThreads ? newVirtualThreadPerTaskExecutor() : null;
+        if (virtualThreads && executor == null) {
+            logger.info("Virtual threads are not supported by this JVM, running transactions of persistence unit "
+                    + "'{}' on platform threads.", unitName);
+        }
+        this.virtualThreads = executor != null;
+        this.delegate = executor != null ? executor : newPlatformThreadExecutor(unitName, concurrency);
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method method = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newPlatformThreadExecutor(String unitName, int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "orm-" + unitName + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+
+    public String getUnitName() {
+        return unitName;
+    }
+
+    /**
+     * @return number of tasks allowed to run at once
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        delegate.execute(() -> {
+            // virtual threads are unbounded, so the limit is applied as tasks start rather than by the pool size
+            permits.acquireUninterruptibly();
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        });
+    }
+
+    /**
+     * Stops accepting tasks, leaving those already submitted to complete.
+     */
+    @Override
+    public void destroy() {
+        delegate.shutdown();
+    }
+}
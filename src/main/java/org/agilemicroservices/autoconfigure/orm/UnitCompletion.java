@@ -0,0 +1,64 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+/**
+ * Outcome of completing the transaction of a single persistence unit, as part of a {@link TransactionCompletion}.
+ */
+public class UnitCompletion {
+    private final String unitName;
+    private final Outcome outcome;
+    private final double millis;
+    private final Throwable failure;
+
+
+    public UnitCompletion(String unitName, Outcome outcome, double millis, Throwable failure) {
+        this.unitName = unitName;
+        this.outcome = outcome;
+        this.millis = millis;
+        this.failure = failure;
+    }
+
+    public String getUnitName() {
+        return unitName;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * @return time spent flushing and committing or rolling back the unit's transaction
+     */
+    public double getMillis() {
+        return millis;
+    }
+
+    /**
+     * @return cause of a <code>FAILED</code> outcome, <code>null</code> otherwise
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %s in %.3fms%s", unitName, outcome, millis,
+                failure != null ? " (" + failure + ")" : "");
+    }
+
+
+    public enum Outcome {
+        COMMITTED,
+        /**
+         * Rolled back as another unit failed or timed out.
+         */
+        ROLLED_BACK,
+        /**
+         * Failed flushing or committing, the transaction having been rolled back.
+         */
+        FAILED,
+        /**
+         * Did not flush within the timeout, the transaction having been rolled back.
+         */
+        TIMED_OUT
+    }
+}
@@ -0,0 +1,62 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import com.mchange.v2.c3p0.ComboPooledDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+
+
+/**
+ * Warming up without a validation query validates connections with <code>Connection.isValid</code>, which c3p0 0.9.2
+ * proxies do not implement.
+ */
+public class ConnectionPoolWarmerTest {
+    private static final String URL = "jdbc:h2:mem:warmup;DB_CLOSE_DELAY=-1";
+
+    private final DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+
+
+    @After
+    public void tearDown() {
+        beanFactory.destroySingletons();
+    }
+
+    @Test
+    public void warmsUpC3p0WithoutValidationQuery() {
+        ComboPooledDataSource pool = new ComboPooledDataSource();
+        pool.setJdbcUrl(URL);
+        pool.setUser("sa");
+        pool.setPassword("");
+        warmUp(pool, null);
+    }
+
+    @Test
+    public void warmsUpC3p0WithValidationQuery() {
+        ComboPooledDataSource pool = new ComboPooledDataSource();
+        pool.setJdbcUrl(URL);
+        pool.setUser("sa");
+        pool.setPassword("");
+        warmUp(pool, "SELECT 1");
+    }
+
+    @Test
+    public void warmsUpHikariWithoutValidationQuery() {
+        HikariDataSource pool = new HikariDataSource();
+        pool.setJdbcUrl(URL);
+        pool.setUsername("sa");
+        pool.setPassword("");
+        warmUp(pool, null);
+    }
+
+    private void warmUp(DataSource pool, String validationQuery) {
+        beanFactory.registerSingleton("pool", pool);
+        ConnectionPoolWarmer warmer = new ConnectionPoolWarmer("unit", Collections.singletonList("pool"), 2,
+                validationQuery);
+        warmer.setBeanFactory(beanFactory);
+        warmer.afterSingletonsInstantiated();
+    }
+}
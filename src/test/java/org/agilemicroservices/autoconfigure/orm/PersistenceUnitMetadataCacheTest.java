@@ -0,0 +1,137 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.agilemicroservices.config.caching.Product;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.orm.jpa.persistenceunit.MutablePersistenceUnitInfo;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * The cache is reused while the classpath roots of the base packages are unchanged, and rebuilt once a class file of a
+ * directory or a jar changes.
+ */
+public class PersistenceUnitMetadataCacheTest {
+    // a package found only in the roots under test, the class file keeping the name it was compiled with
+    private static final String PACKAGE = "example.entities";
+    private static final String ENTRY = PACKAGE.replace('.', '/') + "/Product.class";
+    private static final String CLASS_FILE = Product.class.getName().replace('.', '/') + ".class";
+    private static final String FAKE_CLASS = "example.Cached";
+
+    private Path directory;
+
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("orm-metadata");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Test
+    public void directoryRootIsFingerprintedByItsFiles() throws Exception {
+        Path classes = directory.resolve("classes");
+        Path classFile = classes.resolve(ENTRY);
+        Files.createDirectories(classFile.getParent());
+        copyClass(Files.newOutputStream(classFile));
+
+        PersistenceUnitMetadataCache cache = newCache(classes);
+        assertEquals(Collections.singletonList(Product.class.getName()), managedClasses(cache));
+        replaceCachedClasses();
+        assertEquals(Collections.singletonList(FAKE_CLASS), managedClasses(cache));
+
+        Files.setLastModifiedTime(classFile, FileTime.fromMillis(Files.getLastModifiedTime(classFile).toMillis()
+                + 60000));
+        assertEquals(Collections.singletonList(Product.class.getName()), managedClasses(cache));
+    }
+
+    @Test
+    public void jarRootIsFingerprintedByTheArchive() throws Exception {
+        Path jar = directory.resolve("entities.jar");
+        writeJar(jar);
+
+        PersistenceUnitMetadataCache cache = newCache(jar);
+        assertEquals(Collections.singletonList(Product.class.getName()), managedClasses(cache));
+        replaceCachedClasses();
+        assertEquals(Collections.singletonList(FAKE_CLASS), managedClasses(cache));
+
+        Files.setLastModifiedTime(jar, FileTime.fromMillis(Files.getLastModifiedTime(jar).toMillis() + 60000));
+        assertEquals(Collections.singletonList(Product.class.getName()), managedClasses(cache));
+    }
+
+    private PersistenceUnitMetadataCache newCache(Path root) throws Exception {
+        PersistenceUnitMetadataCache cache = new PersistenceUnitMetadataCache("unit",
+                new String[]{PACKAGE}, Collections.emptyMap(),
+                directory.resolve("cache").toString());
+        cache.setResourceLoader(new DefaultResourceLoader(new URLClassLoader(new URL[]{root.toUri().toURL()},
+                getClass().getClassLoader())));
+        return cache;
+    }
+
+    private static List<String> managedClasses(PersistenceUnitMetadataCache cache) {
+        MutablePersistenceUnitInfo pui = new MutablePersistenceUnitInfo();
+        cache.postProcessPersistenceUnitInfo(pui);
+        return pui.getManagedClassNames();
+    }
+
+    /**
+     * Rewrites the cached classes, so that reading them back shows the cache was reused rather than rebuilt.
+     */
+    private void replaceCachedClasses() throws Exception {
+        Path file = directory.resolve("cache").resolve("unit.metadata");
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            props.load(in);
+        }
+        props.setProperty("classes", FAKE_CLASS);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            props.store(out, null);
+        }
+    }
+
+    private static void writeJar(Path jar) throws Exception {
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            String path = "";
+            for (String o : ENTRY.substring(0, ENTRY.lastIndexOf('/')).split("/")) {
+                path += o + "/";
+                out.putNextEntry(new JarEntry(path));
+                out.closeEntry();
+            }
+            out.putNextEntry(new JarEntry(ENTRY));
+            copyClass(out);
+            out.closeEntry();
+        }
+    }
+
+    private static void copyClass(OutputStream out) throws Exception {
+        try (InputStream in = PersistenceUnitMetadataCacheTest.class.getClassLoader().getResourceAsStream(CLASS_FILE)) {
+            byte[] buffer = new byte[4096];
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                out.write(buffer, 0, n);
+            }
+        }
+        if (!(out instanceof JarOutputStream)) {
+            out.close();
+        }
+    }
+}
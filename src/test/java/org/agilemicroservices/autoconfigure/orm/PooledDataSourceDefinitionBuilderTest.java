@@ -0,0 +1,51 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.junit.Test;
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.factory.support.AbstractBeanDefinition;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.agilemicroservices.autoconfigure.orm.PropertiesRepositoryConfigurationSource.*;
+import static org.junit.Assert.*;
+
+
+public class PooledDataSourceDefinitionBuilderTest {
+    private static final String URL = "jdbc:h2:mem:pool";
+
+
+    @Test
+    public void c3p0KeepsItsTesterWithoutWarmup() {
+        AbstractBeanDefinition definition = build(new HashMap<>());
+
+        assertNull(definition.getPropertyValues().getPropertyValue("connectionTesterClassName"));
+        assertNull(definition.getPropertyValues().getPropertyValue("idleConnectionTestPeriod"));
+    }
+
+    @Test
+    public void c3p0WarmupTestsIdleConnectionsWithIsValid() {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(POOL_WARMUP, "2");
+        PropertyValue tester = build(properties).getPropertyValues().getPropertyValue("connectionTesterClassName");
+
+        assertNotNull(tester);
+        assertEquals(ValidConnectionTester.class.getName(), tester.getValue());
+    }
+
+    @Test
+    public void c3p0WarmupWithQueryKeepsItsTester() {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(POOL_WARMUP, "2");
+        properties.put(POOL_VALIDATION_QUERY, "SELECT 1");
+        AbstractBeanDefinition definition = build(properties);
+
+        assertNull(definition.getPropertyValues().getPropertyValue("connectionTesterClassName"));
+        assertEquals("SELECT 1", definition.getPropertyValues().getPropertyValue("preferredTestQuery").getValue());
+    }
+
+    private static AbstractBeanDefinition build(Map<String, String> properties) {
+        properties.put(DRIVER_CLASS_NAME, "org.h2.Driver");
+        return new PooledDataSourceDefinitionBuilder("pool", properties).build("poolDataSource", URL, "sa", "");
+    }
+}
@@ -0,0 +1,44 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.junit.Test;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.type.classreading.CachingMetadataReaderFactory;
+
+import static org.junit.Assert.*;
+
+
+public class RepositoryBootstrapContextTest {
+
+    @Test
+    public void scannersShareTheMetadataReaderCache() throws Exception {
+        RepositoryBootstrapContext context = new RepositoryBootstrapContext(new DefaultResourceLoader(),
+                new StandardEnvironment());
+
+        assertSame(context.getMetadataReaderFactory().getMetadataReader(CacheableResult.class.getName()),
+                new CachingMetadataReaderFactory(context.getResourceLoader())
+                        .getMetadataReader(CacheableResult.class.getName()));
+    }
+
+    @Test
+    public void otherResourceLoadersAreWrappedToShareTheCache() throws Exception {
+        DefaultResourceLoader delegate = new DefaultResourceLoader();
+        RepositoryBootstrapContext context = new RepositoryBootstrapContext(new ResourceLoader() {
+            @Override
+            public Resource getResource(String location) {
+                return delegate.getResource(location);
+            }
+
+            @Override
+            public ClassLoader getClassLoader() {
+                return delegate.getClassLoader();
+            }
+        }, new StandardEnvironment());
+
+        assertSame(context.getMetadataReaderFactory().getMetadataReader(CacheableResult.class.getName()),
+                new CachingMetadataReaderFactory(context.getResourceLoader())
+                        .getMetadataReader(CacheableResult.class.getName()));
+    }
+}
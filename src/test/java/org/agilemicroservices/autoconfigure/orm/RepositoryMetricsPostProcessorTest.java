@@ -0,0 +1,56 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.junit.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+
+public class RepositoryMetricsPostProcessorTest {
+
+    @Test
+    public void overloadsAreTimedApart() {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        OrmMetrics metrics = new OrmMetrics("unit", null);
+        beanFactory.registerSingleton("metrics", metrics);
+        RepositoryMetricsPostProcessor postProcessor = new RepositoryMetricsPostProcessor("metrics",
+                Collections.singleton("itemRepository"));
+        postProcessor.setBeanFactory(beanFactory);
+
+        ProxyFactory proxyFactory = new ProxyFactory(new ItemRepository() {
+            @Override
+            public String find(long id) {
+                return "by id";
+            }
+
+            @Override
+            public String find(String name, int limit) {
+                return "by name";
+            }
+        });
+        proxyFactory.addInterface(ItemRepository.class);
+        ItemRepository repository = (ItemRepository) postProcessor.postProcessAfterInitialization(
+                proxyFactory.getProxy(), "itemRepository");
+
+        repository.find(1L);
+        repository.find(2L);
+        repository.find("a", 10);
+
+        Map<String, LatencySnapshot> latencies = metrics.getRepositoryMethodLatency();
+        assertEquals(latencies.keySet().toString(), 2, latencies.size());
+        assertEquals(2, latencies.get("ItemRepository.find(long)").getCount());
+        assertEquals(1, latencies.get("ItemRepository.find(String, int)").getCount());
+    }
+
+
+    public interface ItemRepository {
+
+        String find(long id);
+
+        String find(String name, int limit);
+    }
+}
@@ -0,0 +1,80 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.agilemicroservices.config.caching.Product;
+import org.agilemicroservices.config.caching.ProductName;
+import org.junit.Test;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+
+public class RepositoryResultCacheTest {
+    private final RepositoryResultCache cache = new RepositoryResultCache("unit", 10, 0, Collections.emptySet());
+
+
+    @Test
+    public void projectionsAndCountsAreCached() {
+        assertEquals(2, cache.createCaches(ProjectingRepository.class, Product.class).size());
+    }
+
+    @Test
+    public void entityResultsAreRefused() {
+        for (Class<?> o : new Class<?>[] {EntityRepository.class, OptionalEntityRepository.class,
+                EntityListRepository.class, EntityArrayRepository.class}) {
+            try {
+                cache.createCaches(o, Product.class);
+                fail("Cached the entities returned by " + o.getSimpleName() + ".");
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains(Product.class.getName()));
+            }
+        }
+    }
+
+    @Test
+    public void inheritedMethodsResolveTheirDomainType() {
+        RepositoryResultCache configured = new RepositoryResultCache("unit", 10, 0,
+                Collections.singleton("InheritingRepository.findById"));
+        try {
+            configured.createCaches(InheritingRepository.class, Product.class);
+            fail("Cached the entities returned by findById.");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(Product.class.getName()));
+        }
+    }
+
+
+    interface ProjectingRepository {
+        @CacheableResult
+        long countByCategory(String category);
+
+        @CacheableResult
+        List<ProductName> findByCategory(String category);
+    }
+
+    interface EntityRepository {
+        @CacheableResult
+        Product findByName(String name);
+    }
+
+    interface OptionalEntityRepository {
+        @CacheableResult
+        Optional<Product> findByName(String name);
+    }
+
+    interface EntityListRepository {
+        @CacheableResult
+        List<Product> findByCategory(String category);
+    }
+
+    interface EntityArrayRepository {
+        @CacheableResult
+        Product[] findByCategory(String category);
+    }
+
+    interface InheritingRepository extends JpaRepository<Product, Long> {
+    }
+}
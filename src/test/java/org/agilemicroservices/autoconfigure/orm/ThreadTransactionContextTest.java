@@ -0,0 +1,69 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+
+public class ThreadTransactionContextTest {
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        for (Object o : new ArrayList<>(TransactionSynchronizationManager.getResourceMap().keySet())) {
+            TransactionSynchronizationManager.unbindResource(o);
+        }
+        TransactionSynchronizationManager.clear();
+        ShardContext.clear();
+        TenantContext.clear();
+    }
+
+    @Test
+    public void workerSeesOwnerStateAndHandsBackAdditions() throws Exception {
+        TransactionSynchronizationManager.bindResource("owner", "value");
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        ShardContext.setShard(3);
+        TenantContext.setTenantId("acme");
+        ThreadTransactionContext context = ThreadTransactionContext.capture();
+
+        String seen = executor.submit(() -> context.call(() -> {
+            TransactionSynchronizationManager.bindResource("worker", "added");
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            });
+            return TransactionSynchronizationManager.getResource("owner") + ","
+                    + TransactionSynchronizationManager.isActualTransactionActive() + ","
+                    + ShardContext.getShard() + "," + TenantContext.getTenantId();
+        })).get(10, TimeUnit.SECONDS);
+        assertEquals("value,true,3,acme", seen);
+
+        assertFalse(TransactionSynchronizationManager.hasResource("worker"));
+        context.restore();
+        assertEquals("added", TransactionSynchronizationManager.getResource("worker"));
+        assertEquals(1, TransactionSynchronizationManager.getSynchronizations().size());
+    }
+
+    @Test
+    public void workerIsLeftWithoutState() throws Exception {
+        TransactionSynchronizationManager.bindResource("owner", "value");
+        ShardContext.setShard(1);
+        ThreadTransactionContext context = ThreadTransactionContext.capture();
+
+        executor.submit(() -> context.call(() -> null)).get(10, TimeUnit.SECONDS);
+        String left = executor.submit(() -> TransactionSynchronizationManager.getResourceMap().size() + ","
+                + TransactionSynchronizationManager.isSynchronizationActive() + "," + ShardContext.getShard())
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals("0,false,null", left);
+    }
+}
@@ -0,0 +1,85 @@
+package org.agilemicroservices.autoconfigure.orm;
+
+import com.mchange.v2.c3p0.ComboPooledDataSource;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+import static com.mchange.v2.c3p0.ConnectionTester.*;
+import static org.junit.Assert.*;
+
+
+public class ValidConnectionTesterTest {
+    private static final String URL = "jdbc:h2:mem:tester;DB_CLOSE_DELAY=-1";
+
+    private final ValidConnectionTester tester = new ValidConnectionTester();
+
+
+    @Test
+    public void openConnectionIsValid() throws Exception {
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "")) {
+            assertEquals(CONNECTION_IS_OKAY, tester.activeCheckConnection(connection, null, new Throwable[1]));
+            assertEquals(CONNECTION_IS_OKAY, tester.activeCheckConnection(connection, "SELECT 1", new Throwable[1]));
+        }
+    }
+
+    @Test
+    public void closedConnectionIsInvalid() throws Exception {
+        Connection connection = DriverManager.getConnection(URL, "sa", "");
+        connection.close();
+
+        assertEquals(CONNECTION_IS_INVALID, tester.activeCheckConnection(connection, null, new Throwable[1]));
+        assertEquals(CONNECTION_IS_INVALID, tester.statusOnException(connection, new SQLException("closed"), null,
+                new Throwable[1]));
+    }
+
+    @Test
+    public void lostDatabaseInvalidatesThePool() throws Exception {
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "")) {
+            assertEquals(DATABASE_IS_INVALID, tester.statusOnException(connection,
+                    new SQLException("unreachable", "08001"), null, new Throwable[1]));
+        }
+    }
+
+    @Test
+    public void driverWithoutIsValidFallsBackToMetadata() throws Exception {
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "")) {
+            Connection preJdbc4 = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                        if (method.getName().equals("isValid")) {
+                            throw new AbstractMethodError(method.toString());
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+
+            assertEquals(CONNECTION_IS_OKAY, tester.activeCheckConnection(preJdbc4, null, new Throwable[1]));
+            assertEquals(CONNECTION_IS_OKAY, tester.activeCheckConnection(preJdbc4, null, new Throwable[1]));
+        }
+    }
+
+    @Test
+    public void c3p0TestsCheckoutsWithTheTester() throws Exception {
+        ComboPooledDataSource pool = new ComboPooledDataSource();
+        try {
+            pool.setJdbcUrl(URL);
+            pool.setUser("sa");
+            pool.setPassword("");
+            pool.setConnectionTesterClassName(ValidConnectionTester.class.getName());
+            pool.setTestConnectionOnCheckout(true);
+            // c3p0 hands the tester the physical connection, its proxies lacking isValid
+            try (Connection connection = pool.getConnection()) {
+                assertFalse(connection.isClosed());
+            }
+        } finally {
+            pool.close();
+        }
+    }
+}
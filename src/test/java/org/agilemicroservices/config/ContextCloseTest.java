@@ -0,0 +1,49 @@
+package org.agilemicroservices.config;
+
+import org.agilemicroservices.autoconfigure.orm.DynamicRepositoryBeanDefinitionRegistrarSupport;
+import org.agilemicroservices.config.caching.ProductRepository;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Lookups cached statically are dropped once the context closes, rather than handing out its closed beans.
+ */
+public class ContextCloseTest {
+    private static ProductRepository products;
+
+
+    @BeforeClass
+    public static void setUpContext() {
+        System.setProperty(DynamicRepositoryBeanDefinitionRegistrarSupport.SCAN_LOCATIONS,
+                "classpath*:orm-test/caching/*.orm.properties");
+        products = RepositoryFactory.get(ProductRepository.class);
+    }
+
+    @Test
+    public void closingTheContextDropsCachedLookups() {
+        assertNotNull(OrmRegistrations.forRepository(products));
+        assertSame(products, RepositoryFactory.get("ProductRepository"));
+
+        ((ConfigurableApplicationContext) SpringUtil.getContext()).close();
+
+        try {
+            OrmRegistrations.forRepository(products);
+            fail("Resolved a registration of the closed context.");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            RepositoryFactory.get(ProductRepository.class);
+            fail("Returned a repository of the closed context.");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            RepositoryFactory.get("ProductRepository");
+            fail("Returned a repository of the closed context.");
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
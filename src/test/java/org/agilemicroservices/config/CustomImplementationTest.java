@@ -0,0 +1,26 @@
+package org.agilemicroservices.config;
+
+import org.agilemicroservices.autoconfigure.orm.DynamicRepositoryBeanDefinitionRegistrarSupport;
+import org.agilemicroservices.config.custom.a.WidgetRepository;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class CustomImplementationTest {
+    private static WidgetRepository widgets;
+
+
+    @BeforeClass
+    public static void setUpContext() {
+        System.setProperty(DynamicRepositoryBeanDefinitionRegistrarSupport.SCAN_LOCATIONS,
+                "classpath*:orm-test/custom/*.orm.properties");
+        widgets = RepositoryFactory.get(WidgetRepository.class);
+    }
+
+    @Test
+    public void implementationIsTakenFromTheRepositoryPackage() {
+        assertEquals("a", widgets.describe());
+    }
+}
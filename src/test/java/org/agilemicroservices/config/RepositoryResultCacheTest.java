@@ -0,0 +1,89 @@
+package org.agilemicroservices.config;
+
+import org.agilemicroservices.autoconfigure.orm.DynamicRepositoryBeanDefinitionRegistrarSupport;
+import org.agilemicroservices.autoconfigure.orm.RepositoryResultCache;
+import org.agilemicroservices.autoconfigure.orm.RepositoryResultCacheMXBean;
+import org.agilemicroservices.config.caching.Product;
+import org.agilemicroservices.config.caching.ProductName;
+import org.agilemicroservices.config.caching.ProductRepository;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.management.JMX;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Cached repository results, dropped once a transaction writing the repository's domain type commits.
+ */
+public class RepositoryResultCacheTest {
+    private static ProductRepository products;
+    private static RepositoryResultCacheMXBean cache;
+
+
+    @BeforeClass
+    public static void setUpContext() throws Exception {
+        System.setProperty(DynamicRepositoryBeanDefinitionRegistrarSupport.SCAN_LOCATIONS,
+                "classpath*:orm-test/caching/*.orm.properties");
+        products = RepositoryFactory.get(ProductRepository.class);
+        cache = JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(),
+                new ObjectName(RepositoryResultCache.OBJECT_NAME_PREFIX + "caching"),
+                RepositoryResultCacheMXBean.class);
+    }
+
+    @Before
+    public void setUp() {
+        products.deleteAll();
+        products.save(new Product(1L, "tools", "hammer"));
+        cache.clear();
+    }
+
+    @Test
+    public void repeatedCallIsServedFromCache() {
+        assertEquals(1L, products.countByCategory("tools"));
+        long hits = hits("ProductRepository.countByCategory");
+
+        assertEquals(1L, products.countByCategory("tools"));
+        assertEquals(hits + 1, hits("ProductRepository.countByCategory"));
+    }
+
+    @Test
+    public void commitDropsCachedResults() {
+        assertEquals(1L, products.countByCategory("tools"));
+        assertEquals(1, products.findByCategoryOrderByName("tools").size());
+
+        TransactionUtil.begin(products);
+        products.save(new Product(2L, "tools", "saw"));
+        TransactionUtil.commit(products);
+
+        assertEquals(2L, products.countByCategory("tools"));
+        List<ProductName> names = products.findByCategoryOrderByName("tools");
+        assertEquals(2, names.size());
+        assertEquals("hammer", names.get(0).getName());
+        assertEquals("saw", names.get(1).getName());
+    }
+
+    @Test
+    public void rollbackKeepsCachedResults() {
+        assertEquals(1L, products.countByCategory("tools"));
+
+        TransactionUtil.begin(products);
+        products.save(new Product(2L, "tools", "saw"));
+        assertEquals("uncommitted write visible within its transaction", 2L, products.countByCategory("tools"));
+        TransactionUtil.rollback(products);
+
+        long hits = hits("ProductRepository.countByCategory");
+        assertEquals(1L, products.countByCategory("tools"));
+        assertEquals(hits + 1, hits("ProductRepository.countByCategory"));
+    }
+
+    private static long hits(String method) {
+        Long hits = cache.getHitCounts().get(method);
+        return hits != null ? hits : 0;
+    }
+}
@@ -0,0 +1,112 @@
+package org.agilemicroservices.config;
+
+import org.agilemicroservices.autoconfigure.orm.DynamicRepositoryBeanDefinitionRegistrarSupport;
+import org.agilemicroservices.config.sharding.Item;
+import org.agilemicroservices.config.sharding.ItemRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.data.domain.Sort;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+public class ShardRoutingTest {
+    private static ItemRepository items;
+
+
+    @BeforeClass
+    public static void setUpContext() {
+        System.setProperty(DynamicRepositoryBeanDefinitionRegistrarSupport.SCAN_LOCATIONS,
+                "classpath*:orm-test/sharding/*.orm.properties");
+        items = RepositoryFactory.get(ItemRepository.class);
+    }
+
+    @Before
+    public void setUp() {
+        items.deleteAll();
+    }
+
+    @After
+    public void tearDown() {
+        TransactionUtil.rollbackAll();
+    }
+
+    @Test
+    public void persistWithinTransactionReachesTheIdsShard() throws SQLException {
+        TransactionUtil.begin(items);
+        items.save(new Item(1L, "one", 1));
+        items.getOne(3L);
+        TransactionUtil.commitAll();
+
+        assertEquals(0, countOn(0));
+        assertEquals(1, countOn(1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void transactionCannotSpanShards() {
+        TransactionUtil.begin(items);
+        items.save(new Item(1L, "one", 1));
+        items.save(new Item(2L, "two", 2));
+    }
+
+    @Test
+    public void queriesMergeAcrossShards() {
+        saveItems();
+
+        assertEquals(4L, items.count());
+        List<Long> ids = new ArrayList<>();
+        for (Item o : items.findAll(Sort.by(Sort.Direction.DESC, "score"))) {
+            ids.add(o.getId());
+        }
+        assertEquals(Arrays.asList(3L, 2L, 4L, 1L), ids);
+    }
+
+    @Test
+    public void firstResultIsFirstAcrossShards() {
+        saveItems();
+
+        assertEquals(Long.valueOf(3L), items.findFirstByOrderByScoreDesc().get().getId());
+        assertEquals(Long.valueOf(1L), items.findTopByOrderByScoreAsc().getId());
+    }
+
+    @Test
+    public void uniqueResultFoundOnOneShard() {
+        saveItems();
+
+        assertEquals(Long.valueOf(2L), items.findByName("two").get().getId());
+        assertFalse(items.findByName("none").isPresent());
+    }
+
+    @Test(expected = IncorrectResultSizeDataAccessException.class)
+    public void uniqueResultFoundOnSeveralShardsFails() {
+        items.save(new Item(1L, "same", 1));
+        items.save(new Item(2L, "same", 2));
+
+        items.findByName("same");
+    }
+
+    private static void saveItems() {
+        // odd ids live on shard 1, even ones on shard 0
+        items.saveAll(Arrays.asList(new Item(1L, "one", 10), new Item(2L, "two", 30), new Item(3L, "three", 40),
+                new Item(4L, "four", 20)));
+    }
+
+    private static int countOn(int shard) throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:shard" + shard, "sa", "");
+             ResultSet resultSet = connection.createStatement().executeQuery("SELECT COUNT(*) FROM ITEM")) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+}
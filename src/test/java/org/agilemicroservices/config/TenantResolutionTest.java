@@ -0,0 +1,69 @@
+package org.agilemicroservices.config;
+
+import org.agilemicroservices.autoconfigure.orm.DynamicRepositoryBeanDefinitionRegistrarSupport;
+import org.agilemicroservices.autoconfigure.orm.TenantContext;
+import org.agilemicroservices.config.tenancy.Note;
+import org.agilemicroservices.config.tenancy.NoteRepository;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * A schema-tenancy unit without <code>tenancy.default_tenant</code>, whose repositories open sessions with no tenant
+ * set while the context starts.
+ */
+public class TenantResolutionTest {
+    private static NoteRepository notes;
+
+
+    @BeforeClass
+    public static void setUpContext() {
+        System.setProperty(DynamicRepositoryBeanDefinitionRegistrarSupport.SCAN_LOCATIONS,
+                "classpath*:orm-test/tenancy/*.orm.properties");
+        notes = RepositoryFactory.get(NoteRepository.class);
+    }
+
+    @After
+    public void tearDown() {
+        TenantContext.clear();
+    }
+
+    @Test
+    public void contextStartsWithoutDefaultTenant() {
+        assertNotNull(notes);
+    }
+
+    @Test
+    public void databaseAccessWithoutTenantFails() {
+        try {
+            notes.count();
+            fail("Counted notes without a tenant.");
+        } catch (RuntimeException e) {
+            assertTrue(String.valueOf(messagesOf(e)), messagesOf(e).contains("No tenant set"));
+        }
+    }
+
+    @Test
+    public void tenantsUseTheirOwnSchema() {
+        TenantContext.setTenantId("ACME");
+        notes.deleteAll();
+        notes.save(new Note(1L, "acme"));
+        TenantContext.setTenantId("GLOBEX");
+        notes.deleteAll();
+
+        assertEquals(0L, notes.count());
+        TenantContext.setTenantId("ACME");
+        assertEquals("acme", notes.findById(1L).get().getBody());
+    }
+
+    private static String messagesOf(Throwable e) {
+        StringBuilder messages = new StringBuilder();
+        for (Throwable o = e; o != null; o = o.getCause()) {
+            messages.append(o.getMessage()).append('\n');
+        }
+        return messages.toString();
+    }
+}
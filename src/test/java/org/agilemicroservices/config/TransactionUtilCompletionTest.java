@@ -0,0 +1,159 @@
+package org.agilemicroservices.config;
+
+import groovy.lang.Closure;
+import org.agilemicroservices.autoconfigure.orm.DynamicRepositoryBeanDefinitionRegistrarSupport;
+import org.agilemicroservices.autoconfigure.orm.TransactionCompletion;
+import org.agilemicroservices.autoconfigure.orm.UnitCompletion;
+import org.agilemicroservices.config.completion.a.Account;
+import org.agilemicroservices.config.completion.a.AccountRepository;
+import org.agilemicroservices.config.completion.b.Ledger;
+import org.agilemicroservices.config.completion.b.LedgerRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+
+public class TransactionUtilCompletionTest {
+    private static AccountRepository accounts;
+    private static LedgerRepository ledgers;
+
+
+    @BeforeClass
+    public static void setUpContext() {
+        System.setProperty(DynamicRepositoryBeanDefinitionRegistrarSupport.SCAN_LOCATIONS,
+                "classpath*:orm-test/completion/*.orm.properties");
+        accounts = RepositoryFactory.get(AccountRepository.class);
+        ledgers = RepositoryFactory.get(LedgerRepository.class);
+    }
+
+    @Before
+    public void setUp() {
+        accounts.deleteAll();
+        ledgers.deleteAll();
+        accounts.save(new Account(1L, "existing"));
+    }
+
+    @After
+    public void tearDown() {
+        TransactionUtil.rollbackAll();
+    }
+
+    @Test
+    public void commitAllFlushesUnitsConcurrentlyAndCommits() {
+        TransactionUtil.begin(accounts);
+        TransactionUtil.begin(ledgers);
+        accounts.save(new Account(2L, "new"));
+        ledgers.save(new Ledger(10L, "opened"));
+
+        TransactionCompletion completion = TransactionUtil.commitAll(5000L);
+
+        assertTrue(completion.toString(), completion.isCommitted());
+        assertEquals(2, completion.getUnits().size());
+        assertTrue(accounts.existsById(2L));
+        assertTrue(ledgers.existsById(10L));
+    }
+
+    @Test
+    public void commitAllCommitsSingleUnitInline() {
+        TransactionUtil.begin(accounts);
+        accounts.save(new Account(2L, "new"));
+
+        TransactionUtil.commitAll();
+
+        assertTrue(accounts.existsById(2L));
+    }
+
+    @Test
+    public void asyncKeepsCommitMadeByClosure() throws Exception {
+        boolean exists = TransactionUtil.async(accounts, new Closure<Boolean>(this) {
+            public Boolean doCall() {
+                accounts.save(new Account(2L, "new"));
+                TransactionUtil.commit(accounts);
+                return accounts.existsById(2L);
+            }
+        }).get(5, TimeUnit.SECONDS);
+
+        assertTrue(exists);
+        assertTrue(accounts.existsById(2L));
+    }
+
+    @Test
+    public void failedFlushRollsBackEveryUnit() {
+        TransactionUtil.begin(accounts);
+        TransactionUtil.begin(ledgers);
+        accounts.save(new Account(2L, "existing"));
+        ledgers.save(new Ledger(10L, "opened"));
+
+        TransactionCompletion completion = TransactionUtil.commitAll(5000L);
+
+        assertFalse(completion.isCommitted());
+        assertNotNull(completion.getFailure());
+        assertEquals(UnitCompletion.Outcome.ROLLED_BACK, outcomeOf(completion, "completionb"));
+        assertEquals(UnitCompletion.Outcome.FAILED, outcomeOf(completion, "completiona"));
+        assertFalse(accounts.existsById(2L));
+        assertFalse(ledgers.existsById(10L));
+    }
+
+    @Test
+    public void timeoutBoundsBlockedFlush() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            // another transaction holds the row lock, so the flush below blocks for the database's lock timeout
+            Future<?> holder = executor.submit(() -> {
+                TransactionUtil.begin(accounts);
+                try {
+                    Account account = accounts.findById(1L).get();
+                    account.setName("locked");
+                    accounts.saveAndFlush(account);
+                    locked.countDown();
+                    release.await();
+                } finally {
+                    TransactionUtil.rollbackAll();
+                }
+                return null;
+            });
+            assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+            TransactionUtil.begin(accounts);
+            Account account = accounts.findById(1L).get();
+            account.setName("blocked");
+            long start = System.nanoTime();
+            TransactionCompletion completion = TransactionUtil.commitAll(300L);
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertEquals(UnitCompletion.Outcome.TIMED_OUT, outcomeOf(completion, "completiona"));
+            assertTrue("took " + millis + " ms", millis < 5000L);
+            // the blocked unit is released from this thread, its worker rolling it back
+            assertTrue(TransactionSynchronizationManager.getResourceMap().isEmpty());
+            assertFalse(TransactionSynchronizationManager.isSynchronizationActive());
+
+            release.countDown();
+            holder.get(10, TimeUnit.SECONDS);
+            assertEquals("existing", accounts.findById(1L).get().getName());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private static UnitCompletion.Outcome outcomeOf(TransactionCompletion completion, String unitName) {
+        for (UnitCompletion o : completion.getUnits()) {
+            if (o.getUnitName().equals(unitName)) {
+                return o.getOutcome();
+            }
+        }
+        throw new AssertionError("No unit '" + unitName + "' in " + completion + ".");
+    }
+}
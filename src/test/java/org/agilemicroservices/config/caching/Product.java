@@ -0,0 +1,35 @@
+package org.agilemicroservices.config.caching;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+
+@Entity
+public class Product {
+    @Id
+    private Long id;
+    private String category;
+    private String name;
+
+
+    public Product() {
+    }
+
+    public Product(Long id, String category, String name) {
+        this.id = id;
+        this.category = category;
+        this.name = name;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,7 @@
+package org.agilemicroservices.config.caching;
+
+
+public interface ProductName {
+
+    String getName();
+}
@@ -0,0 +1,16 @@
+package org.agilemicroservices.config.caching;
+
+import org.agilemicroservices.autoconfigure.orm.CacheableResult;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+
+public interface ProductRepository extends JpaRepository<Product, Long> {
+
+    @CacheableResult
+    long countByCategory(String category);
+
+    @CacheableResult
+    List<ProductName> findByCategoryOrderByName(String category);
+}
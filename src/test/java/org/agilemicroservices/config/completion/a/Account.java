@@ -0,0 +1,35 @@
+package org.agilemicroservices.config.completion.a;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+
+@Entity
+public class Account {
+    @Id
+    private Long id;
+    @Column(unique = true)
+    private String name;
+
+
+    public Account() {
+    }
+
+    public Account(Long id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+}
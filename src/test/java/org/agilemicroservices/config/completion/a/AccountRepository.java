@@ -0,0 +1,7 @@
+package org.agilemicroservices.config.completion.a;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+
+public interface AccountRepository extends JpaRepository<Account, Long> {
+}
@@ -0,0 +1,29 @@
+package org.agilemicroservices.config.completion.b;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+
+@Entity
+public class Ledger {
+    @Id
+    private Long id;
+    private String entry;
+
+
+    public Ledger() {
+    }
+
+    public Ledger(Long id, String entry) {
+        this.id = id;
+        this.entry = entry;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getEntry() {
+        return entry;
+    }
+}
@@ -0,0 +1,7 @@
+package org.agilemicroservices.config.completion.b;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+
+public interface LedgerRepository extends JpaRepository<Ledger, Long> {
+}
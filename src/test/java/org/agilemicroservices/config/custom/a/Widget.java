@@ -0,0 +1,11 @@
+package org.agilemicroservices.config.custom.a;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+
+@Entity
+public class Widget {
+    @Id
+    private Long id;
+}
@@ -0,0 +1,7 @@
+package org.agilemicroservices.config.custom.a;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+
+public interface WidgetRepository extends JpaRepository<Widget, Long>, WidgetRepositoryCustom {
+}
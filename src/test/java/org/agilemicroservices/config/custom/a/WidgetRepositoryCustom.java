@@ -0,0 +1,6 @@
+package org.agilemicroservices.config.custom.a;
+
+
+public interface WidgetRepositoryCustom {
+    String describe();
+}
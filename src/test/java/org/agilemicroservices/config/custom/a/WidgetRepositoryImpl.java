@@ -0,0 +1,9 @@
+package org.agilemicroservices.config.custom.a;
+
+
+public class WidgetRepositoryImpl implements WidgetRepositoryCustom {
+    @Override
+    public String describe() {
+        return "a";
+    }
+}
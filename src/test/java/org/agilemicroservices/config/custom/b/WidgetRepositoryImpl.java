@@ -0,0 +1,12 @@
+package org.agilemicroservices.config.custom.b;
+
+
+/**
+ * Shares its simple name with the implementation of the repository in package <code>a</code>, outside of which it
+ * lies.
+ */
+public class WidgetRepositoryImpl {
+    public String describe() {
+        return "b";
+    }
+}
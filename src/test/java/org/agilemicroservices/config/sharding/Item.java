@@ -0,0 +1,39 @@
+package org.agilemicroservices.config.sharding;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Version;
+
+
+@Entity
+public class Item {
+    @Id
+    private Long id;
+    private String name;
+    private int score;
+    // a null version marks the item new, so saving it persists without a statement until the flush
+    @Version
+    private Integer version;
+
+
+    public Item() {
+    }
+
+    public Item(Long id, String name, int score) {
+        this.id = id;
+        this.name = name;
+        this.score = score;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getScore() {
+        return score;
+    }
+}
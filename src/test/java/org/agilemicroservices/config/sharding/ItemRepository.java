@@ -0,0 +1,14 @@
+package org.agilemicroservices.config.sharding;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Optional;
+
+
+public interface ItemRepository extends JpaRepository<Item, Long> {
+    Optional<Item> findFirstByOrderByScoreDesc();
+
+    Item findTopByOrderByScoreAsc();
+
+    Optional<Item> findByName(String name);
+}
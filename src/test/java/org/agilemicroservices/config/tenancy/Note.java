@@ -0,0 +1,29 @@
+package org.agilemicroservices.config.tenancy;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+
+@Entity
+public class Note {
+    @Id
+    private Long id;
+    private String body;
+
+
+    public Note() {
+    }
+
+    public Note(Long id, String body) {
+        this.id = id;
+        this.body = body;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getBody() {
+        return body;
+    }
+}
@@ -0,0 +1,7 @@
+package org.agilemicroservices.config.tenancy;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+
+public interface NoteRepository extends JpaRepository<Note, Long> {
+}